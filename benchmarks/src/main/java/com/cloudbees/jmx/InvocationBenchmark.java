@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.convert.TypeConverter;
+import org.openjdk.jmh.annotations.*;
+
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the invocation of a single MBean: attribute read, operation with argument conversion and description.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvocationBenchmark {
+
+    private static final String[] OPERATION_ARGUMENTS = {"a string", "true", "false", "123", "456"};
+
+    private static final String[] OPERATION_SIGNATURE = {"java.lang.String", "boolean", "java.lang.Boolean", "java.lang.Integer", "int"};
+
+    @Param({"IN_PROCESS", "LOOPBACK"})
+    public MBeanServerFixture.ConnectionMode connectionMode;
+
+    private MBeanServerFixture fixture;
+
+    private JmxInvoker jmxInvoker;
+
+    private ObjectName simpleBean;
+
+    private ObjectName memoryPool;
+
+    private TypeConverter[] converters;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = new MBeanServerFixture(1, 1, connectionMode);
+        jmxInvoker = fixture.newJmxInvoker();
+        simpleBean = MBeanServerFixture.getSimpleBeanName(0);
+        memoryPool = MBeanServerFixture.getMemoryPoolName(0);
+        converters = jmxInvoker.getTypeConverters().getConverters(OPERATION_SIGNATURE);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Object invokeAttribute() throws Exception {
+        return jmxInvoker.invokeAttribute(fixture.getConnection(), simpleBean, "ZeAttribute", null);
+    }
+
+    @Benchmark
+    public Object invokeCompositeAttribute() throws Exception {
+        return jmxInvoker.invokeAttribute(fixture.getConnection(), memoryPool, "Usage", null);
+    }
+
+    @Benchmark
+    public Object invokeOperation() throws Exception {
+        return jmxInvoker.invokeOperation(fixture.getConnection(), simpleBean, "anOperation", OPERATION_ARGUMENTS);
+    }
+
+    @Benchmark
+    public Object describeMbean() throws Exception {
+        return jmxInvoker.describeMbean(fixture.getConnection(), simpleBean);
+    }
+
+    @Benchmark
+    public Object[] convertValues() {
+        return jmxInvoker.convertValues(OPERATION_ARGUMENTS, OPERATION_SIGNATURE, converters);
+    }
+}
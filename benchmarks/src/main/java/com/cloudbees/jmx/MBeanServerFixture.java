@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.model.MockMemoryPool;
+import com.cloudbees.jmx.model.MockSimpleJmxBean;
+
+import javax.annotation.Nonnull;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * Dedicated {@link MBeanServer} populated with {@link MockSimpleJmxBean}s and {@link MockMemoryPool}s and exposed
+ * either in-process or through a loopback {@link JMXConnectorServer}.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class MBeanServerFixture {
+
+    public enum ConnectionMode {
+        /**
+         * Direct invocations on the {@link MBeanServer}
+         */
+        IN_PROCESS,
+        /**
+         * Invocations through an RMI {@link JMXConnectorServer} listening on the loopback interface, as when
+         * attaching to a JVM
+         */
+        LOOPBACK
+    }
+
+    private final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+
+    private JMXConnectorServer connectorServer;
+
+    private JMXConnector connector;
+
+    private final MBeanServerConnection connection;
+
+    /**
+     * Register <code>simpleBeans</code> {@link MockSimpleJmxBean}s named {@link #getSimpleBeanName(int)}
+     * and <code>memoryPools</code> {@link MockMemoryPool}s named {@link #getMemoryPoolName(int)}.
+     */
+    public MBeanServerFixture(int simpleBeans, int memoryPools, @Nonnull ConnectionMode connectionMode) throws Exception {
+        for (int i = 0; i < simpleBeans; i++) {
+            MockSimpleJmxBean mbean = new MockSimpleJmxBean();
+            mbean.zeAttribute = "value-" + i;
+            mbean.intAttribute = i;
+            mbean.integerAttribute = i;
+            mbean.anOperationResult = "result-" + i;
+            mbeanServer.registerMBean(mbean, getSimpleBeanName(i));
+        }
+        for (int i = 0; i < memoryPools; i++) {
+            mbeanServer.registerMBean(new MockMemoryPool("pool-" + i, 87359488L + i), getMemoryPoolName(i));
+        }
+
+        switch (connectionMode) {
+            case IN_PROCESS:
+                connection = mbeanServer;
+                break;
+            case LOOPBACK:
+                // no RMI registry, the address of the started connector server embeds the RMI stub
+                connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://127.0.0.1"), null, mbeanServer);
+                connectorServer.start();
+                connector = JMXConnectorFactory.connect(connectorServer.getAddress());
+                connection = connector.getMBeanServerConnection();
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported connection mode " + connectionMode);
+        }
+    }
+
+    @Nonnull
+    public static ObjectName getSimpleBeanName(int index) throws MalformedObjectNameException {
+        return new ObjectName("benchmark:type=MockSimpleJmxBean,name=bean-" + index);
+    }
+
+    @Nonnull
+    public static ObjectName getMemoryPoolName(int index) throws MalformedObjectNameException {
+        return new ObjectName("benchmark:type=MemoryPool,name=pool-" + index);
+    }
+
+    @Nonnull
+    public MBeanServerConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Return a {@link JmxInvoker} connected to this fixture whatever the given pid.
+     */
+    @Nonnull
+    public JmxInvoker newJmxInvoker() {
+        return new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) {
+                return connection;
+            }
+        };
+    }
+
+    public void close() throws Exception {
+        if (connector != null) {
+            connector.close();
+        }
+        if (connectorServer != null) {
+            connectorServer.stop();
+        }
+    }
+}
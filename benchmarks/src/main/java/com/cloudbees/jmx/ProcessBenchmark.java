@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.management.ObjectName;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a whole invocation reading an attribute on all the MBeans matching a wildcard {@link ObjectName}, as
+ * <code>java -jar cloudbees-jmx-invoker.jar --object-name benchmark:type=MockSimpleJmxBean,* --attribute ZeAttribute</code>
+ * would do.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ProcessBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int mbeans;
+
+    @Param({"IN_PROCESS", "LOOPBACK"})
+    public MBeanServerFixture.ConnectionMode connectionMode;
+
+    @Param({"1", "8"})
+    public int parallelism;
+
+    private MBeanServerFixture fixture;
+
+    private JmxInvoker jmxInvoker;
+
+    private JmxInvoker.JmxInvokerArguments arguments;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = new MBeanServerFixture(mbeans, 0, connectionMode);
+        jmxInvoker = fixture.newJmxInvoker();
+        arguments = new JmxInvoker.JmxInvokerArguments();
+        arguments.pid = "0";
+        arguments.objectName = new ObjectName("benchmark:type=MockSimpleJmxBean,*");
+        arguments.attribute = new String[]{"ZeAttribute"};
+        arguments.parallelism = parallelism;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void process(final Blackhole blackhole) throws Exception {
+        jmxInvoker.process("0", arguments, new ResultListener() {
+            @Override
+            public void onStart(List<String> pids) {
+            }
+
+            @Override
+            public void onResult(JmxInvoker.Result result) {
+                blackhole.consume(result);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the {@link Strings2} helpers used to render the results.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Strings2Benchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private Object[] objects;
+
+    private List<Object> objectList;
+
+    private long[] longs;
+
+    private String multiLine;
+
+    @Setup
+    public void setUp() {
+        objects = new Object[size];
+        longs = new long[size];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            objects[i] = "value-" + i;
+            longs[i] = i * 1000L;
+            sb.append("line ").append(i).append(Strings2.LINE_BREAK);
+        }
+        objectList = Arrays.asList(objects);
+        multiLine = sb.toString();
+    }
+
+    @Benchmark
+    public String joinArray() {
+        return Strings2.join(objects, ", ");
+    }
+
+    @Benchmark
+    public String joinIterable() {
+        return Strings2.join(objectList, ", ");
+    }
+
+    @Benchmark
+    public String toStringObjectArray() {
+        return Strings2.toString(objects);
+    }
+
+    @Benchmark
+    public String toStringPrimitiveArray() {
+        return Strings2.toString(longs);
+    }
+
+    @Benchmark
+    public String indent() {
+        return Strings2.indent(multiLine, "    ");
+    }
+
+    @Benchmark
+    public StringBuilder appendToStringBuilder() {
+        return Strings2.appendTo(longs, new StringBuilder());
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.util.concurrent.*;
+
+/**
+ * Asynchronous facade of {@link JmxInvoker} to embed it in monitoring agents: invocations return an
+ * {@link InvocationFuture} to which callbacks can be attached instead of blocking the calling thread.
+ * <p/>
+ * Invocations connect to their target (pid or JMX service URL) through the {@link JmxInvoker}, combine it with a
+ * {@link PooledConnectionProvider} to reuse the connections instead of attaching to the JVM and connecting for each
+ * invocation. They run on the given {@link ExecutorService}; by default
+ * on virtual threads when the JVM supports them (Java 21+) and on a bounded pool of
+ * {@value #DEFAULT_THREADS} daemon threads otherwise, pending invocations being queued. Invocations
+ * exceeding {@link #setTimeoutInMillis(Long) timeoutInMillis} complete with a {@link TimeoutException}.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class AsyncJmxInvoker implements Closeable {
+
+    /**
+     * Number of threads of the default {@link ExecutorService} when virtual threads are not available.
+     */
+    public static final int DEFAULT_THREADS = 32;
+
+    private final Logger logger = LoggerFactory.getLogger(AsyncJmxInvoker.class);
+
+    private final JmxInvoker jmxInvoker;
+
+    private final ExecutorService executorService;
+
+    private final ScheduledExecutorService timeoutScheduler;
+
+    private final boolean shutdownExecutorsOnClose;
+
+    @Nullable
+    private volatile Long timeoutInMillis;
+
+    public AsyncJmxInvoker(@Nonnull JmxInvoker jmxInvoker) {
+        this(jmxInvoker, newDefaultExecutorService(), Executors.newSingleThreadScheduledExecutor(new JmxInvoker.DaemonThreadFactory("jmx-invoker-timeout-")), true);
+    }
+
+    /**
+     * @param executorService  executor running the invocations
+     * @param timeoutScheduler scheduler of the timeouts
+     */
+    public AsyncJmxInvoker(@Nonnull JmxInvoker jmxInvoker, @Nonnull ExecutorService executorService, @Nonnull ScheduledExecutorService timeoutScheduler) {
+        this(jmxInvoker, executorService, timeoutScheduler, false);
+    }
+
+    private AsyncJmxInvoker(@Nonnull JmxInvoker jmxInvoker, @Nonnull ExecutorService executorService, @Nonnull ScheduledExecutorService timeoutScheduler,
+                            boolean shutdownExecutorsOnClose) {
+        this.jmxInvoker = jmxInvoker;
+        this.executorService = executorService;
+        this.timeoutScheduler = timeoutScheduler;
+        this.shutdownExecutorsOnClose = shutdownExecutorsOnClose;
+    }
+
+    /**
+     * Return an {@link ExecutorService} of virtual threads if the JVM supports them, a pool of
+     * {@value #DEFAULT_THREADS} daemon threads otherwise.
+     */
+    @Nonnull
+    public static ExecutorService newDefaultExecutorService() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new JmxInvoker.DaemonThreadFactory("jmx-invoker-async-"));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Read (<code>attributeValue</code> is <code>null</code>) or write the given attribute.
+     *
+     * @see JmxInvoker#invokeAttribute(MBeanServerConnection, ObjectName, String, String)
+     */
+    @Nonnull
+    public InvocationFuture<JmxInvoker.Result> invokeAttribute(@Nonnull String target, @Nonnull final ObjectName objectName,
+                                                               @Nonnull final String attributeName, @Nullable final String attributeValue) {
+        return submit(target, new Invocation() {
+            @Override
+            public JmxInvoker.Result invoke(MBeanServerConnection mbeanServer) throws Exception {
+                return jmxInvoker.invokeAttribute(mbeanServer, objectName, attributeName, attributeValue);
+            }
+        });
+    }
+
+    /**
+     * @see JmxInvoker#invokeAttributes(MBeanServerConnection, ObjectName, String...)
+     */
+    @Nonnull
+    public InvocationFuture<JmxInvoker.Result> invokeAttributes(@Nonnull String target, @Nonnull final ObjectName objectName,
+                                                                @Nonnull final String... attributeNames) {
+        return submit(target, new Invocation() {
+            @Override
+            public JmxInvoker.Result invoke(MBeanServerConnection mbeanServer) throws Exception {
+                return jmxInvoker.invokeAttributes(mbeanServer, objectName, attributeNames);
+            }
+        });
+    }
+
+    /**
+     * @see JmxInvoker#invokeOperation(MBeanServerConnection, ObjectName, String, String...)
+     */
+    @Nonnull
+    public InvocationFuture<JmxInvoker.Result> invokeOperation(@Nonnull String target, @Nonnull final ObjectName objectName,
+                                                               @Nonnull final String operationName, @Nonnull final String... arguments) {
+        return submit(target, new Invocation() {
+            @Override
+            public JmxInvoker.Result invoke(MBeanServerConnection mbeanServer) throws Exception {
+                return jmxInvoker.invokeOperation(mbeanServer, objectName, operationName, arguments);
+            }
+        });
+    }
+
+    /**
+     * Run the given invocation on a connection to the given target.
+     */
+    @Nonnull
+    protected InvocationFuture<JmxInvoker.Result> submit(@Nonnull final String target, @Nonnull final Invocation invocation) {
+        final InvocationFuture<JmxInvoker.Result> future = new InvocationFuture<JmxInvoker.Result>(new Callable<JmxInvoker.Result>() {
+            @Override
+            public JmxInvoker.Result call() throws Exception {
+                long nanosBefore = System.nanoTime();
+                MBeanServerConnection mbeanServer = jmxInvoker.connectToMbeanServer(target);
+                try {
+                    JmxInvoker.Result result = invocation.invoke(mbeanServer);
+                    if (result != null) {
+                        result.pid = target;
+                        result.durationInNanos = System.nanoTime() - nanosBefore;
+                    }
+                    return result;
+                } finally {
+                    jmxInvoker.closeMbeanServerConnection(mbeanServer);
+                }
+            }
+        });
+        executorService.execute(future);
+        final Long timeoutInMillis = this.timeoutInMillis;
+        if (timeoutInMillis != null) {
+            future.setTimeoutTask(timeoutScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.timeout(timeoutInMillis)) {
+                        logger.debug("Invocation on {} timed out after {}ms", target, timeoutInMillis);
+                    }
+                }
+            }, timeoutInMillis, TimeUnit.MILLISECONDS));
+        }
+        return future;
+    }
+
+    @Nullable
+    public Long getTimeoutInMillis() {
+        return timeoutInMillis;
+    }
+
+    /**
+     * @param timeoutInMillis maximum duration of the invocations submitted afterwards, including the connection to the
+     *                        target, <code>null</code> for no timeout
+     */
+    public void setTimeoutInMillis(@Nullable Long timeoutInMillis) {
+        this.timeoutInMillis = timeoutInMillis;
+    }
+
+    @Nonnull
+    public JmxInvoker getJmxInvoker() {
+        return jmxInvoker;
+    }
+
+    /**
+     * Shutdown the executors if they have been created by this invoker, pending invocations are cancelled.
+     */
+    @Override
+    public void close() {
+        if (shutdownExecutorsOnClose) {
+            for (Runnable pending : executorService.shutdownNow()) {
+                if (pending instanceof Future) {
+                    ((Future<?>) pending).cancel(false);
+                }
+            }
+            timeoutScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Invocation on a connection to a target JVM.
+     */
+    protected interface Invocation {
+        @Nullable
+        JmxInvoker.Result invoke(@Nonnull MBeanServerConnection mbeanServer) throws Exception;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import javax.annotation.Nonnull;
+import javax.management.MBeanServerConnection;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Provide the connections to the target JVMs of a {@link JmxInvoker}.
+ * <p/>
+ * Each connection obtained with {@link #getConnection(String)} must be released with
+ * {@link #releaseConnection(MBeanServerConnection)}; implementations may then close it or keep it for reuse.
+ * Implementations must be thread safe.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public interface ConnectionProvider extends Closeable {
+
+    /**
+     * @param target the target JVM: pid or JMX service URL depending on the implementation
+     */
+    @Nonnull
+    MBeanServerConnection getConnection(@Nonnull String target) throws IOException;
+
+    void releaseConnection(@Nonnull MBeanServerConnection connection);
+
+    /**
+     * Close all the connections, connections still in use are closed on release.
+     */
+    @Override
+    void close();
+}
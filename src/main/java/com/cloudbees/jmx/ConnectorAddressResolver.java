@@ -0,0 +1,240 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.perfdata.PerfData;
+import com.cloudbees.util.nio.Files2;
+import com.sun.tools.attach.VirtualMachine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Resolve the address of the local JMX connector of a JVM, attaching to it and loading its management agent if needed.
+ * <p/>
+ * When a cache directory is defined, resolved addresses are saved in <code>connector-address-&lt;pid&gt;.properties</code>
+ * files with the creation time of the JVM read in its {@link PerfData} counters so that subsequent resolutions skip
+ * the attach as long as the JVM with this pid is the same. JVMs without perf counters are always attached to.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class ConnectorAddressResolver {
+
+    public static final String LOCAL_CONNECTOR_ADDRESS = "com.sun.management.jmxremote.localConnectorAddress";
+
+    /**
+     * Creation time of the JVM in ms, set before the JVM can execute any Java code
+     */
+    static final String VM_CREATION_TIME_COUNTER = "sun.rt.createVmBeginTime";
+
+    private final Logger logger = LoggerFactory.getLogger(ConnectorAddressResolver.class);
+
+    @Nullable
+    private final File cacheDir;
+
+    private final Timings timings;
+
+    /**
+     * @param cacheDir directory of the on-disk cache of the addresses, no cache if <code>null</code>
+     */
+    public ConnectorAddressResolver(@Nullable File cacheDir) {
+        this(cacheDir, new Timings());
+    }
+
+    /**
+     * @param cacheDir directory of the on-disk cache of the addresses, no cache if <code>null</code>
+     * @param timings  timings in which the attach and agent loading durations are recorded
+     */
+    public ConnectorAddressResolver(@Nullable File cacheDir, @Nonnull Timings timings) {
+        this.cacheDir = cacheDir;
+        this.timings = timings;
+    }
+
+    /**
+     * Return the address of the local JMX connector of the JVM with the given <code>pid</code>.
+     */
+    @Nonnull
+    public String resolve(@Nonnull String pid) throws IOException {
+        Long creationTime = getCreationTime(pid);
+        File cacheFile = getCacheFile(pid);
+        if (cacheFile != null && creationTime != null && cacheFile.exists() && !isOwnedByCurrentUser(cacheFile)) {
+            // another user could redirect the invoker to an RMI endpoint of their own
+            logger.warn("Ignore cached connector address {} not owned by {}", cacheFile, System.getProperty("user.name"));
+        } else if (cacheFile != null && creationTime != null && cacheFile.exists()) {
+            Properties cache = new Properties();
+            try {
+                InputStream in = new FileInputStream(cacheFile);
+                try {
+                    cache.load(in);
+                } finally {
+                    in.close();
+                }
+                if (creationTime.toString().equals(cache.getProperty("creationTime")) && cache.getProperty("address") != null) {
+                    logger.debug("Use cached connector address of JVM {}", pid);
+                    return cache.getProperty("address");
+                }
+                logger.debug("Ignore cached connector address of previous JVM {}", pid);
+            } catch (IOException e) {
+                logger.warn("Exception reading {}, ignore it", cacheFile, e);
+            }
+        }
+
+        String address = attachAndResolve(pid);
+
+        if (cacheFile != null && creationTime != null) {
+            try {
+                save(cacheFile, creationTime, address);
+            } catch (IOException e) {
+                logger.warn("Exception saving {}", cacheFile, e);
+            }
+        }
+        return address;
+    }
+
+    /**
+     * Forget the cached address of the given JVM, e.g. because the connection to this address failed.
+     *
+     * @return <code>true</code> if an address was cached
+     */
+    public boolean invalidate(@Nonnull String pid) {
+        File cacheFile = getCacheFile(pid);
+        return cacheFile != null && cacheFile.delete();
+    }
+
+    /**
+     * Attach to the JVM, load the management agent if needed and read the address of the local JMX connector.
+     * The agent and system properties are fetched at most once and the JVM is always detached.
+     */
+    @Nonnull
+    protected String attachAndResolve(@Nonnull String pid) throws IOException {
+        try {
+            Integer.parseInt(pid);
+        } catch (Exception e) {
+            logger.warn("Exception parsing PID '{}'", pid, e);
+        }
+        VirtualMachine vm;
+        long attachStartInNanos = System.nanoTime();
+        try {
+            vm = VirtualMachine.attach(pid);
+        } catch (Exception e) {
+            throw new IllegalStateException("Exception attaching VM with PID '" + pid + "'", e);
+        } finally {
+            timings.recordSince(Timings.Phase.ATTACH, attachStartInNanos);
+        }
+        try {
+            Properties agentProperties = vm.getAgentProperties();
+            Properties systemProperties = null;
+            if (logger.isTraceEnabled()) {
+                systemProperties = vm.getSystemProperties();
+                logger.trace("VM Agent Properties");
+                for (String key : new TreeSet<String>(agentProperties.stringPropertyNames())) {
+                    logger.trace("\t {}: {}", key, agentProperties.get(key));
+                }
+                logger.trace("VM System Properties");
+                for (String key : new TreeSet<String>(systemProperties.stringPropertyNames())) {
+                    logger.trace("\t {}: {}", key, systemProperties.get(key));
+                }
+            }
+
+            String connectorAddress = agentProperties.getProperty(LOCAL_CONNECTOR_ADDRESS);
+            if (connectorAddress == null) {
+                if (systemProperties == null) {
+                    systemProperties = vm.getSystemProperties();
+                }
+                String agent = systemProperties.getProperty("java.home") + File.separator + "lib" + File.separator + "management-agent.jar";
+                long loadAgentStartInNanos = System.nanoTime();
+                try {
+                    vm.loadAgent(agent);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Exception loading agent " + agent);
+                } finally {
+                    timings.recordSince(Timings.Phase.LOAD_AGENT, loadAgentStartInNanos);
+                }
+                connectorAddress = vm.getAgentProperties().getProperty(LOCAL_CONNECTOR_ADDRESS);
+            }
+
+            if (connectorAddress == null) {
+                throw new IllegalStateException("Could not attach to pid: " + pid + ". No connector available");
+            }
+            return connectorAddress;
+        } finally {
+            try {
+                vm.detach();
+            } catch (IOException e) {
+                logger.debug("Exception detaching VM {}", pid, e);
+            }
+        }
+    }
+
+    /**
+     * @return <code>null</code> if the JVM has no perf counters
+     */
+    @Nullable
+    protected Long getCreationTime(@Nonnull String pid) {
+        if (cacheDir == null || PerfData.findFile(pid) == null) {
+            return null;
+        }
+        try {
+            return PerfData.open(pid).getLong(VM_CREATION_TIME_COUNTER);
+        } catch (Exception e) {
+            logger.debug("Exception reading the creation time of JVM {}", pid, e);
+            return null;
+        }
+    }
+
+    protected boolean isOwnedByCurrentUser(@Nonnull File cacheFile) {
+        return Files2.isOwnedByCurrentUser(cacheFile);
+    }
+
+    @Nullable
+    private File getCacheFile(@Nonnull String pid) {
+        return cacheDir == null ? null : new File(cacheDir, "connector-address-" + pid + ".properties");
+    }
+
+    private void save(@Nonnull File cacheFile, long creationTime, @Nonnull String address) throws IOException {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Exception creating directory " + cacheDir);
+        }
+        Properties cache = new Properties();
+        cache.setProperty("creationTime", Long.toString(creationTime));
+        cache.setProperty("address", address);
+
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmpFile);
+        try {
+            // the address gives access to the JVM, only readable by the owner as the hsperfdata file, and only
+            // writable by the owner so that nobody else can redirect the invoker to another endpoint
+            tmpFile.setReadable(false, false);
+            tmpFile.setReadable(true, true);
+            tmpFile.setWritable(false, false);
+            tmpFile.setWritable(true, true);
+            cache.store(out, "Local JMX connector address of JVM " + cacheFile.getName());
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(cacheFile)) {
+            cacheFile.delete();
+            if (!tmpFile.renameTo(cacheFile)) {
+                throw new IOException("Exception renaming " + tmpFile + " to " + cacheFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Previous samples of monotonic counters (e.g. <code>CollectionCount</code>, request counts, bytes sent) to compute
+ * their delta and per second rate between two samples.
+ * <p/>
+ * Samples are indexed by a primitive <code>long</code> key (e.g. MBean index and attribute index, see
+ * {@link #key(int, int)}) in an open addressing hash table of primitive arrays: no boxing and no entry object per
+ * counter. A value lower than the previous one is considered as a counter reset (e.g. restart of the component): the
+ * delta is then the value itself, the counter being assumed to restart from zero.
+ * <p/>
+ * Not thread safe.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class CounterRates {
+
+    private static final byte EMPTY = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+
+    private long[] keys;
+    /**
+     * Previous values, raw bits of the double for {@link #DOUBLE} values
+     */
+    private long[] values;
+    private long[] timestampsInNanos;
+    private byte[] types;
+    private int size;
+
+    public CounterRates() {
+        this(16);
+    }
+
+    public CounterRates(int expectedCounters) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedCounters) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return the key of the given attribute of the given MBean
+     */
+    public static long key(int mbeanIndex, int attributeIndex) {
+        return ((long) mbeanIndex << 32) | (attributeIndex & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Record the given sample and return its delta with the previous sample of the same counter.
+     *
+     * @param value             sampled value, only integral and floating point {@link Number}s are counters
+     * @param timestampInNanos  {@link System#nanoTime()} of the sample
+     * @return <code>null</code> if the value is not a number or if it is the first sample of the counter
+     */
+    @Nullable
+    public Delta update(long key, @Nullable Object value, long timestampInNanos) {
+        byte type;
+        long bits;
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte ||
+                value instanceof AtomicLong || value instanceof AtomicInteger) {
+            type = LONG;
+            bits = ((Number) value).longValue();
+        } else if (value instanceof Number) {
+            type = DOUBLE;
+            bits = Double.doubleToRawLongBits(((Number) value).doubleValue());
+        } else {
+            return null;
+        }
+
+        int index = indexOf(key);
+        if (types[index] == EMPTY) {
+            keys[index] = key;
+            types[index] = type;
+            values[index] = bits;
+            timestampsInNanos[index] = timestampInNanos;
+            if (++size * 2 > keys.length) {
+                rehash(keys.length * 2);
+            }
+            return null;
+        }
+
+        long previousBits = values[index];
+        byte previousType = types[index];
+        long elapsedInNanos = timestampInNanos - timestampsInNanos[index];
+        values[index] = bits;
+        types[index] = type;
+        timestampsInNanos[index] = timestampInNanos;
+
+        Delta delta;
+        if (type == LONG && previousType == LONG) {
+            boolean reset = bits < previousBits;
+            delta = new Delta(reset ? bits : bits - previousBits, reset, elapsedInNanos);
+        } else {
+            double current = type == LONG ? bits : Double.longBitsToDouble(bits);
+            double previous = previousType == LONG ? previousBits : Double.longBitsToDouble(previousBits);
+            boolean reset = current < previous;
+            delta = new Delta(reset ? current : current - previous, reset, elapsedInNanos);
+        }
+        return delta;
+    }
+
+    /**
+     * Forget all the samples.
+     */
+    public void clear() {
+        allocate(keys.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (types[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        long[] oldTimestamps = timestampsInNanos;
+        byte[] oldTypes = types;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldTypes[i] != EMPTY) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                timestampsInNanos[index] = oldTimestamps[i];
+                types[index] = oldTypes[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        timestampsInNanos = new long[capacity];
+        types = new byte[capacity];
+        size = 0;
+    }
+
+    /**
+     * Delta of a counter between two samples.
+     */
+    public static class Delta {
+        private final Number delta;
+        private final boolean reset;
+        private final long elapsedInNanos;
+
+        Delta(@Nonnull Number delta, boolean reset, long elapsedInNanos) {
+            this.delta = delta;
+            this.reset = reset;
+            this.elapsedInNanos = elapsedInNanos;
+        }
+
+        /**
+         * @return a {@link Long} for integral counters, a {@link Double} otherwise
+         */
+        @Nonnull
+        public Number getDelta() {
+            return delta;
+        }
+
+        /**
+         * @return <code>true</code> if the counter has been reset since the previous sample
+         */
+        public boolean isReset() {
+            return reset;
+        }
+
+        /**
+         * @return the delta per second, {@link Double#NaN} if both samples have the same timestamp
+         */
+        public double getRatePerSecond() {
+            if (elapsedInNanos <= 0) {
+                return Double.NaN;
+            }
+            return delta.doubleValue() * TimeUnit.SECONDS.toNanos(1) / elapsedInNanos;
+        }
+
+        public long getElapsedInNanos() {
+            return elapsedInNanos;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.util.Json;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link ResultListener} writing the results as CSV (RFC 4180) with a header line. When several attributes are read,
+ * one line is written per attribute. Non scalar values (composite data, arrays, ...) are written as JSON.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class CsvResultWriter implements ResultListener {
+
+    private final PrintWriter out;
+
+    public CsvResultWriter(@Nonnull PrintWriter out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void onStart(@Nonnull List<String> pids) {
+        out.print("pid,objectName,attribute,value,durationMillis,error\r\n");
+        out.flush();
+    }
+
+    @Override
+    public synchronized void onResult(@Nonnull JmxInvoker.Result result) {
+        String duration = String.format(Locale.ENGLISH, "%.3f", result.durationInNanos / 1000000.0);
+        if (result.exception != null) {
+            writeLine(result, null, null, duration, result.exception.toString());
+        } else if (result.value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) result.value).entrySet()) {
+                writeLine(result, String.valueOf(entry.getKey()), entry.getValue(), duration, null);
+            }
+        } else {
+            writeLine(result, null, result.value == void.class ? null : result.value, duration, null);
+        }
+        out.flush();
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        out.flush();
+    }
+
+    private void writeLine(@Nonnull JmxInvoker.Result result, @Nullable String attribute, @Nullable Object value, @Nonnull String duration, @Nullable String error) {
+        String valueAsString;
+        if (value == null) {
+            valueAsString = null;
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof CharSequence) {
+            valueAsString = value.toString();
+        } else {
+            valueAsString = Json.toJson(value);
+        }
+        out.print(escape(result.pid));
+        out.print(',');
+        out.print(escape(result.objectName == null ? null : result.objectName.toString()));
+        out.print(',');
+        out.print(escape(attribute));
+        out.print(',');
+        out.print(escape(valueAsString));
+        out.print(',');
+        out.print(duration);
+        out.print(',');
+        out.print(escape(error));
+        out.print("\r\n");
+    }
+
+    @Nonnull
+    static String escape(@Nullable String value) {
+        if (value == null) {
+            return "";
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+}
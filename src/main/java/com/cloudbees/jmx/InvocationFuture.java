@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * {@link Future} of an asynchronous invocation of {@link AsyncJmxInvoker} to which {@linkplain Callback callbacks} can be
+ * attached so that callers never block a thread waiting for the result.
+ * <p/>
+ * A future that {@linkplain #timeout(long) times out} completes with a {@link TimeoutException} and interrupts the
+ * thread running the invocation, as does {@link #cancel(boolean) cancel(true)}.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class InvocationFuture<V> extends FutureTask<V> {
+
+    /**
+     * Callback notified once the invocation completes. Callbacks run on the thread completing the invocation and must
+     * not block.
+     */
+    public interface Callback<V> {
+        void onSuccess(@Nullable V value);
+
+        /**
+         * @param throwable cause of the failure of the invocation, a {@link TimeoutException} if it timed out or a
+         *                  {@link CancellationException} if it was cancelled
+         */
+        void onFailure(@Nonnull Throwable throwable);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(InvocationFuture.class);
+
+    private final List<Callback<? super V>> callbacks = new ArrayList<Callback<? super V>>(1);
+
+    private boolean done;
+
+    private Thread runner;
+
+    private boolean runnerInterrupted;
+
+    @Nullable
+    private volatile Future<?> timeoutTask;
+
+    public InvocationFuture(@Nonnull Callable<V> callable) {
+        super(callable);
+    }
+
+    /**
+     * Register a callback, called immediately if the invocation is already completed.
+     */
+    @Nonnull
+    public InvocationFuture<V> addCallback(@Nonnull Callback<? super V> callback) {
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        notifyCallback(callback);
+        return this;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            runner = Thread.currentThread();
+        }
+        try {
+            super.run();
+        } finally {
+            synchronized (this) {
+                runner = null;
+                if (runnerInterrupted) {
+                    // don't leak the interruption to the next task of the pooled thread
+                    Thread.interrupted();
+                    runnerInterrupted = false;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        // interrupt ourselves rather than by FutureTask to keep track of the interruption
+        boolean cancelled = super.cancel(false);
+        if (cancelled && mayInterruptIfRunning) {
+            interruptRunner();
+        }
+        return cancelled;
+    }
+
+    /**
+     * Complete the invocation with a {@link TimeoutException} if it is not completed yet.
+     *
+     * @return <code>true</code> if the invocation timed out
+     */
+    public boolean timeout(long timeoutInMillis) {
+        if (isDone()) {
+            return false;
+        }
+        // no-op if the invocation completes concurrently
+        setException(new TimeoutException("Invocation timed out after " + timeoutInMillis + "ms"));
+        interruptRunner();
+        return true;
+    }
+
+    /**
+     * Task scheduled to {@linkplain #timeout(long) time out} this invocation, cancelled on completion.
+     */
+    void setTimeoutTask(@Nonnull Future<?> timeoutTask) {
+        this.timeoutTask = timeoutTask;
+        if (isDone()) {
+            timeoutTask.cancel(false);
+        }
+    }
+
+    private synchronized void interruptRunner() {
+        if (runner != null && runner != Thread.currentThread()) {
+            runnerInterrupted = true;
+            runner.interrupt();
+        }
+    }
+
+    @Override
+    protected void done() {
+        Future<?> timeoutTask = this.timeoutTask;
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+        }
+        List<Callback<? super V>> callbacks;
+        synchronized (this) {
+            done = true;
+            callbacks = new ArrayList<Callback<? super V>>(this.callbacks);
+            this.callbacks.clear();
+        }
+        for (Callback<? super V> callback : callbacks) {
+            notifyCallback(callback);
+        }
+    }
+
+    private void notifyCallback(@Nonnull Callback<? super V> callback) {
+        V value;
+        try {
+            value = get();
+        } catch (ExecutionException e) {
+            notifyFailure(callback, e.getCause());
+            return;
+        } catch (CancellationException e) {
+            notifyFailure(callback, e);
+            return;
+        } catch (InterruptedException e) {
+            // can not happen, the future is done
+            Thread.currentThread().interrupt();
+            notifyFailure(callback, e);
+            return;
+        }
+        try {
+            callback.onSuccess(value);
+        } catch (RuntimeException e) {
+            logger.warn("Exception in callback {}", callback, e);
+        }
+    }
+
+    private void notifyFailure(@Nonnull Callback<? super V> callback, @Nonnull Throwable throwable) {
+        try {
+            callback.onFailure(throwable);
+        } catch (RuntimeException e) {
+            logger.warn("Exception in callback {}", callback, e);
+        }
+    }
+}
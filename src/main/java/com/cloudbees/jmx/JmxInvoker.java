@@ -15,9 +15,14 @@
  */
 package com.cloudbees.jmx;
 
+import com.cloudbees.jmx.convert.TypeConverter;
+import com.cloudbees.jmx.convert.TypeConverters;
+import com.cloudbees.jmx.perfdata.PerfData;
+import com.cloudbees.jmx.perfdata.PerfDataMBeans;
 import com.cloudbees.util.Strings2;
 import com.cloudbees.util.nio.Files2;
 import com.sun.tools.attach.VirtualMachine;
+import com.sun.tools.attach.VirtualMachineDescriptor;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
@@ -30,14 +35,31 @@ import org.slf4j.impl.SimpleLogger;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.management.*;
+import javax.management.remote.JMXConnectionNotification;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 /**
  * Invoke arbitrary JMX operation or attribute connecting to the target local JVM thanks to the
@@ -48,32 +70,48 @@ import java.util.*;
  */
 public class JmxInvoker {
     public static final String NULL_VALUE = "##NULL##";
+    /**
+     * Attribute name used to read all the readable attributes of a MBean.
+     */
+    public static final String ALL_ATTRIBUTES = "*";
+    /**
+     * Maximum number of JVMs invoked concurrently.
+     */
+    public static final int MAX_JVM_PARALLELISM = 16;
+    /**
+     * Maximum number of pending MBean invocations per thread with <code>--parallelism</code>.
+     */
+    public static final int IN_FLIGHT_INVOCATIONS_PER_THREAD = 4;
     private Logger logger = LoggerFactory.getLogger(JmxInvoker.class);
+    private TypeConverters typeConverters = TypeConverters.getDefault();
+    private boolean perfCounters;
+    private final Timings timings = new Timings();
+    private ConnectorAddressResolver connectorAddressResolver = new ConnectorAddressResolver(null, timings);
+    @Nullable
+    private ConnectionProvider connectionProvider;
+    /**
+     * Connectors opened by {@link #connectToMbeanServer(String)}, closed by {@link #closeMbeanServerConnection(MBeanServerConnection)}
+     */
+    private final Map<MBeanServerConnection, JMXConnector> jmxConnectors = Collections.synchronizedMap(new WeakHashMap<MBeanServerConnection, JMXConnector>());
+    /**
+     * Connections borrowed from the {@link ConnectionProvider}, released by {@link #closeMbeanServerConnection(MBeanServerConnection)}
+     */
+    private final Map<MBeanServerConnection, ConnectionProvider> providedConnections = Collections.synchronizedMap(new IdentityHashMap<MBeanServerConnection, ConnectionProvider>());
+    private final Map<MBeanServerConnection, MBeanInfoCache> mbeanInfoCaches = Collections.synchronizedMap(new WeakHashMap<MBeanServerConnection, MBeanInfoCache>());
 
     public static void main(String[] args) throws Exception {
 
-        long timeBeforeInMillis = System.currentTimeMillis();
+        long startInNanos = System.nanoTime();
+        long jvmStartupInMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        JmxInvoker jmxInvoker = null;
 
         JmxInvokerArguments arguments = new JmxInvokerArguments();
         CmdLineParser parser = new CmdLineParser(arguments);
+        ConnectionProvider connectionProvider = null;
         try {
             parser.parseArgument(args);
             arguments.cmdLineParser = parser;
-            if (Strings2.isEmpty(arguments.pid) && arguments.pidFile == null) {
-                throw new CmdLineException(parser, "Options --pid and --pid-file can NOT be both null");
-            } else if (!Strings2.isEmpty(arguments.pid) && arguments.pidFile != null) {
-                throw new CmdLineException(parser, "Options --pid and --pid-file can NOT be both defined");
-            } else if (
-                    (arguments.attribute == null || arguments.attribute.length == 0) &&
-                            (arguments.operation == null || arguments.operation.length == 0) &&
-                            arguments.listMbeans == false && arguments.describeMbeans == false) {
-                throw new CmdLineException(parser, "Option --attribute or --operation or --list-mbeans or --describe-mbeans must be defined");
-            } else if (
-                    (arguments.attribute != null && arguments.attribute.length > 0) &&
-                            (arguments.operation != null && arguments.operation.length > 0)) {
-                throw new CmdLineException(parser, "Options --attribute and --operation can NOT be both defined");
-            }
-
+            checkArguments(arguments);
 
             String logLevel;
             if (arguments.superVerbose) {
@@ -85,10 +123,112 @@ public class JmxInvoker {
             }
             System.setProperty(SimpleLogger.DEFAULT_LOG_LEVEL_KEY, logLevel);
 
-            Map<ObjectName, Result> results = new JmxInvoker().process(arguments);
-            for (Map.Entry<ObjectName, Result> entry : results.entrySet()) {
-                System.out.println(entry.getValue().description);
+            if (arguments.daemonPort != null) {
+                boolean success = JmxInvokerDaemon.sendRequest(arguments.daemonPort, args, System.out);
+                if (!success) {
+                    throw new IllegalStateException("Invocation failed on JMX Invoker daemon listening on port " + arguments.daemonPort);
+                }
+                return;
+            }
+
+            jmxInvoker = new JmxInvoker();
+            jmxInvoker.getTimings().record(Timings.Phase.JVM_STARTUP, TimeUnit.MILLISECONDS.toNanos(jvmStartupInMillis));
+            jmxInvoker.setPerfCounters(arguments.perfCounters);
+            if (arguments.cacheDir != null) {
+                jmxInvoker.setConnectorAddressResolver(new ConnectorAddressResolver(arguments.cacheDir, jmxInvoker.getTimings()));
+            }
+            if (arguments.url != null) {
+                PooledConnectionProvider pooledConnectionProvider = new PooledConnectionProvider();
+                if (arguments.connectTimeoutInMillis != null) {
+                    pooledConnectionProvider.setConnectTimeoutInMillis(arguments.connectTimeoutInMillis);
+                }
+                connectionProvider = pooledConnectionProvider;
+                jmxInvoker.setConnectionProvider(connectionProvider);
+            }
+
+            if (arguments.shell || arguments.listen || arguments.exporterPort != null || arguments.intervalInMillis != null) {
+                jmxInvoker.registerTimings();
             }
+
+            if (arguments.shell) {
+                String pid = jmxInvoker.readPid(arguments);
+                MBeanServerConnection mbeanServer = jmxInvoker.connectToMbeanServer(pid);
+                try {
+                    new JmxShell(jmxInvoker, pid, mbeanServer, arguments.objectName).run();
+                } finally {
+                    jmxInvoker.closeMbeanServerConnection(mbeanServer);
+                }
+                return;
+            }
+
+            if (arguments.script != null) {
+                String pid = jmxInvoker.readPid(arguments);
+                MBeanServerConnection mbeanServer = jmxInvoker.connectToMbeanServer(pid);
+                JmxShell shell = new JmxShell(jmxInvoker, pid, mbeanServer, arguments.objectName);
+                InputStream in = "-".equals(arguments.script.getPath()) ? System.in : new FileInputStream(arguments.script);
+                boolean success;
+                try {
+                    success = shell.executeScript(new BufferedReader(new InputStreamReader(in, "UTF-8")), arguments.parallelism, new PrintWriter(System.out));
+                } finally {
+                    in.close();
+                    jmxInvoker.closeMbeanServerConnection(mbeanServer);
+                }
+                if (!success) {
+                    throw new IllegalStateException("Failures executing script " + arguments.script + ", see the ERROR lines");
+                }
+                return;
+            }
+
+            if (arguments.listen) {
+                Writer out = arguments.listenFile == null ? new OutputStreamWriter(System.out) :
+                        new OutputStreamWriter(new FileOutputStream(arguments.listenFile, true), "UTF-8");
+                try {
+                    jmxInvoker.listen(jmxInvoker.readPids(arguments), arguments, out);
+                } finally {
+                    out.close();
+                }
+                return;
+            }
+
+            if (arguments.exporterPort != null) {
+                List<ObjectName> objectNames = new ArrayList<ObjectName>();
+                objectNames.add(arguments.objectName);
+                if (arguments.exporterObjectNames != null) {
+                    objectNames.addAll(arguments.exporterObjectNames);
+                }
+                final MetricsExporter exporter = new MetricsExporter(jmxInvoker, jmxInvoker.readPids(arguments), objectNames);
+                if (arguments.attribute != null && arguments.attribute.length == 1 && !ALL_ATTRIBUTES.equals(arguments.attribute[0])) {
+                    exporter.setAttributes(arguments.attribute[0].trim().split("\\s*,\\s*"));
+                }
+                if (arguments.select != null) {
+                    exporter.setSelectors(OpenDataPaths.parseSelectors(arguments.select));
+                }
+                if (arguments.where != null) {
+                    exporter.setQuery(QueryExpressions.parse(arguments.where));
+                }
+                exporter.setTtlInMillis(arguments.exporterTtlInMillis);
+                exporter.start(arguments.exporterPort);
+                Runtime.getRuntime().addShutdownHook(new Thread("jmx-exporter-shutdown") {
+                    @Override
+                    public void run() {
+                        exporter.close();
+                    }
+                });
+                System.out.println("Export metrics on http://127.0.0.1:" + exporter.getPort() + MetricsExporter.PATH);
+                exporter.awaitClose();
+                return;
+            }
+
+            if (arguments.intervalInMillis != null) {
+                jmxInvoker.sample(jmxInvoker.readPid(arguments), arguments, System.out);
+                return;
+            }
+
+            ResultListener resultListener = arguments.outputFormat.newResultWriter(new PrintWriter(System.out));
+            if (arguments.sorted) {
+                resultListener = new SortedResultListener(resultListener);
+            }
+            jmxInvoker.processAll(arguments, resultListener);
         } catch (CmdLineException e) {
             System.err.println("INVALID INVOCATION: " + e.getMessage());
             System.err.println("Arguments: " + Strings2.join(args, " "));
@@ -101,21 +241,285 @@ public class JmxInvoker {
             e.printStackTrace();
             throw e;
         } finally {
+            if (connectionProvider != null) {
+                connectionProvider.close();
+            }
+            long durationInNanos = System.nanoTime() - startInNanos;
+            if (arguments.timings && jmxInvoker != null) {
+                jmxInvoker.getTimings().record(Timings.Phase.TOTAL, durationInNanos);
+                System.err.print(jmxInvoker.getTimings().getReport());
+            }
             if(arguments.verbose ||arguments.superVerbose) {
-                System.out.println("Duration: " + (System.currentTimeMillis() - timeBeforeInMillis) + "ms");
+                System.out.println("Duration: " + TimeUnit.NANOSECONDS.toMillis(durationInNanos) + "ms");
+            }
+        }
+    }
+
+    /**
+     * Check the consistency of the given <code>arguments</code>.
+     *
+     * @throws CmdLineException if the arguments are inconsistent
+     */
+    static void checkArguments(@Nonnull JmxInvokerArguments arguments) throws CmdLineException {
+        CmdLineParser parser = arguments.cmdLineParser;
+        int targets = (Strings2.isEmpty(arguments.pid) ? 0 : 1) + (arguments.pidFile == null ? 0 : 1) +
+                (Strings2.isEmpty(arguments.vmFilter) ? 0 : 1) + (Strings2.isEmpty(arguments.url) ? 0 : 1);
+        if (targets == 0) {
+            throw new CmdLineException(parser, "Options --pid, --pid-file, --vm-filter and --url can NOT be all null");
+        } else if (targets > 1) {
+            throw new CmdLineException(parser, "Only one of the options --pid, --pid-file, --vm-filter and --url can be defined");
+        } else if (arguments.url != null && arguments.perfCounters) {
+            throw new CmdLineException(parser, "Options --url and --perf-counters can NOT be both defined");
+        } else if (arguments.connectTimeoutInMillis != null && arguments.connectTimeoutInMillis < 1) {
+            throw new CmdLineException(parser, "Option --connect-timeout must be greater than 0");
+        } else if (arguments.exporterPort != null && (arguments.shell || arguments.script != null || arguments.listen ||
+                arguments.intervalInMillis != null || arguments.daemonPort != null || arguments.listMbeans || arguments.describeMbeans ||
+                (arguments.operation != null && arguments.operation.length > 0) || (arguments.attribute != null && arguments.attribute.length > 1))) {
+            throw new CmdLineException(parser, "Option --exporter-port can NOT be combined with --shell, --script, --listen, --interval, " +
+                    "--daemon-port, --list-mbeans, --describe-mbeans, --operation or attribute writes");
+        } else if (arguments.exporterPort == null && arguments.exporterObjectNames != null) {
+            throw new CmdLineException(parser, "Option --exporter-object-name requires --exporter-port");
+        } else if (arguments.exporterTtlInMillis < 0) {
+            throw new CmdLineException(parser, "Option --exporter-ttl must be greater than or equal to 0");
+        } else if (arguments.perfCounters && arguments.daemonPort != null) {
+            throw new CmdLineException(parser, "Options --perf-counters and --daemon-port can NOT be both defined");
+        } else if (arguments.daemonPort != null && (arguments.intervalInMillis != null || arguments.rate || arguments.count != null)) {
+            throw new CmdLineException(parser, "Options --interval, --rate and --count can NOT be combined with --daemon-port");
+        } else if (arguments.daemonPort != null && arguments.timings) {
+            throw new CmdLineException(parser, "Option --timings can NOT be combined with --daemon-port, the timings of the daemon are exposed as an MBean");
+        } else if (arguments.perfCounters && ((arguments.operation != null && arguments.operation.length > 0) ||
+                (arguments.attribute != null && arguments.attribute.length > 1))) {
+            throw new CmdLineException(parser, "Option --perf-counters is read only, --operation and attribute writes are NOT supported");
+        } else if (arguments.shell && arguments.script != null) {
+            throw new CmdLineException(parser, "Options --shell and --script can NOT be both defined");
+        } else if (arguments.shell || arguments.script != null) {
+            if (arguments.intervalInMillis != null || arguments.daemonPort != null) {
+                throw new CmdLineException(parser, "Options --shell and --script can NOT be combined with --interval or --daemon-port");
+            } else if (arguments.parallelism < 1) {
+                throw new CmdLineException(parser, "Option --parallelism must be greater than 0");
+            }
+        } else if (arguments.objectName == null) {
+            throw new CmdLineException(parser, "Option \"-on (--object-name)\" is required");
+        } else if (arguments.listen && ((arguments.attribute != null && arguments.attribute.length > 0) ||
+                (arguments.operation != null && arguments.operation.length > 0) ||
+                arguments.listMbeans || arguments.describeMbeans || arguments.intervalInMillis != null)) {
+            throw new CmdLineException(parser, "Option --listen can NOT be combined with --attribute, --operation, --list-mbeans, --describe-mbeans or --interval");
+        } else if (arguments.listen && (arguments.daemonPort != null || arguments.perfCounters)) {
+            throw new CmdLineException(parser, "Option --listen can NOT be combined with --daemon-port or --perf-counters");
+        } else if (arguments.listen && arguments.listenQueueSize < 1) {
+            throw new CmdLineException(parser, "Option --listen-queue-size must be greater than 0");
+        } else if (arguments.listenFile != null && !arguments.listen) {
+            throw new CmdLineException(parser, "Option --listen-file requires --listen");
+        } else if (!arguments.listen && arguments.exporterPort == null &&
+                (arguments.attribute == null || arguments.attribute.length == 0) &&
+                        (arguments.operation == null || arguments.operation.length == 0) &&
+                        arguments.listMbeans == false && arguments.describeMbeans == false) {
+            throw new CmdLineException(parser, "Option --attribute or --operation or --list-mbeans or --describe-mbeans or --listen or --exporter-port must be defined");
+        } else if (
+                (arguments.attribute != null && arguments.attribute.length > 0) &&
+                        (arguments.operation != null && arguments.operation.length > 0)) {
+            throw new CmdLineException(parser, "Options --attribute and --operation can NOT be both defined");
+        } else if (
+                arguments.attribute != null && arguments.attribute.length > 1 &&
+                        isMultipleAttributes(arguments.attribute[0])) {
+            throw new CmdLineException(parser, "Option --attribute can NOT write a value to more than one attribute");
+        } else if (arguments.parallelism < 1) {
+            throw new CmdLineException(parser, "Option --parallelism must be greater than 0");
+        } else if (arguments.count != null && arguments.intervalInMillis == null && !arguments.listen) {
+            throw new CmdLineException(parser, "Option --count requires --interval or --listen");
+        } else if (arguments.rate && arguments.intervalInMillis == null) {
+            throw new CmdLineException(parser, "Option --rate requires --interval");
+        } else if (arguments.intervalInMillis != null && (arguments.attribute == null || arguments.attribute.length != 1)) {
+            throw new CmdLineException(parser, "Option --interval requires --attribute to read");
+        } else if (arguments.intervalInMillis != null && arguments.intervalInMillis <= 0) {
+            throw new CmdLineException(parser, "Option --interval must be greater than 0");
+        } else if (arguments.select != null && arguments.exporterPort == null && (arguments.attribute == null || arguments.attribute.length != 1) &&
+                (arguments.operation == null || arguments.operation.length == 0)) {
+            throw new CmdLineException(parser, "Option --select requires --attribute to read or --operation");
+        } else if (arguments.where != null || arguments.select != null) {
+            try {
+                if (arguments.where != null) {
+                    QueryExpressions.parse(arguments.where);
+                }
+                if (arguments.select != null) {
+                    OpenDataPaths.parseSelectors(arguments.select);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new CmdLineException(parser, e.getMessage());
             }
         }
     }
 
+    /**
+     * Return <code>true</code> if the given <code>--attribute</code> name is a comma separated list of attribute names
+     * or the {@value #ALL_ATTRIBUTES} wildcard.
+     */
+    static boolean isMultipleAttributes(@Nonnull String attributeName) {
+        return ALL_ATTRIBUTES.equals(attributeName) || attributeName.indexOf(',') != -1;
+    }
+
     private static void setSystemPropertyIfNotDefined(String systemPropertyName, String value) {
         if (!System.getProperties().contains(systemPropertyName))
             System.setProperty(systemPropertyName, value);
     }
 
+    /**
+     * Return the pids of the target JVMs defined by <code>--pid</code>, <code>--pid-file</code> or <code>--vm-filter</code>.
+     */
+    @Nonnull
+    protected List<String> readPids(@Nonnull JmxInvokerArguments arguments) throws IOException {
+        List<String> pids = new ArrayList<String>();
+        if (arguments.pid != null) {
+            for (String pid : arguments.pid.split(",")) {
+                if (!pid.trim().isEmpty()) {
+                    pids.add(pid.trim());
+                }
+            }
+        } else if (arguments.url != null) {
+            for (String url : arguments.url.split(",")) {
+                if (!url.trim().isEmpty()) {
+                    pids.add(url.trim());
+                }
+            }
+        } else if (arguments.pidFile != null) {
+            List<File> pidFiles = Files2.glob(arguments.pidFile.getPath());
+            if (pidFiles.isEmpty()) {
+                throw new IllegalArgumentException("No pid file found matching " + arguments.pidFile);
+            }
+            for (File pidFile : pidFiles) {
+                pids.add(Files2.readFile(pidFile, "US-ASCII").replace("\n", "").trim());
+            }
+        } else {
+            pids.addAll(findPids(arguments.vmFilter));
+            if (pids.isEmpty()) {
+                throw new IllegalArgumentException("No JVM found matching " + arguments.vmFilter);
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * Return the pids of the local JVMs whose display name (main class and arguments) matches the given regular
+     * expression, excluding the current JVM.
+     */
+    @Nonnull
+    protected List<String> findPids(@Nonnull String vmFilter) {
+        Pattern pattern = Pattern.compile(vmFilter);
+        String currentPid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        List<String> pids = new ArrayList<String>();
+        for (VirtualMachineDescriptor descriptor : VirtualMachine.list()) {
+            if (!descriptor.id().equals(currentPid) && pattern.matcher(descriptor.displayName()).find()) {
+                logger.debug("Select JVM {}: {}", descriptor.id(), descriptor.displayName());
+                pids.add(descriptor.id());
+            } else {
+                logger.trace("Ignore JVM {}: {}", descriptor.id(), descriptor.displayName());
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * Return the pid of the single target JVM.
+     *
+     * @throws IllegalArgumentException if the arguments target more than one JVM
+     */
+    @Nonnull
+    protected String readPid(@Nonnull JmxInvokerArguments arguments) throws IOException {
+        List<String> pids = readPids(arguments);
+        if (pids.size() != 1) {
+            throw new IllegalArgumentException("Exactly one JVM expected, found " + pids);
+        }
+        return pids.get(0);
+    }
+
+    /**
+     * Invoke all the target JVMs concurrently.
+     *
+     * @return the results indexed by pid and then by {@link ObjectName}. If a JVM can not be invoked, its results
+     *         only contain an exception result indexed by the searched ObjectName.
+     */
+    @Nonnull
+    public Map<String, Map<ObjectName, Result>> processAll(@Nonnull JmxInvokerArguments arguments) throws IOException {
+        ResultCollector resultCollector = new ResultCollector();
+        processAll(arguments, resultCollector);
+        return resultCollector.getResultsByPid();
+    }
+
+    /**
+     * Invoke all the target JVMs concurrently, pushing each {@link Result} to the given <code>listener</code> as soon
+     * as it is available. The listener is invoked concurrently when several JVMs are targeted.
+     */
+    public void processAll(@Nonnull final JmxInvokerArguments arguments, @Nonnull final ResultListener listener) throws IOException {
+        List<String> pids = readPids(arguments);
+        listener.onStart(pids);
+        try {
+            if (pids.size() == 1) {
+                process(pids.get(0), arguments, listener);
+            } else {
+                processConcurrently(pids, arguments, listener);
+            }
+        } finally {
+            // terminate the output (e.g. closing JSON array) even if the invocation failed
+            listener.onComplete();
+        }
+    }
+
+    private void processConcurrently(@Nonnull List<String> pids, @Nonnull final JmxInvokerArguments arguments, @Nonnull final ResultListener listener) {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(pids.size(), MAX_JVM_PARALLELISM), new DaemonThreadFactory("jmx-invoker-jvm-"));
+        try {
+            Map<String, Future<Void>> futures = new LinkedHashMap<String, Future<Void>>();
+            for (final String pid : pids) {
+                futures.put(pid, executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        process(pid, arguments, listener);
+                        return null;
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<Void>> entry : futures.entrySet()) {
+                try {
+                    entry.getValue().get();
+                } catch (ExecutionException e) {
+                    logger.warn("Exception invoking JVM {}", entry.getKey(), e.getCause());
+                    publish(entry.getKey(), newExceptionResult(arguments.objectName, e.getCause()), listener);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted invoking JVM " + entry.getKey(), e);
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Invoke the single target JVM.
+     */
     public Map<ObjectName, Result> process(JmxInvokerArguments arguments) throws IOException {
+        return process(readPid(arguments), arguments);
+    }
+
+    public Map<ObjectName, Result> process(@Nonnull String pid, @Nonnull JmxInvokerArguments arguments) throws IOException {
+        ResultCollector resultCollector = new ResultCollector();
+        process(pid, arguments, resultCollector);
+        return resultCollector.getResults(pid);
+    }
+
+    /**
+     * Invoke the JVM with the given <code>pid</code>, pushing each {@link Result} to the given <code>listener</code>
+     * as soon as it is available, in the order of the {@link ObjectName}s.
+     */
+    public void process(@Nonnull String pid, @Nonnull JmxInvokerArguments arguments, @Nonnull ResultListener listener) throws IOException {
+        MBeanServerConnection mbeanServer = connectToMbeanServer(pid);
+        try {
+            process(pid, mbeanServer, arguments, listener);
+        } finally {
+            closeMbeanServerConnection(mbeanServer);
+        }
+    }
 
-        String pid = (arguments.pid == null) ? Files2.readFile(arguments.pidFile, "US-ASCII") : arguments.pid;
-        pid = pid.replace("\n", "").trim();
+    protected void process(@Nonnull String pid, @Nonnull MBeanServerConnection mbeanServer, @Nonnull JmxInvokerArguments arguments, @Nonnull ResultListener listener) throws IOException {
 
         ObjectName on = arguments.objectName;
 
@@ -127,39 +531,26 @@ public class JmxInvoker {
         String[] attr = arguments.attribute;
         String attributeName = attr == null || attr.length == 0 ? null : attr[0];
         String attributeValue = attr == null || attr.length < 2 ? null : attr[1];
+        List<String[]> selectors = arguments.select == null ? null : OpenDataPaths.parseSelectors(arguments.select);
 
-        MBeanServerConnection mbeanServer = connectToMbeanServer(pid);
-
-        Map<ObjectName, Result> results = new TreeMap<ObjectName, Result>();
-
-        Set<ObjectName> objectNames = mbeanServer.queryNames(on, null);
-        if (objectNames.isEmpty()) {
-            logger.warn("No mbean found for ObjectName {}", on);
+        MBeanInfoCache mbeanInfoCache = getMBeanInfoCache(mbeanServer);
+        File mbeanInfoCacheFile = null;
+        if (arguments.cacheDir != null) {
+            mbeanInfoCacheFile = getMBeanInfoCacheFile(mbeanServer, pid, arguments.cacheDir);
+            mbeanInfoCache.load(mbeanInfoCacheFile);
         }
 
-        for (ObjectName objectName : objectNames) {
-            Result result;
-            try {
-                if (operationName != null) {
-                    result = invokeOperation(mbeanServer, objectName, operationName, operationArguments);
-                } else if (attributeName != null) {
-                    result = invokeAttribute(mbeanServer, objectName, attributeName, attributeValue);
-                } else if (arguments.describeMbeans) {
-                    result = describeMbean(mbeanServer, objectName);
-                } else if (arguments.listMbeans) {
-                    result = new Result(objectName, objectName.toString(), objectName.toString());
-                } else {
-                    throw new CmdLineException(arguments.cmdLineParser, "NO SEARCH_MBEANS OR OPERATION OR ATTRIBUTE DEFINED");
-                }
-            } catch (Exception e) {
-                StringWriter sw = new StringWriter();
-                e.printStackTrace(new PrintWriter(sw));
-                String msg = "## EXCEPTION ##\n" + sw.toString();
-                result = new Result(objectName, msg, msg);
-            }
-
-            results.put(objectName, result);
-
+        Set<ObjectName> objectNames = new TreeSet<ObjectName>();
+        QueryExp query = arguments.where == null ? null : QueryExpressions.parse(arguments.where);
+        long queryStartInNanos = System.nanoTime();
+        Set<ObjectInstance> objectInstances = mbeanServer.queryMBeans(on, query);
+        timings.recordSince(Timings.Phase.QUERY, queryStartInNanos);
+        for (ObjectInstance objectInstance : objectInstances) {
+            objectNames.add(objectInstance.getObjectName());
+            mbeanInfoCache.registerObjectInstance(objectInstance);
+        }
+        if (objectNames.isEmpty()) {
+            logger.warn("No mbean found for ObjectName {}{}", on, query == null ? "" : " where " + arguments.where);
         }
 
         logger.info("INVOCATION RESULT");
@@ -169,21 +560,482 @@ public class JmxInvoker {
         if (operationName != null) {
             logger.info("Invoke operation {}{}", operationName, Arrays.asList(operationArguments));
         } else if (attributeValue == null) {
-            logger.info("Get attribute {}", attributeName);
+            logger.info("Get attribute(s) {}", attributeName);
         } else {
             logger.info("Set attribute {}: {}", attributeName, attributeValue);
         }
-        for (Map.Entry<ObjectName, Result> entry : results.entrySet()) {
-            logger.info("{}", entry.getKey());
-            logger.info("\t{}", entry.getValue());
+
+        if (arguments.parallelism <= 1 && arguments.timeoutInMillis == null) {
+            for (ObjectName objectName : objectNames) {
+                Result result;
+                long nanosBefore = System.nanoTime();
+                try {
+                    result = invokeMbean(mbeanServer, objectName, arguments, operationName, operationArguments, attributeName, attributeValue, selectors);
+                } catch (Exception e) {
+                    result = newExceptionResult(objectName, e);
+                }
+                result.durationInNanos = System.nanoTime() - nanosBefore;
+                publish(pid, result, listener);
+            }
+        } else {
+            invokeMbeansConcurrently(pid, mbeanServer, objectNames, arguments, operationName, operationArguments, attributeName, attributeValue, selectors, listener);
         }
 
-        return results;
+        if (mbeanInfoCacheFile != null) {
+            try {
+                mbeanInfoCache.save(mbeanInfoCacheFile);
+            } catch (IOException e) {
+                logger.warn("Exception saving MBeanInfo cache {}", mbeanInfoCacheFile, e);
+            }
+        }
+    }
+
+    private void publish(@Nonnull String pid, @Nonnull Result result, @Nonnull ResultListener listener) {
+        result.pid = pid;
+        logger.info("{}", result.objectName);
+        logger.info("\t{}", result);
+        listener.onResult(result);
+    }
+
+    /**
+     * Read the <code>--attribute</code>(s) of the MBeans matching <code>--object-name</code> every
+     * <code>--interval</code> milliseconds on a single connection, <code>--count</code> times or until the JVM is stopped.
+     * <p/>
+     * Reads are scheduled at a fixed rate so that slow reads do not make the sampling drift. Each sample is written as
+     * one tab separated line per MBean: timestamp, read latency, ObjectName and <code>name=value</code> attributes.
+     */
+    public void sample(@Nonnull String pid, @Nonnull final JmxInvokerArguments arguments, @Nonnull final PrintStream out) throws IOException, InterruptedException {
+        MBeanServerConnection mbeanServer = connectToMbeanServer(pid);
+        try {
+            sample(mbeanServer, arguments, out);
+        } finally {
+            closeMbeanServerConnection(mbeanServer);
+        }
+    }
 
+    protected void sample(@Nonnull final MBeanServerConnection mbeanServer, @Nonnull final JmxInvokerArguments arguments, @Nonnull final PrintStream out) throws IOException, InterruptedException {
+        long queryStartInNanos = System.nanoTime();
+        final Set<ObjectName> objectNames = new TreeSet<ObjectName>(mbeanServer.queryNames(arguments.objectName,
+                arguments.where == null ? null : QueryExpressions.parse(arguments.where)));
+        timings.recordSince(Timings.Phase.QUERY, queryStartInNanos);
+        if (objectNames.isEmpty()) {
+            logger.warn("No mbean found for ObjectName {}", arguments.objectName);
+            return;
+        }
+        final String attributeNames = arguments.attribute[0];
+        final CountDownLatch completed = new CountDownLatch(1);
+        final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+        final CounterRates counterRates = arguments.rate ? new CounterRates(objectNames.size() * 4) : null;
+        final Map<Object, Integer> attributeIndexes = new HashMap<Object, Integer>();
+        final List<String[]> selectors = arguments.select == null ? null : OpenDataPaths.parseSelectors(arguments.select);
+
+        Runnable sampler = new Runnable() {
+            int samples;
+
+            @Override
+            public void run() {
+                if (arguments.count != null && samples >= arguments.count) {
+                    // catch-up run of a late scheduler, shutdownNow() does not prevent it
+                    return;
+                }
+                int mbeanIndex = 0;
+                for (ObjectName objectName : objectNames) {
+                    long timestamp = System.currentTimeMillis();
+                    long nanosBefore = System.nanoTime();
+                    StringBuilder line = new StringBuilder();
+                    try {
+                        Result result = invokeAttributes(mbeanServer, objectName, attributeNames.split(","));
+                        long latencyInNanos = System.nanoTime() - nanosBefore;
+                        line.append(dateFormat.format(new Date(timestamp))).append('\t');
+                        line.append(String.format(Locale.ENGLISH, "%.3fms", latencyInNanos / 1000000.0)).append('\t');
+                        line.append(objectName);
+                        Map<?, ?> values = (Map<?, ?>) (selectors == null ? result : select(result, null, selectors)).value;
+                        for (Map.Entry<?, ?> entry : values.entrySet()) {
+                            Strings2.appendTo(entry.getValue(), line.append('\t').append(entry.getKey()).append('='));
+                            if (counterRates != null) {
+                                Integer attributeIndex = attributeIndexes.get(entry.getKey());
+                                if (attributeIndex == null) {
+                                    attributeIndex = attributeIndexes.size();
+                                    attributeIndexes.put(entry.getKey(), attributeIndex);
+                                }
+                                CounterRates.Delta delta = counterRates.update(CounterRates.key(mbeanIndex, attributeIndex), entry.getValue(), nanosBefore);
+                                if (delta != null) {
+                                    appendDelta(entry.getKey(), delta, line);
+                                }
+                            }
+                        }
+                    } catch (Exception e) {
+                        line.append(dateFormat.format(new Date(timestamp))).append('\t');
+                        line.append("## EXCEPTION ##\t").append(objectName).append('\t').append(e);
+                    }
+                    out.println(line);
+                    mbeanIndex++;
+                }
+                out.flush();
+                samples++;
+                if (arguments.count != null && samples >= arguments.count) {
+                    completed.countDown();
+                }
+            }
+        };
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("jmx-invoker-sampler-"));
+        try {
+            scheduler.scheduleAtFixedRate(sampler, 0, arguments.intervalInMillis, TimeUnit.MILLISECONDS);
+            completed.await();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Append the <code>name.delta</code>, <code>name.rate</code> (per second) and, on counter reset,
+     * <code>name.reset</code> fields of a sampled counter.
+     */
+    protected void appendDelta(@Nonnull Object attributeName, @Nonnull CounterRates.Delta delta, @Nonnull StringBuilder line) {
+        line.append('\t').append(attributeName).append(".delta=");
+        Number value = delta.getDelta();
+        if (value instanceof Long) {
+            line.append(value.longValue());
+        } else {
+            line.append(String.format(Locale.ENGLISH, "%.3f", value.doubleValue()));
+        }
+        line.append('\t').append(attributeName).append(".rate=").append(String.format(Locale.ENGLISH, "%.3f", delta.getRatePerSecond()));
+        if (delta.isReset()) {
+            line.append('\t').append(attributeName).append(".reset=true");
+        }
+    }
+
+    /**
+     * Listen to the notifications of the MBeans matching <code>--object-name</code> on the given JVMs and stream them to
+     * <code>out</code> until <code>--count</code> notifications have been written, the connections to all the JVMs
+     * are lost or the current thread is interrupted. Notifications lost by the JMX connectors are counted as dropped.
+     */
+    public void listen(@Nonnull List<String> pids, @Nonnull JmxInvokerArguments arguments, @Nonnull Writer out) throws IOException, InterruptedException {
+        final NotificationStreamer streamer = new NotificationStreamer(out,
+                arguments.outputFormat == OutputFormat.JSON || arguments.outputFormat == OutputFormat.NDJSON, arguments.listenQueueSize);
+        Map<MBeanServerConnection, Set<ObjectName>> listenedObjectNames = new LinkedHashMap<MBeanServerConnection, Set<ObjectName>>();
+        Map<JMXConnector, NotificationListener> connectionListeners = new LinkedHashMap<JMXConnector, NotificationListener>();
+        final AtomicInteger connectedJvms = new AtomicInteger();
+        // write the pending notifications on Ctrl-C
+        Thread shutdownHook = new Thread("jmx-invoker-listen-shutdown") {
+            @Override
+            public void run() {
+                streamer.close();
+            }
+        };
+        if (arguments.count != null) {
+            streamer.setMaxCount(arguments.count);
+        }
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        streamer.start();
+        try {
+            int listenedMbeans = 0;
+            for (String pid : pids) {
+                MBeanServerConnection mbeanServer = connectToMbeanServer(pid);
+                Set<ObjectName> objectNames = new LinkedHashSet<ObjectName>();
+                listenedObjectNames.put(mbeanServer, objectNames);
+                QueryExp query = arguments.where == null ? null : QueryExpressions.parse(arguments.where);
+                long queryStartInNanos = System.nanoTime();
+                Set<ObjectName> matchingObjectNames = new TreeSet<ObjectName>(mbeanServer.queryNames(arguments.objectName, query));
+                timings.recordSince(Timings.Phase.QUERY, queryStartInNanos);
+                for (ObjectName objectName : matchingObjectNames) {
+                    try {
+                        if (!mbeanServer.isInstanceOf(objectName, NotificationBroadcaster.class.getName())) {
+                            logger.debug("{} does not emit notifications, skip it", objectName);
+                            continue;
+                        }
+                        mbeanServer.addNotificationListener(objectName, streamer, null, pid);
+                        objectNames.add(objectName);
+                    } catch (InstanceNotFoundException e) {
+                        logger.debug("{} unregistered, skip it", objectName);
+                    }
+                }
+                logger.info("Listen to the notifications of {} MBeans of JVM {}", objectNames.size(), pid);
+                listenedMbeans += objectNames.size();
+                JMXConnector jmxConnector = jmxConnectors.get(mbeanServer);
+                if (jmxConnector != null && !objectNames.isEmpty()) {
+                    NotificationListener connectionListener = newConnectionListener(pid, streamer, connectedJvms);
+                    jmxConnector.addConnectionNotificationListener(connectionListener, null, null);
+                    connectionListeners.put(jmxConnector, connectionListener);
+                    connectedJvms.incrementAndGet();
+                }
+            }
+            if (listenedMbeans == 0) {
+                logger.warn("No notification emitter found for ObjectName {}", arguments.objectName);
+                return;
+            }
+            streamer.awaitWritten(arguments.count == null ? Long.MAX_VALUE : arguments.count, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            for (Map.Entry<JMXConnector, NotificationListener> entry : connectionListeners.entrySet()) {
+                try {
+                    entry.getKey().removeConnectionNotificationListener(entry.getValue());
+                } catch (ListenerNotFoundException e) {
+                    // ignore
+                }
+            }
+            for (Map.Entry<MBeanServerConnection, Set<ObjectName>> entry : listenedObjectNames.entrySet()) {
+                MBeanServerConnection mbeanServer = entry.getKey();
+                for (ObjectName objectName : entry.getValue()) {
+                    try {
+                        mbeanServer.removeNotificationListener(objectName, streamer);
+                    } catch (Exception e) {
+                        logger.debug("Exception removing notification listener of {}", objectName, e);
+                    }
+                }
+                closeMbeanServerConnection(mbeanServer);
+            }
+            streamer.close();
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // shutdown in progress
+            }
+            if (streamer.getDroppedCount() > 0) {
+                logger.warn("{} notifications dropped out of {} received, increase --listen-queue-size", streamer.getDroppedCount(), streamer.getReceivedCount());
+            }
+        }
+    }
+
+    /**
+     * Listener of the {@link JMXConnectionNotification}s of the connector of the JVM <code>pid</code>: counts the
+     * notifications lost by the connector as dropped and closes the <code>streamer</code> when the connections to
+     * all the <code>connectedJvms</code> are lost.
+     */
+    @Nonnull
+    private NotificationListener newConnectionListener(@Nonnull final String pid, @Nonnull final NotificationStreamer streamer, @Nonnull final AtomicInteger connectedJvms) {
+        return new NotificationListener() {
+            private final AtomicBoolean lost = new AtomicBoolean();
+
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                String type = notification.getType();
+                if (JMXConnectionNotification.NOTIFS_LOST.equals(type)) {
+                    Object lostCount = notification.getUserData();
+                    streamer.notificationsLost(lostCount instanceof Long ? (Long) lostCount : 1);
+                } else if ((JMXConnectionNotification.FAILED.equals(type) || JMXConnectionNotification.CLOSED.equals(type)) &&
+                        lost.compareAndSet(false, true)) {
+                    logger.warn("Connection to JVM {} lost ({}), stop listening to its notifications", pid, type);
+                    if (connectedJvms.decrementAndGet() == 0) {
+                        streamer.close();
+                    }
+                }
+            }
+        };
     }
 
-    protected Result describeMbean(@Nonnull MBeanServerConnection mbeanServer, @Nonnull ObjectName objectName) throws IntrospectionException, ReflectionException, InstanceNotFoundException, IOException {
-        MBeanInfo mbeanInfo = mbeanServer.getMBeanInfo(objectName);
+    /**
+     * Return the {@link MBeanInfoCache} associated to the given connection.
+     */
+    @Nonnull
+    protected MBeanInfoCache getMBeanInfoCache(@Nonnull MBeanServerConnection mbeanServer) {
+        synchronized (mbeanInfoCaches) {
+            MBeanInfoCache mbeanInfoCache = mbeanInfoCaches.get(mbeanServer);
+            if (mbeanInfoCache == null) {
+                mbeanInfoCache = newMBeanInfoCache(mbeanServer);
+                mbeanInfoCaches.put(mbeanServer, mbeanInfoCache);
+            }
+            return mbeanInfoCache;
+        }
+    }
+
+    @Nonnull
+    protected MBeanInfoCache newMBeanInfoCache(@Nonnull MBeanServerConnection mbeanServer) {
+        return new MBeanInfoCache();
+    }
+
+    /**
+     * Evict from the {@link MBeanInfoCache} of the given connection the MBeans registered and unregistered on it.
+     * Worth for connections kept open for a long time (sessions, shell, metrics exporter, daemon).
+     */
+    protected void listenForRegistrations(@Nonnull MBeanServerConnection mbeanServer) {
+        try {
+            getMBeanInfoCache(mbeanServer).listenForRegistrations(mbeanServer);
+        } catch (Exception e) {
+            logger.warn("Exception listening for MBean registrations, MBeanInfo may be stale", e);
+        }
+    }
+
+    @Nonnull
+    protected MBeanInfoIndex getMBeanInfo(@Nonnull MBeanServerConnection mbeanServer, @Nonnull ObjectName objectName) throws IOException, JMException {
+        long startInNanos = System.nanoTime();
+        try {
+            return getMBeanInfoCache(mbeanServer).getMBeanInfo(mbeanServer, objectName);
+        } finally {
+            timings.recordSince(Timings.Phase.GET_MBEAN_INFO, startInNanos);
+        }
+    }
+
+    /**
+     * Return the file of the on-disk MBeanInfo cache of the given JVM. The file name contains the start time of the
+     * JVM so that the cache of a previous JVM with the same pid is never reused.
+     */
+    @Nonnull
+    protected File getMBeanInfoCacheFile(@Nonnull MBeanServerConnection mbeanServer, @Nonnull String pid, @Nonnull File cacheDir) throws IOException {
+        Object startTime;
+        try {
+            startTime = mbeanServer.getAttribute(new ObjectName(ManagementFactory.RUNTIME_MXBEAN_NAME), "StartTime");
+        } catch (JMException e) {
+            throw new IllegalStateException("Exception reading the start time of JVM " + pid, e);
+        }
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            throw new IOException("Exception creating cache directory " + cacheDir);
+        }
+        // JMX service URLs contain characters not allowed in file names
+        final String prefix = "mbean-info-" + (isServiceUrl(pid) ? pid.replaceAll("[^A-Za-z0-9.-]", "_") : pid) + "-";
+        String fileName = prefix + startTime + ".ser";
+        // remove the caches of the previous JVMs with the same pid
+        File[] previousFiles = cacheDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix);
+            }
+        });
+        if (previousFiles != null) {
+            for (File previousFile : previousFiles) {
+                if (!previousFile.getName().equals(fileName)) {
+                    previousFile.delete();
+                }
+            }
+        }
+        return new File(cacheDir, fileName);
+    }
+
+    /**
+     * Invoke the given MBeans on a pool of <code>--parallelism</code> threads sharing the given connection, waiting at
+     * most <code>--timeout</code> for each invocation.
+     * <p/>
+     * Results are pushed to the <code>listener</code> in the order of the given <code>objectNames</code>; no more than
+     * {@value #IN_FLIGHT_INVOCATIONS_PER_THREAD} invocations per thread are pending at a time to bound memory.
+     */
+    protected void invokeMbeansConcurrently(@Nonnull String pid, @Nonnull final MBeanServerConnection mbeanServer, @Nonnull Set<ObjectName> objectNames,
+                                            @Nonnull final JmxInvokerArguments arguments,
+                                            @Nullable final String operationName, @Nonnull final String[] operationArguments,
+                                            @Nullable final String attributeName, @Nullable final String attributeValue,
+                                            @Nullable final List<String[]> selectors, @Nonnull ResultListener listener) {
+        int parallelism = Math.max(1, arguments.parallelism);
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("jmx-invoker-"));
+        try {
+            Queue<Map.Entry<ObjectName, Future<Result>>> pendingInvocations = new ArrayDeque<Map.Entry<ObjectName, Future<Result>>>();
+            Iterator<ObjectName> objectNamesIterator = objectNames.iterator();
+            while (objectNamesIterator.hasNext() || !pendingInvocations.isEmpty()) {
+                while (objectNamesIterator.hasNext() && pendingInvocations.size() < parallelism * IN_FLIGHT_INVOCATIONS_PER_THREAD) {
+                    final ObjectName objectName = objectNamesIterator.next();
+                    Future<Result> future = executorService.submit(new Callable<Result>() {
+                        @Override
+                        public Result call() throws Exception {
+                            long nanosBefore = System.nanoTime();
+                            Result result;
+                            try {
+                                result = invokeMbean(mbeanServer, objectName, arguments, operationName, operationArguments, attributeName, attributeValue, selectors);
+                            } catch (Exception e) {
+                                result = newExceptionResult(objectName, e);
+                            }
+                            result.durationInNanos = System.nanoTime() - nanosBefore;
+                            return result;
+                        }
+                    });
+                    pendingInvocations.add(new AbstractMap.SimpleImmutableEntry<ObjectName, Future<Result>>(objectName, future));
+                }
+
+                Map.Entry<ObjectName, Future<Result>> entry = pendingInvocations.remove();
+                ObjectName objectName = entry.getKey();
+                Future<Result> future = entry.getValue();
+                Result result;
+                try {
+                    if (arguments.timeoutInMillis == null) {
+                        result = future.get();
+                    } else {
+                        result = future.get(arguments.timeoutInMillis, TimeUnit.MILLISECONDS);
+                    }
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    String msg = "## TIMEOUT ## after " + arguments.timeoutInMillis + "ms";
+                    result = new Result(objectName, msg, msg);
+                    result.exception = e;
+                    result.durationInNanos = TimeUnit.MILLISECONDS.toNanos(arguments.timeoutInMillis);
+                } catch (ExecutionException e) {
+                    result = newExceptionResult(objectName, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result = newExceptionResult(objectName, e);
+                }
+                publish(pid, result, listener);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * @param selectors <code>--select</code> parsed once per invocation, <code>null</code> to return the whole values
+     */
+    @Nonnull
+    protected Result invokeMbean(@Nonnull MBeanServerConnection mbeanServer, @Nonnull ObjectName objectName, @Nonnull JmxInvokerArguments arguments,
+                                 @Nullable String operationName, @Nonnull String[] operationArguments,
+                                 @Nullable String attributeName, @Nullable String attributeValue,
+                                 @Nullable List<String[]> selectors) throws Exception {
+        if (selectors != null) {
+            if (operationName != null) {
+                return select(invokeOperation(mbeanServer, objectName, operationName, operationArguments), operationName, selectors);
+            } else if (isMultipleAttributes(attributeName)) {
+                return select(invokeAttributes(mbeanServer, objectName, attributeName.split(",")), null, selectors);
+            } else {
+                return select(invokeAttribute(mbeanServer, objectName, attributeName, null), attributeName, selectors);
+            }
+        } else if (operationName != null) {
+            return invokeOperation(mbeanServer, objectName, operationName, operationArguments);
+        } else if (attributeName != null && isMultipleAttributes(attributeName)) {
+            return invokeAttributes(mbeanServer, objectName, attributeName.split(","));
+        } else if (attributeName != null) {
+            return invokeAttribute(mbeanServer, objectName, attributeName, attributeValue);
+        } else if (arguments.describeMbeans) {
+            return describeMbean(mbeanServer, objectName);
+        } else if (arguments.listMbeans) {
+            return new Result(objectName, objectName.toString(), objectName.toString());
+        } else {
+            throw new CmdLineException(arguments.cmdLineParser, "NO SEARCH_MBEANS OR OPERATION OR ATTRIBUTE DEFINED");
+        }
+    }
+
+    /**
+     * Replace the value of the given result by the leaves of its open data matching the given selectors, indexed by
+     * path.
+     *
+     * @param rootName name of the value (attribute or operation), <code>null</code> if the value is a {@link Map} of
+     *                 attribute values indexed by name
+     */
+    @Nonnull
+    protected Result select(@Nonnull Result result, @Nullable String rootName, @Nonnull List<String[]> selectors) {
+        Map<String, Object> leaves = new LinkedHashMap<String, Object>();
+        if (rootName == null) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) result.value).entrySet()) {
+                leaves.putAll(OpenDataPaths.toMap(String.valueOf(entry.getKey()), entry.getValue(), selectors));
+            }
+        } else {
+            leaves.putAll(OpenDataPaths.toMap(rootName, result.value, selectors));
+        }
+        StringBuilder description = new StringBuilder("Get values " + result.objectName);
+        for (Map.Entry<String, Object> leaf : leaves.entrySet()) {
+            Strings2.appendTo(leaf.getValue(), description.append(Strings2.LINE_BREAK).append("\t").append(leaf.getKey()).append(": "));
+        }
+        Result selected = new Result(result.objectName, leaves, description.toString());
+        selected.pid = result.pid;
+        return selected;
+    }
+
+    @Nonnull
+    protected Result newExceptionResult(@Nonnull ObjectName objectName, @Nonnull Throwable e) {
+        StringWriter sw = new StringWriter();
+        e.printStackTrace(new PrintWriter(sw));
+        String msg = "## EXCEPTION ##\n" + sw.toString();
+        Result result = new Result(objectName, msg, msg);
+        result.exception = e;
+        return result;
+    }
+
+    protected Result describeMbean(@Nonnull MBeanServerConnection mbeanServer, @Nonnull ObjectName objectName) throws JMException, IOException {
+        MBeanInfo mbeanInfo = getMBeanInfo(mbeanServer, objectName).getMBeanInfo();
         StringWriter sw = new StringWriter();
         PrintWriter out = new PrintWriter(sw);
         out.println("# MBEAN");
@@ -241,16 +1093,10 @@ public class JmxInvoker {
      * @throws JMException
      */
     public Result invokeAttribute(@Nonnull MBeanServerConnection mbeanServer, @Nonnull ObjectName objectName, @Nonnull String attributeName, @Nullable String attributeValue) throws IOException, JMException {
-        MBeanInfo mbeanInfo = mbeanServer.getMBeanInfo(objectName);
-        MBeanAttributeInfo attributeInfo = null;
-        for (MBeanAttributeInfo mai : mbeanInfo.getAttributes()) {
-            if (mai.getName().equals(attributeName)) {
-                attributeInfo = mai;
-                break;
-            }
-        }
+        MBeanInfoIndex mbeanInfo = getMBeanInfo(mbeanServer, objectName);
+        MBeanAttributeInfo attributeInfo = mbeanInfo.getAttribute(attributeName);
         if (attributeInfo == null) {
-            throw new IllegalArgumentException("No attribute '" + attributeName + "' found on '" + objectName + "'. Existing attributes: " + Arrays.asList(mbeanInfo.getAttributes()));
+            throw new IllegalArgumentException("No attribute '" + attributeName + "' found on '" + objectName + "'. Existing attributes: " + mbeanInfo.getAttributeNames());
         }
 
         String description;
@@ -258,17 +1104,34 @@ public class JmxInvoker {
 
         if (attributeValue == null) {
             if (attributeInfo.isReadable()) {
-                Object attribute = mbeanServer.getAttribute(objectName, attributeName);
+                long invokeStartInNanos = System.nanoTime();
+                Object attribute;
+                try {
+                    attribute = mbeanServer.getAttribute(objectName, attributeName);
+                } finally {
+                    timings.recordSince(Timings.Phase.INVOKE, invokeStartInNanos);
+                }
                 logger.info("get attribute value {}:{}:{}", objectName, attributeName, attribute);
                 resultValue = attribute;
-                description = "Get attribute value " + objectName + ":" + attributeName + ": " + resultValue;
+                if (OpenDataPaths.isOpenData(attribute)) {
+                    StringBuilder sb = new StringBuilder("Get attribute value " + objectName + ":" + attributeName + ":");
+                    OpenDataPaths.appendTo(attributeName, attribute, null, Strings2.LINE_BREAK + "\t", sb);
+                    description = sb.toString();
+                } else {
+                    description = "Get attribute value " + objectName + ":" + attributeName + ": " + resultValue;
+                }
             } else {
                 throw new IllegalArgumentException("Attribute '" + attributeName + "' is not readable on '" + objectName + "': " + attributeInfo);
             }
         } else {
             if (attributeInfo.isWritable()) {
                 Object value = convertValue(attributeValue, attributeInfo.getType());
-                mbeanServer.setAttribute(objectName, new Attribute(attributeName, value));
+                long invokeStartInNanos = System.nanoTime();
+                try {
+                    mbeanServer.setAttribute(objectName, new Attribute(attributeName, value));
+                } finally {
+                    timings.recordSince(Timings.Phase.INVOKE, invokeStartInNanos);
+                }
                 logger.info("set attribute value {}:{}:{}", objectName, attributeName, value);
 
                 description = "Set attribute value " + objectName + ":" + attributeName + ": " + value;
@@ -281,43 +1144,79 @@ public class JmxInvoker {
         return new Result(objectName, resultValue, description);
     }
 
-    @Nullable
-    public Result invokeOperation(@Nonnull MBeanServerConnection mBeanServer, @Nonnull ObjectName on, @Nonnull String operationName, @Nonnull String... arguments) throws JMException, IOException {
+    /**
+     * Read the given attributes with a single {@link MBeanServerConnection#getAttributes(ObjectName, String[])} call.
+     *
+     * @param attributeNames names of the attributes to read, {@value #ALL_ATTRIBUTES} to read all the readable attributes
+     * @return the {@link Result#value} is a {@link Map} of the attribute values indexed by attribute name, in the
+     *         order of the given <code>attributeNames</code>. Attributes that could not be read are not in the map.
+     */
+    @Nonnull
+    public Result invokeAttributes(@Nonnull MBeanServerConnection mbeanServer, @Nonnull ObjectName objectName, @Nonnull String... attributeNames) throws IOException, JMException {
+        if (attributeNames.length == 1 && ALL_ATTRIBUTES.equals(attributeNames[0])) {
+            attributeNames = getMBeanInfo(mbeanServer, objectName).getReadableAttributeNames();
+        } else {
+            // don't modify the array of the caller
+            String[] trimmedAttributeNames = new String[attributeNames.length];
+            for (int i = 0; i < attributeNames.length; i++) {
+                trimmedAttributeNames[i] = attributeNames[i].trim();
+            }
+            attributeNames = trimmedAttributeNames;
+        }
 
-        logger.debug("invokeOperation({},{}, {}, {})...", on, operationName, Arrays.asList(arguments));
-        MBeanInfo mbeanInfo = mBeanServer.getMBeanInfo(on);
+        long invokeStartInNanos = System.nanoTime();
+        AttributeList attributes;
+        try {
+            attributes = mbeanServer.getAttributes(objectName, attributeNames);
+        } finally {
+            timings.recordSince(Timings.Phase.INVOKE, invokeStartInNanos);
+        }
+        Map<String, Object> valuesByName = new HashMap<String, Object>();
+        for (Object attribute : attributes) {
+            valuesByName.put(((Attribute) attribute).getName(), ((Attribute) attribute).getValue());
+        }
 
-        List<MBeanOperationInfo> candidates = new ArrayList<MBeanOperationInfo>();
-        for (MBeanOperationInfo mbeanOperationInfo : mbeanInfo.getOperations()) {
-            if (mbeanOperationInfo.getName().equals(operationName) && mbeanOperationInfo.getSignature().length == arguments.length) {
-                candidates.add(mbeanOperationInfo);
-                logger.debug("Select matching operation {}", mbeanOperationInfo);
+        Map<String, Object> resultValue = new LinkedHashMap<String, Object>();
+        StringBuilder description = new StringBuilder("Get attribute values " + objectName);
+        for (String attributeName : attributeNames) {
+            if (valuesByName.containsKey(attributeName)) {
+                Object value = valuesByName.get(attributeName);
+                resultValue.put(attributeName, value);
+                if (OpenDataPaths.isOpenData(value)) {
+                    OpenDataPaths.appendTo(attributeName, value, null, Strings2.LINE_BREAK + "\t", description);
+                } else {
+                    Strings2.appendTo(value, description.append(Strings2.LINE_BREAK).append("\t").append(attributeName).append(": "));
+                }
             } else {
-                logger.trace("Ignore non matching operation {}", mbeanOperationInfo);
+                description.append(Strings2.LINE_BREAK).append("\t").append(attributeName).append(": ").append("## NOT READABLE ##");
             }
         }
-        if (candidates.isEmpty()) {
-            throw new IllegalArgumentException("Operation '" + operationName + "(" + Strings2.join(arguments, ", ") + ")' NOT found on " + on);
-        } else if (candidates.size() > 1) {
-            throw new IllegalArgumentException("More than 1 (" + candidates.size() + ") operation '" + operationName + "(" + Strings2.join(arguments, ", ") +
-                    ")' found on '" + on + "': " + candidates);
-        }
-        MBeanOperationInfo beanOperationInfo = candidates.get(0);
+        logger.info("get attribute values {}:{}", objectName, resultValue);
 
-        MBeanParameterInfo[] mbeanParameterInfos = beanOperationInfo.getSignature();
+        return new Result(objectName, resultValue, description.toString());
+    }
 
-        List<String> signature = new ArrayList<String>();
-        for (MBeanParameterInfo mbeanParameterInfo : mbeanParameterInfos) {
-            signature.add(mbeanParameterInfo.getType());
-        }
+    @Nullable
+    public Result invokeOperation(@Nonnull MBeanServerConnection mBeanServer, @Nonnull ObjectName on, @Nonnull String operationName, @Nonnull String... arguments) throws JMException, IOException {
+
+        logger.debug("invokeOperation({},{}, {}, {})...", on, operationName, Arrays.asList(arguments));
+        MBeanInfoIndex mbeanInfo = getMBeanInfo(mBeanServer, on);
 
-        Object[] convertedArguments = convertValues(arguments, signature);
+        MBeanInfoIndex.OperationSignature operation = resolveOperation(on, mbeanInfo, operationName, arguments);
+        String[] signature = operation.getTypes();
+        Object[] convertedArguments = convertValues(arguments, signature, operation.getConverters(typeConverters));
 
         logger.debug("Invoke {}:{}({}) ...", on, operationName, Arrays.asList(convertedArguments));
 
-        Object result = mBeanServer.invoke(on, operationName, convertedArguments, signature.toArray(new String[0]));
+        long invokeStartInNanos = System.nanoTime();
+        Object result;
+        try {
+            result = mBeanServer.invoke(on, operationName, convertedArguments, signature);
+        } finally {
+            timings.recordSince(Timings.Phase.INVOKE, invokeStartInNanos);
+        }
 
-        if ("void".equals(beanOperationInfo.getReturnType()) && result == null) {
+        if ("void".equals(operation.getOperationInfo().getReturnType()) && result == null) {
             result = "void";
         }
 
@@ -327,6 +1226,49 @@ public class JmxInvoker {
         return new Result(on, result, description);
     }
 
+    /**
+     * Find the operation with the given name and number of parameters. Overloads with the same number of parameters
+     * are resolved on the types of the parameters: the overload to which all the <code>arguments</code> can be
+     * converted with the most arguments converted to a type more specific than {@link String} is chosen
+     * (e.g. <code>"42"</code> selects <code>setLevel(int)</code> over <code>setLevel(String)</code>).
+     *
+     * @throws IllegalArgumentException if no operation matches or if several overloads match equally
+     * @see MBeanInfoIndex.OperationSignature#getMatchScore(String[], TypeConverters)
+     */
+    @Nonnull
+    protected MBeanInfoIndex.OperationSignature resolveOperation(@Nonnull ObjectName on, @Nonnull MBeanInfoIndex mbeanInfo, @Nonnull String operationName, @Nonnull String[] arguments) {
+        MBeanInfoIndex.OperationSignature[] candidates = mbeanInfo.getOperations(operationName, arguments.length);
+        if (candidates.length == 0) {
+            throw new IllegalArgumentException("Operation '" + operationName + "(" + Strings2.join(arguments, ", ") + ")' NOT found on " + on);
+        } else if (candidates.length == 1) {
+            return candidates[0];
+        }
+
+        MBeanInfoIndex.OperationSignature bestCandidate = null;
+        int bestScore = -1;
+        int bestScoreCount = 0;
+        for (MBeanInfoIndex.OperationSignature candidate : candidates) {
+            int score = candidate.getMatchScore(arguments, typeConverters);
+            logger.trace("Score {} for {}", score, candidate);
+            if (score > bestScore) {
+                bestCandidate = candidate;
+                bestScore = score;
+                bestScoreCount = 1;
+            } else if (score == bestScore && score >= 0) {
+                bestScoreCount++;
+            }
+        }
+        if (bestCandidate == null) {
+            throw new IllegalArgumentException("No operation '" + operationName + "(" + Strings2.join(arguments, ", ") +
+                    ")' accepting these arguments found on '" + on + "': " + Arrays.asList(candidates));
+        } else if (bestScoreCount > 1) {
+            throw new IllegalArgumentException("More than 1 (" + bestScoreCount + ") operation '" + operationName + "(" + Strings2.join(arguments, ", ") +
+                    ")' found on '" + on + "': " + Arrays.asList(candidates));
+        }
+        logger.debug("Select matching operation {}", bestCandidate);
+        return bestCandidate;
+    }
+
     /**
      * Convert given values
      *
@@ -334,12 +1276,23 @@ public class JmxInvoker {
      */
     @Nonnull
     protected Object[] convertValues(@Nonnull String[] arguments, @Nonnull List<String> signature) {
-        if (arguments.length != signature.size())
-            throw new IllegalArgumentException("arguments and signature must have the same length (" + arguments.length + " vs. " + signature.size() + "");
+        String[] types = signature.toArray(new String[signature.size()]);
+        return convertValues(arguments, types, typeConverters.getConverters(types));
+    }
+
+    /**
+     * Convert given values with the given converters resolved once for the <code>signature</code>
+     * (see {@link TypeConverters#getConverters(String[])}).
+     */
+    @Nonnull
+    protected Object[] convertValues(@Nonnull String[] arguments, @Nonnull String[] signature, @Nonnull TypeConverter[] converters) {
+        if (arguments.length != signature.length)
+            throw new IllegalArgumentException("arguments and signature must have the same length (" + arguments.length + " vs. " + signature.length + "");
 
         Object[] results = new Object[arguments.length];
         for (int i = 0; i < arguments.length; i++) {
-            results[i] = convertValue(arguments[i], signature.get(i));
+            String value = arguments[i];
+            results[i] = (NULL_VALUE.equals(value) || null == value) ? null : converters[i].convert(value, signature[i]);
         }
         return results;
     }
@@ -353,73 +1306,183 @@ public class JmxInvoker {
      * @param targetType The value {@link Class#getName()} such as <code>java.lang.String</code> if <code>null</code>, target type is assumed to be String.
      * @return the converted value
      * @see javax.management.MBeanParameterInfo#getType()
+     * @see TypeConverters
      */
     @Nullable
     private Object convertValue(@Nullable String value, @Nullable String targetType) {
         if (NULL_VALUE.equals(value) || null == value) {
             return null;
-        } else if (String.class.getName().equals(targetType)) {
-            return value;
-        } else if (int.class.getName().equals(targetType) || Integer.class.getName().equals(targetType)) {
-            return new Integer(value);
-        } else if (float.class.getName().equals(targetType) || Float.class.getName().equals(targetType)) {
-            return new Float(value);
-        } else if (boolean.class.getName().equals(targetType) || Boolean.class.getName().equals(targetType)) {
-            return Boolean.valueOf(value);
-        } else {
-            logger.warn("Unexpected type {} for value {}, return String", targetType, value);
-            return value;
         }
+        return typeConverters.convert(value, targetType == null ? String.class.getName() : targetType);
     }
 
     @Nonnull
-    protected MBeanServerConnection connectToMbeanServer(@Nonnull String pid) throws IOException {
-        VirtualMachine vm;
-        try {
-            Integer.parseInt(pid);
-        } catch (Exception e) {
-            logger.warn("Exception parsing PID '{}'", pid, e);
-        }
+    public TypeConverters getTypeConverters() {
+        return typeConverters;
+    }
+
+    public void setTypeConverters(@Nonnull TypeConverters typeConverters) {
+        this.typeConverters = typeConverters;
+    }
+
+    public boolean isPerfCounters() {
+        return perfCounters;
+    }
+
+    /**
+     * @param perfCounters <code>true</code> to read the {@link PerfData} counters of the JVMs rather than attaching to them
+     */
+    public void setPerfCounters(boolean perfCounters) {
+        this.perfCounters = perfCounters;
+    }
+
+    /**
+     * @return the durations of the phases of the invocations of this invoker
+     */
+    @Nonnull
+    public Timings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Expose the {@link #getTimings() timings} as the {@value Timings#OBJECT_NAME} MBean of the platform MBean server
+     * to watch them during long running invocations (daemon, shell, <code>--listen</code>, <code>--interval</code>,
+     * metrics exporter). Failures are logged, the invocation goes on without the MBean.
+     */
+    public void registerTimings() {
         try {
-            vm = VirtualMachine.attach(pid);
+            timings.register(ManagementFactory.getPlatformMBeanServer());
         } catch (Exception e) {
-            throw new IllegalStateException("Exception attaching VM with PID '" + pid + "'", e);
+            logger.warn("Exception registering the timings MBean", e);
         }
+    }
 
+    @Nonnull
+    public ConnectorAddressResolver getConnectorAddressResolver() {
+        return connectorAddressResolver;
+    }
 
-        logger.trace("VM Agent Properties");
-        for (String key : new TreeSet<String>(vm.getAgentProperties().stringPropertyNames())) {
-            logger.trace("\t {}: {}", key, vm.getAgentProperties().get(key));
-        }
-        logger.trace("VM System Properties");
-        for (String key : new TreeSet<String>(vm.getSystemProperties().stringPropertyNames())) {
-            logger.trace("\t {}: {}", key, vm.getSystemProperties().get(key));
-        }
+    public void setConnectorAddressResolver(@Nonnull ConnectorAddressResolver connectorAddressResolver) {
+        this.connectorAddressResolver = connectorAddressResolver;
+    }
 
+    @Nullable
+    public ConnectionProvider getConnectionProvider() {
+        return connectionProvider;
+    }
 
-        String connectorAddress =
-                vm.getAgentProperties().getProperty("com.sun.management.jmxremote.localConnectorAddress");
-        if (connectorAddress == null) {
-            String agent = vm.getSystemProperties().getProperty(
-                    "java.home") + File.separator + "lib" + File.separator +
-                    "management-agent.jar";
+    /**
+     * @param connectionProvider provider of the connections to the target JVMs, <code>null</code> to open and close a
+     *                           connection per {@link #connectToMbeanServer(String)} call
+     */
+    public void setConnectionProvider(@Nullable ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+    }
+
+    /**
+     * @return <code>true</code> if the given target is a JMX service URL (e.g. <code>service:jmx:rmi:///jndi/rmi://host:9999/jmxrmi</code>)
+     * rather than a pid
+     */
+    public static boolean isServiceUrl(@Nonnull String target) {
+        return target.startsWith("service:jmx:");
+    }
+
+    /**
+     * Connect to the JVM with the given <code>pid</code> or JMX service URL, through the {@link ConnectionProvider} if
+     * any. The connection must be released with {@link #closeMbeanServerConnection(MBeanServerConnection)}.
+     */
+    @Nonnull
+    protected MBeanServerConnection connectToMbeanServer(@Nonnull String pid) throws IOException {
+        if (connectionProvider != null) {
+            long startInNanos = System.nanoTime();
+            MBeanServerConnection mbeanServer;
             try {
-                vm.loadAgent(agent);
-            } catch (Exception e) {
-                throw new IllegalStateException("Exception loading agent " + agent);
+                mbeanServer = connectionProvider.getConnection(pid);
+            } finally {
+                timings.recordSince(Timings.Phase.CONNECT, startInNanos);
             }
-            connectorAddress = vm.getAgentProperties().getProperty(
-                    "com.sun.management.jmxremote.localConnectorAddress");
+            providedConnections.put(mbeanServer, connectionProvider);
+            return mbeanServer;
         }
+        if (perfCounters) {
+            long startInNanos = System.nanoTime();
+            try {
+                return PerfDataMBeans.newMBeanServer(PerfData.open(pid));
+            } catch (JMException e) {
+                throw new IllegalStateException("Exception exposing the perf counters of JVM " + pid, e);
+            } finally {
+                timings.recordSince(Timings.Phase.CONNECT, startInNanos);
+            }
+        }
+        JMXConnector jmxConnector = newJmxConnector(pid);
+        MBeanServerConnection mbeanServer = jmxConnector.getMBeanServerConnection();
+        jmxConnectors.put(mbeanServer, jmxConnector);
+        return mbeanServer;
+    }
 
-        if (connectorAddress == null) {
-            throw new IllegalStateException("Could not attach to pid: " + pid + ". No connector available");
+    /**
+     * Close the {@link JMXConnector} of the given connection if it has been opened by {@link #connectToMbeanServer(String)},
+     * connections provided by subclasses (e.g. cached by the {@link JmxInvokerDaemon}) are left open.
+     */
+    protected void closeMbeanServerConnection(@Nonnull MBeanServerConnection mbeanServer) {
+        ConnectionProvider provider = providedConnections.remove(mbeanServer);
+        if (provider != null) {
+            provider.releaseConnection(mbeanServer);
+            return;
         }
-        logger.trace("Connect to {} ...", connectorAddress);
+        JMXConnector jmxConnector = jmxConnectors.remove(mbeanServer);
+        if (jmxConnector == null) {
+            return;
+        }
+        mbeanInfoCaches.remove(mbeanServer);
+        try {
+            jmxConnector.close();
+        } catch (IOException e) {
+            logger.debug("Exception closing JMX connector", e);
+        }
+    }
+
+    /**
+     * Connect to the local JMX connector of the JVM with the given <code>pid</code>, its address being resolved by the
+     * {@link ConnectorAddressResolver}. A cached address that can no longer be connected to is resolved again.
+     * JMX service URLs are connected to directly.
+     */
+    @Nonnull
+    protected JMXConnector newJmxConnector(@Nonnull String pid) throws IOException {
+        if (isServiceUrl(pid)) {
+            return connect(pid);
+        }
+        String connectorAddress = resolveConnectorAddress(pid);
+        try {
+            return connect(connectorAddress);
+        } catch (IOException e) {
+            if (!connectorAddressResolver.invalidate(pid)) {
+                throw e;
+            }
+            logger.debug("Exception connecting to cached address of JVM {}, resolve it again", pid, e);
+            return connect(resolveConnectorAddress(pid));
+        }
+    }
 
-        JMXConnector connector = JMXConnectorFactory.connect(new JMXServiceURL(connectorAddress));
+    @Nonnull
+    private String resolveConnectorAddress(@Nonnull String pid) throws IOException {
+        long startInNanos = System.nanoTime();
+        try {
+            return connectorAddressResolver.resolve(pid);
+        } finally {
+            timings.recordSince(Timings.Phase.RESOLVE_CONNECTOR_ADDRESS, startInNanos);
+        }
+    }
 
-        return connector.getMBeanServerConnection();
+    @Nonnull
+    private JMXConnector connect(@Nonnull String connectorAddress) throws IOException {
+        logger.trace("Connect to {} ...", connectorAddress);
+        long startInNanos = System.nanoTime();
+        try {
+            return JMXConnectorFactory.connect(new JMXServiceURL(connectorAddress));
+        } finally {
+            timings.recordSince(Timings.Phase.CONNECT, startInNanos);
+        }
     }
 
     static {
@@ -431,18 +1494,49 @@ public class JmxInvoker {
         setSystemPropertyIfNotDefined(SimpleLogger.SHOW_THREAD_NAME_KEY, "false");
     }
 
+    /**
+     * {@link ThreadFactory} of daemon threads so that pending invocations never prevent the JVM from exiting.
+     */
+    static class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+        private final String namePrefix;
+
+        DaemonThreadFactory(@Nonnull String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     static class JmxInvokerArguments {
 
-        @Option(name = "-p", aliases = "--pid", required = false, metaVar = "PID", usage = "PID of the JVM to attach to. " +
-                "--pid or --pid-file required")
+        @Option(name = "-p", aliases = "--pid", required = false, metaVar = "PID[,PID...]", usage = "PID of the JVM(s) to attach to. " +
+                "--pid, --pid-file, --vm-filter or --url required")
         public String pid;
-        @Option(name = "--pid-file", required = false, metaVar = "PID_FILE", usage = "PID FILE of the JVM to attach to. " +
-                "--pid or --pid-file required")
+        @Option(name = "--pid-file", required = false, metaVar = "PID_FILE", usage = "PID FILE of the JVM to attach to, " +
+                "can contain wildcards (*) to attach to several JVMs. --pid, --pid-file, --vm-filter or --url required")
         public File pidFile;
-        @Option(name = "-on", aliases = "--object-name", required = true, handler = ObjectNameOptionHandler.class, metaVar = "OBJECT_NAME", usage = "ObjectName of the MBean(s) to invoke, can contain wildcards (*). If more than one MBean match, all MBeans are invoked")
+        @Option(name = "--vm-filter", required = false, metaVar = "REGEX", usage = "attach to the local JVMs whose " +
+                "main class or arguments match the given regular expression. --pid, --pid-file, --vm-filter or --url required")
+        public String vmFilter;
+        @Option(name = "--url", required = false, metaVar = "URL[,URL...]", usage = "JMX service URL(s) of the remote " +
+                "JVM(s) to connect to, e.g. service:jmx:rmi:///jndi/rmi://host:9999/jmxrmi. The connections are pooled " +
+                "and reused by the invocations. --pid, --pid-file, --vm-filter or --url required")
+        public String url;
+        @Option(name = "--connect-timeout", required = false, metaVar = "MILLIS", usage = "timeout in milliseconds to " +
+                "connect to a --url, default 10000")
+        public Long connectTimeoutInMillis;
+        @Option(name = "-on", aliases = "--object-name", required = false, handler = ObjectNameOptionHandler.class, metaVar = "OBJECT_NAME", usage = "ObjectName of the MBean(s) to invoke, can contain wildcards (*). If more than one MBean match, all MBeans are invoked. " +
+                "Required unless --shell is used")
         public ObjectName objectName;
         @Option(name = "-attr", aliases = "--attribute", required = false, handler = StringArrayOptionHandler.class, metaVar = "ATTRIBUTE_NAME [VAL]", usage = "attribute to read or to update. " +
-                "If a VAL is passed, then it is a write action, otherwise, it is a read action")
+                "If a VAL is passed, then it is a write action, otherwise, it is a read action. " +
+                "Several attributes can be read at once with a comma separated list of names or with '*' for all the readable attributes")
         public String[] attribute;
         @Option(name = "-op", aliases = "--operation", required = false, handler = StringArrayOptionHandler.class, metaVar = "OPERATION_NAME [ARG1 [ARG2  ...]]", usage = "operation to invoke with arguments")
         public String[] operation;
@@ -457,13 +1551,105 @@ public class JmxInvoker {
         public boolean listMbeans;
         @Option(name = "-d", aliases = "--describe-mbeans", required = false, usage = "describe mbeans")
         public boolean describeMbeans;
+        @Option(name = "--parallelism", required = false, metaVar = "THREADS", usage = "number of MBeans invoked concurrently " +
+                "when the ObjectName matches several MBeans, default 1")
+        public int parallelism = 1;
+        @Option(name = "--timeout", required = false, metaVar = "MILLIS", usage = "maximum time to wait for the invocation of each MBean")
+        public Long timeoutInMillis;
+        @Option(name = "--interval", required = false, metaVar = "MILLIS", usage = "read the attribute(s) every MILLIS " +
+                "milliseconds on the same connection and print one line per sample")
+        public Long intervalInMillis;
+        @Option(name = "--rate", required = false, usage = "with --interval, print after each numeric attribute its " +
+                "delta and its per second rate since the previous sample (ATTRIBUTE.delta, ATTRIBUTE.rate), for monotonic " +
+                "counters such as CollectionCount or bytesSent. A decreasing value is reported as a counter reset " +
+                "(ATTRIBUTE.reset=true) and its delta is the value itself")
+        public boolean rate;
+        @Option(name = "--timings", required = false, usage = "print on stderr the durations of the phases of the " +
+                "invocation (JVM startup, attach, agent loading, connection, query, MBeanInfo, invocations) with their " +
+                "percentiles when repeated")
+        public boolean timings;
+        @Option(name = "--select", required = false, metaVar = "PATH[,PATH...]", usage = "only print the leaves of the " +
+                "CompositeData and TabularData values matching the given paths, e.g. " +
+                "\"HeapMemoryUsage.used,LastGcInfo.memoryUsageAfterGc.*.used\", '*' matching any key. Paths start with " +
+                "the attribute or operation name")
+        public String select;
+        @Option(name = "--count", required = false, metaVar = "COUNT", usage = "number of samples to read with --interval " +
+                "or of notifications to print with --listen, default unlimited")
+        public Integer count;
+        @Option(name = "--output", required = false, metaVar = "FORMAT", usage = "output format: text (default), " +
+                "json, ndjson (one JSON record per MBean and per line) or csv")
+        public OutputFormat outputFormat = OutputFormat.TEXT;
+        @Option(name = "--sorted", required = false, usage = "print the results sorted by pid and ObjectName once all " +
+                "the invocations are completed rather than as soon as they are available")
+        public boolean sorted;
+        @Option(name = "--cache-dir", required = false, metaVar = "DIR", usage = "directory of the on-disk caches " +
+                "(JMX connector address, MBeanInfo) reused by the following invocations on the same JVM, a cached " +
+                "connector address skips the attach")
+        public File cacheDir;
+        @Option(name = "--daemon-port", required = false, metaVar = "PORT", usage = "send the invocation to the JMX Invoker daemon " +
+                "listening on the given loopback port instead of attaching to the JVM")
+        public Integer daemonPort;
+        @Option(name = "--where", required = false, metaVar = "EXPRESSION", usage = "only invoke the MBeans matching " +
+                "the given expression, evaluated by the JVM, e.g. \"numActive > 50 and url like 'jdbc:mysql:*'\" " +
+                "(=, !=, <, <=, >, >=, like, instanceof, and, or, not)")
+        public String where;
+        @Option(name = "--perf-counters", required = false, usage = "read the perf counters published by the JVM in its " +
+                "hsperfdata file instead of attaching to it: read only, no side effect on the JVM. Exposes a subset of " +
+                "the java.lang Threading, ClassLoading, Runtime, Compilation and GarbageCollector MBeans and all the " +
+                "raw counters as attributes of " + PerfDataMBeans.COUNTERS_OBJECT_NAME)
+        public boolean perfCounters;
+        @Option(name = "--shell", required = false, usage = "start an interactive shell (list, describe, get, set, invoke) " +
+                "on a single connection to the JVM, --object-name being the default scope of list and of the completion")
+        public boolean shell;
+        @Option(name = "--script", required = false, metaVar = "FILE", usage = "execute the shell commands (get, set, " +
+                "invoke, ...) of the given file, one per line, on a single connection to the JVM, '-' for the standard input. " +
+                "Failures are reported per line. With --parallelism, independent commands are pipelined")
+        public File script;
+        @Option(name = "--listen", required = false, usage = "listen to the notifications of the MBeans matching " +
+                "--object-name (GC events, memory thresholds, ...) and print them as they arrive, one per line, until " +
+                "--count notifications have been printed or the process is stopped. JSON with --output json or ndjson")
+        public boolean listen;
+        @Option(name = "--listen-file", required = false, metaVar = "FILE", usage = "append the notifications to the " +
+                "given file rather than printing them")
+        public File listenFile;
+        @Option(name = "--listen-queue-size", required = false, metaVar = "SIZE", usage = "maximum number of " +
+                "notifications waiting to be written with --listen, additional notifications are dropped and counted, " +
+                "default 10000")
+        public int listenQueueSize = 10000;
+        @Option(name = "--exporter-port", required = false, metaVar = "PORT", usage = "serve the numeric attributes of " +
+                "the MBeans matching --object-name in the OpenMetrics text format on http://127.0.0.1:PORT/metrics, " +
+                "keeping the connections to the JVMs open. --attribute restricts the exported attributes and --select " +
+                "the exported CompositeData and TabularData leaves")
+        public Integer exporterPort;
+        @Option(name = "--exporter-object-name", required = false, handler = ObjectNameOptionHandler.class, metaVar = "OBJECT_NAME",
+                usage = "additional ObjectName pattern of the MBeans exported with --exporter-port, can be repeated")
+        public List<ObjectName> exporterObjectNames;
+        @Option(name = "--exporter-ttl", required = false, metaVar = "MILLIS", usage = "duration during which the " +
+                "metrics are cached and served to the following scrapes without invoking the JVMs, default " +
+                MetricsExporter.DEFAULT_TTL_IN_MILLIS)
+        public long exporterTtlInMillis = MetricsExporter.DEFAULT_TTL_IN_MILLIS;
 
     }
 
     public static class Result {
+        /**
+         * Pid of the invoked JVM
+         */
+        String pid;
         ObjectName objectName;
+        /**
+         * Returned value, a {@link Map} of values indexed by attribute name when several attributes are read.
+         */
         Object value;
         String description;
+        /**
+         * Duration of the invocation of the MBean
+         */
+        long durationInNanos;
+        /**
+         * Exception raised by the invocation, <code>null</code> if it succeeded
+         */
+        Throwable exception;
 
         public Result(ObjectName objectName, Object value, String description) {
             this.objectName = objectName;
@@ -474,7 +1660,8 @@ public class JmxInvoker {
         @Override
         public String toString() {
             return "Result{" +
-                    "objectName=" + objectName +
+                    "pid=" + pid +
+                    ", objectName=" + objectName +
                     ", value=" + value +
                     ", description='" + description + '\'' +
                     '}';
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.util.Strings2;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.impl.SimpleLogger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.*;
+
+/**
+ * Long running JMX Invoker listening on a loopback port and keeping one JMX connection open per target JVM so that
+ * the cost of the attach and of the JMX connection is paid once rather than on each invocation.
+ * <p/>
+ * Invocations are sent by {@link JmxInvoker} started with <code>--daemon-port</code>. The protocol is line based:
+ * the client sends the token of the daemon, its working directory, the number of arguments and then one argument per
+ * line; the daemon answers <code>{@value #STATUS_OK}</code> or <code>{@value #STATUS_ERROR}</code> followed by the
+ * output of the invocation and closes the socket.
+ * <p/>
+ * The daemon can write attributes and invoke operations on all the JVMs its owner can attach to, it only serves
+ * the clients sending the random token generated at startup and written in a file only readable by its owner
+ * (see {@link #getTokenFile(File, int)}) so that other local users can't use it.
+ * <p/>
+ * The durations of the phases of the invocations are exposed by the {@value Timings#OBJECT_NAME} MBean of the daemon.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class JmxInvokerDaemon {
+    public static final String STATUS_OK = "OK";
+    public static final String STATUS_ERROR = "ERROR";
+    private static final String CHARSET = "UTF-8";
+    private static final int TOKEN_LENGTH_IN_BYTES = 32;
+
+    private final Logger logger = LoggerFactory.getLogger(JmxInvokerDaemon.class);
+
+    private final ConcurrentMap<String, Future<JMXConnector>> connectors = new ConcurrentHashMap<String, Future<JMXConnector>>();
+
+    private final ExecutorService executorService;
+
+    private final ServerSocket serverSocket;
+
+    private final byte[] token;
+
+    private final File tokenFile;
+
+    private final JmxInvoker jmxInvoker = new JmxInvoker() {
+        @Override
+        protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+            return JmxInvokerDaemon.this.connectToMbeanServer(pid);
+        }
+
+        @Override
+        protected MBeanInfoCache newMBeanInfoCache(MBeanServerConnection mbeanServer) {
+            MBeanInfoCache mbeanInfoCache = super.newMBeanInfoCache(mbeanServer);
+            try {
+                mbeanInfoCache.listenForRegistrations(mbeanServer);
+            } catch (Exception e) {
+                logger.warn("Exception listening for MBean registrations, MBeanInfo may be stale", e);
+            }
+            return mbeanInfoCache;
+        }
+    };
+
+    public JmxInvokerDaemon(int port, int threads) throws IOException {
+        this(port, threads, getDefaultTokenDir());
+    }
+
+    /**
+     * @param tokenDir directory in which the token file is written
+     */
+    public JmxInvokerDaemon(int port, int threads, @Nonnull File tokenDir) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        byte[] randomBytes = new byte[TOKEN_LENGTH_IN_BYTES];
+        new SecureRandom().nextBytes(randomBytes);
+        this.token = toHex(randomBytes).getBytes(CHARSET);
+        this.tokenFile = getTokenFile(tokenDir, serverSocket.getLocalPort());
+        try {
+            writeToken(tokenFile, new String(token, CHARSET));
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        this.executorService = Executors.newFixedThreadPool(threads);
+        jmxInvoker.registerTimings();
+    }
+
+    public static void main(String[] args) throws Exception {
+        JmxInvokerDaemonArguments arguments = new JmxInvokerDaemonArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println("INVALID INVOCATION: " + e.getMessage());
+            System.err.println("Arguments: " + Strings2.join(args, " "));
+            System.err.println("Usage:");
+            parser.printUsage(System.err);
+            throw e;
+        }
+
+        String logLevel;
+        if (arguments.superVerbose) {
+            logLevel = "TRACE";
+        } else if (arguments.verbose) {
+            logLevel = "DEBUG";
+        } else {
+            logLevel = "WARN";
+        }
+        System.setProperty(SimpleLogger.DEFAULT_LOG_LEVEL_KEY, logLevel);
+
+        final JmxInvokerDaemon daemon = new JmxInvokerDaemon(arguments.port, arguments.threads);
+        Runtime.getRuntime().addShutdownHook(new Thread("jmx-invoker-daemon-shutdown") {
+            @Override
+            public void run() {
+                daemon.close();
+            }
+        });
+        System.out.println("JMX Invoker daemon listening on " + daemon.serverSocket.getLocalSocketAddress() + ", token in " + daemon.tokenFile);
+        daemon.run();
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accept and serve client invocations until the daemon is {@linkplain #close() closed}.
+     */
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    logger.debug("Server socket closed, stop accepting invocations");
+                } else {
+                    logger.warn("Exception accepting invocation", e);
+                }
+                continue;
+            }
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handle(socket);
+                }
+            });
+        }
+    }
+
+    protected void handle(@Nonnull Socket socket) {
+        try {
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+                PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), CHARSET));
+
+                String clientToken = in.readLine();
+                if (clientToken == null || !MessageDigest.isEqual(token, clientToken.getBytes(CHARSET))) {
+                    logger.warn("Refuse invocation with invalid token on {}", socket);
+                    out.println(STATUS_ERROR);
+                    out.println("INVALID TOKEN: the token of the daemon is read from " + tokenFile);
+                    out.flush();
+                    return;
+                }
+                String workingDirectory = unescape(in.readLine());
+                int argumentsCount = Integer.parseInt(in.readLine());
+                String[] args = new String[argumentsCount];
+                for (int i = 0; i < argumentsCount; i++) {
+                    args[i] = unescape(in.readLine());
+                }
+
+                StringWriter output = new StringWriter();
+                boolean success = process(args, new File(workingDirectory), new PrintWriter(output));
+                out.println(success ? STATUS_OK : STATUS_ERROR);
+                out.print(output.getBuffer());
+                out.flush();
+            } finally {
+                socket.close();
+            }
+        } catch (Exception e) {
+            logger.warn("Exception handling invocation on {}", socket, e);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the invocation succeeded
+     */
+    protected boolean process(@Nonnull String[] args, @Nonnull File workingDirectory, @Nonnull PrintWriter out) {
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        try {
+            parser.parseArgument(args);
+            arguments.cmdLineParser = parser;
+            JmxInvoker.checkArguments(arguments);
+            // paths are relative to the working directory of the client
+            arguments.pidFile = resolve(arguments.pidFile, workingDirectory);
+            arguments.cacheDir = resolve(arguments.cacheDir, workingDirectory);
+
+            ResultListener resultListener = arguments.outputFormat.newResultWriter(out);
+            if (arguments.sorted) {
+                resultListener = new SortedResultListener(resultListener);
+            }
+            jmxInvoker.processAll(arguments, resultListener);
+            return true;
+        } catch (CmdLineException e) {
+            out.println("INVALID INVOCATION: " + e.getMessage());
+            out.println("Arguments: " + Strings2.join(args, " "));
+            out.println("Usage:");
+            StringWriter usage = new StringWriter();
+            parser.printUsage(usage, null);
+            out.print(usage);
+            return false;
+        } catch (Exception e) {
+            out.println("INVALID INVOCATION: " + e.getMessage());
+            out.println("Arguments: " + Strings2.join(args, " "));
+            e.printStackTrace(out);
+            return false;
+        } finally {
+            out.flush();
+        }
+    }
+
+    @Nullable
+    private static File resolve(@Nullable File file, @Nonnull File workingDirectory) {
+        return file == null || file.isAbsolute() ? file : new File(workingDirectory, file.getPath());
+    }
+
+    /**
+     * Return the connection of the cached {@link JMXConnector} of the given JVM after checking it is still alive.
+     * A stale connection (e.g. target JVM restarted) is reconnected once, before anything is invoked; exceptions
+     * raised later by the invocations are reported and never retried as they may have been partially applied.
+     */
+    @Nonnull
+    protected MBeanServerConnection connectToMbeanServer(@Nonnull String pid) throws IOException {
+        try {
+            MBeanServerConnection mbeanServer = getJmxConnector(pid).getMBeanServerConnection();
+            mbeanServer.getMBeanCount();
+            return mbeanServer;
+        } catch (IOException e) {
+            logger.info("Exception checking connection to JVM {}, reconnect", pid, e);
+            closeJmxConnector(pid);
+            return getJmxConnector(pid).getMBeanServerConnection();
+        }
+    }
+
+    /**
+     * Return the cached {@link JMXConnector} of the JVM with the given <code>pid</code>, attaching to it if needed.
+     * Concurrent invocations on a JVM that is not yet connected wait for a single attach.
+     */
+    @Nonnull
+    protected JMXConnector getJmxConnector(@Nonnull final String pid) throws IOException {
+        Future<JMXConnector> future = connectors.get(pid);
+        if (future == null) {
+            FutureTask<JMXConnector> futureTask = new FutureTask<JMXConnector>(new Callable<JMXConnector>() {
+                @Override
+                public JMXConnector call() throws Exception {
+                    logger.info("Connect to JVM {}", pid);
+                    return jmxInvoker.newJmxConnector(pid);
+                }
+            });
+            future = connectors.putIfAbsent(pid, futureTask);
+            if (future == null) {
+                future = futureTask;
+                futureTask.run();
+            }
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted connecting to JVM " + pid, e);
+        } catch (ExecutionException e) {
+            connectors.remove(pid, future);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IllegalStateException("Exception connecting to JVM " + pid, cause);
+            }
+        }
+    }
+
+    protected void closeJmxConnector(@Nonnull String pid) {
+        Future<JMXConnector> future = connectors.remove(pid);
+        if (future == null || !future.isDone()) {
+            return;
+        }
+        try {
+            future.get().close();
+        } catch (Exception e) {
+            logger.debug("Exception closing connection to JVM {}", pid, e);
+        }
+    }
+
+    /**
+     * Stop listening, delete the token file and close all the JMX connections.
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.debug("Exception closing server socket", e);
+        }
+        if (!tokenFile.delete() && tokenFile.exists()) {
+            logger.warn("Exception deleting token file {}", tokenFile);
+        }
+        executorService.shutdown();
+        for (String pid : connectors.keySet()) {
+            closeJmxConnector(pid);
+        }
+    }
+
+    /**
+     * Send the given JmxInvoker <code>args</code> to the daemon listening on the given loopback <code>port</code> and
+     * copy the response to <code>out</code>.
+     *
+     * @return <code>true</code> if the invocation succeeded
+     */
+    public static boolean sendRequest(int port, @Nonnull String[] args, @Nonnull PrintStream out) throws IOException {
+        return sendRequest(getDefaultTokenDir(), port, args, out);
+    }
+
+    /**
+     * @param tokenDir directory of the token file of the daemon
+     * @see #sendRequest(int, String[], PrintStream)
+     */
+    public static boolean sendRequest(@Nonnull File tokenDir, int port, @Nonnull String[] args, @Nonnull PrintStream out) throws IOException {
+        String token = readToken(getTokenFile(tokenDir, port));
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+        try {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), CHARSET));
+            writer.println(token);
+            writer.println(escape(new File("").getAbsolutePath()));
+            writer.println(args.length);
+            for (String arg : args) {
+                writer.println(escape(arg));
+            }
+            writer.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+            String status = reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                out.println(line);
+            }
+            return STATUS_OK.equals(status);
+        } catch (SocketException e) {
+            throw new IOException("Exception communicating with JMX Invoker daemon on port " + port + ": " + e);
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Escape the line breaks and backslashes of the given value to send it on a single line.
+     */
+    @Nonnull
+    static String escape(@Nonnull String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                result.append("\\\\");
+            } else if (c == '\n') {
+                result.append("\\n");
+            } else if (c == '\r') {
+                result.append("\\r");
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @see #escape(String)
+     */
+    @Nonnull
+    static String unescape(@Nullable String line) throws IOException {
+        if (line == null) {
+            throw new EOFException("Unexpected end of invocation");
+        }
+        StringBuilder result = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c != '\\') {
+                result.append(c);
+                continue;
+            }
+            if (++i == line.length()) {
+                throw new IOException("Invalid escape sequence at the end of '" + line + "'");
+            }
+            char escaped = line.charAt(i);
+            if (escaped == 'n') {
+                result.append('\n');
+            } else if (escaped == 'r') {
+                result.append('\r');
+            } else if (escaped == '\\') {
+                result.append('\\');
+            } else {
+                throw new IOException("Invalid escape sequence '\\" + escaped + "' in '" + line + "'");
+            }
+        }
+        return result.toString();
+    }
+
+    @Nonnull
+    static File getDefaultTokenDir() {
+        return new File(System.getProperty("user.home"));
+    }
+
+    /**
+     * @return the file containing the token of the daemon listening on the given <code>port</code>
+     */
+    @Nonnull
+    public static File getTokenFile(@Nonnull File tokenDir, int port) {
+        return new File(tokenDir, ".jmx-invoker-daemon-" + port + ".token");
+    }
+
+    /**
+     * Write the token in a file only readable and writable by the owner.
+     */
+    private static void writeToken(@Nonnull File tokenFile, @Nonnull String token) throws IOException {
+        File tmpFile = new File(tokenFile.getPath() + ".tmp");
+        tmpFile.delete();
+        if (!tmpFile.createNewFile()) {
+            throw new IOException("Exception creating token file " + tmpFile);
+        }
+        if (!(tmpFile.setReadable(false, false) && tmpFile.setReadable(true, true) &&
+                tmpFile.setWritable(false, false) && tmpFile.setWritable(true, true))) {
+            tmpFile.delete();
+            throw new IOException("Exception restricting the permissions of token file " + tmpFile + " to its owner");
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(tmpFile), CHARSET);
+        try {
+            out.write(token);
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(tokenFile)) {
+            tokenFile.delete();
+            if (!tmpFile.renameTo(tokenFile)) {
+                throw new IOException("Exception renaming " + tmpFile + " to " + tokenFile);
+            }
+        }
+    }
+
+    @Nonnull
+    private static String readToken(@Nonnull File tokenFile) throws IOException {
+        BufferedReader in;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(tokenFile), CHARSET));
+        } catch (FileNotFoundException e) {
+            throw new IOException("Token file " + tokenFile + " of the JMX Invoker daemon not found, is the daemon started by the same user?", e);
+        }
+        try {
+            String token = in.readLine();
+            if (token == null) {
+                throw new IOException("Empty token file " + tokenFile);
+            }
+            return token.trim();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Nonnull
+    private static String toHex(@Nonnull byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+
+    static class JmxInvokerDaemonArguments {
+        @Option(name = "--port", required = true, metaVar = "PORT", usage = "loopback port to listen on")
+        public int port;
+        @Option(name = "--threads", required = false, metaVar = "THREADS", usage = "number of invocations processed concurrently, default 4")
+        public int threads = 4;
+        @Option(name = "-v", aliases = {"-x", "--verbose"}, usage = "print debug info ")
+        public boolean verbose;
+        @Option(name = "-vvv", aliases = "-xxx", usage = "print super verbose debug info ")
+        public boolean superVerbose;
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.convert.SimpleTypeConverter;
+import com.cloudbees.jmx.convert.TypeConverter;
+import com.cloudbees.util.Strings2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Session on the MBeans of a JVM for applications embedding the invoker (health checks, monitoring agents, ...):
+ * typed {@link #get(ObjectName, String) get}, {@link #set(ObjectName, String, Object) set},
+ * {@link #invoke(ObjectName, String, Object...) invoke} and {@link #query(ObjectName, QueryExp) query} methods on a
+ * single connection opened once, without command line arguments to parse.
+ * <p/>
+ * The {@link MBeanInfo}s needed to convert <code>String</code> values and to resolve operation signatures are
+ * cached by the {@link JmxInvoker} of the session and the signatures of the operations are computed once (see
+ * {@link MBeanInfoIndex.OperationSignature}), attribute reads and queries don't use them at all.
+ * <p/>
+ * Sessions are thread safe and must be {@linkplain #close() closed} to close their connection. Once closed, all
+ * the methods throw an {@link IllegalStateException}.
+ * <pre><code>
+ * JmxSession session = JmxSession.open("12345");
+ * try {
+ *     Integer threadCount = session.get(new ObjectName("java.lang:type=Threading"), "ThreadCount", Integer.class);
+ *     session.invoke(new ObjectName("java.lang:type=Memory"), "gc");
+ * } finally {
+ *     session.close();
+ * }
+ * </code></pre>
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class JmxSession implements Closeable {
+
+    private static final Map<String, Class<?>> WRAPPER_TYPES = new HashMap<String, Class<?>>();
+
+    static {
+        WRAPPER_TYPES.put(boolean.class.getName(), Boolean.class);
+        WRAPPER_TYPES.put(char.class.getName(), Character.class);
+        WRAPPER_TYPES.put(byte.class.getName(), Byte.class);
+        WRAPPER_TYPES.put(short.class.getName(), Short.class);
+        WRAPPER_TYPES.put(int.class.getName(), Integer.class);
+        WRAPPER_TYPES.put(long.class.getName(), Long.class);
+        WRAPPER_TYPES.put(float.class.getName(), Float.class);
+        WRAPPER_TYPES.put(double.class.getName(), Double.class);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(JmxSession.class);
+
+    private final JmxInvoker jmxInvoker;
+
+    private final MBeanServerConnection mbeanServer;
+
+    /**
+     * <code>true</code> if the connection has been opened by the session and must be closed with it
+     */
+    private final boolean ownConnection;
+
+    private volatile boolean closed;
+
+    /**
+     * Session on the given connection, the connection is left open when the session is closed.
+     */
+    public JmxSession(@Nonnull JmxInvoker jmxInvoker, @Nonnull MBeanServerConnection mbeanServer) {
+        this(jmxInvoker, mbeanServer, false);
+    }
+
+    private JmxSession(@Nonnull JmxInvoker jmxInvoker, @Nonnull MBeanServerConnection mbeanServer, boolean ownConnection) {
+        this.jmxInvoker = jmxInvoker;
+        this.mbeanServer = mbeanServer;
+        this.ownConnection = ownConnection;
+        // sessions live long, keep their cached MBeanInfo up to date
+        jmxInvoker.listenForRegistrations(mbeanServer);
+    }
+
+    /**
+     * Open a session on the JVM with the given pid or JMX service URL.
+     */
+    @Nonnull
+    public static JmxSession open(@Nonnull String target) throws IOException {
+        return open(target, new JmxInvoker());
+    }
+
+    /**
+     * Open a session on the JVM with the given pid or JMX service URL, connecting with the given <code>jmxInvoker</code>
+     * (e.g. through its {@link JmxInvoker#setConnectionProvider(ConnectionProvider) ConnectionProvider}).
+     */
+    @Nonnull
+    public static JmxSession open(@Nonnull String target, @Nonnull JmxInvoker jmxInvoker) throws IOException {
+        return new JmxSession(jmxInvoker, jmxInvoker.connectToMbeanServer(target), true);
+    }
+
+    /**
+     * @return the value of the given attribute
+     */
+    @Nullable
+    public Object get(@Nonnull ObjectName objectName, @Nonnull String attribute) throws IOException, JMException {
+        checkOpen();
+        return mbeanServer.getAttribute(objectName, attribute);
+    }
+
+    /**
+     * @param type expected type of the value, primitive types are accepted for their wrapper (<code>int.class</code>
+     *             for {@link Integer})
+     * @throws ClassCastException if the value is not of the given <code>type</code>
+     */
+    @Nullable
+    public <T> T get(@Nonnull ObjectName objectName, @Nonnull String attribute, @Nonnull Class<T> type) throws IOException, JMException {
+        Object value = get(objectName, attribute);
+        Class<?> wrapperType = type.isPrimitive() ? WRAPPER_TYPES.get(type.getName()) : type;
+        @SuppressWarnings("unchecked")
+        T result = (T) wrapperType.cast(value);
+        return result;
+    }
+
+    /**
+     * Read the given attributes with a single {@link MBeanServerConnection#getAttributes(ObjectName, String[])} call.
+     *
+     * @return the values indexed by attribute name, attributes that could not be read are not in the map
+     */
+    @Nonnull
+    public Map<String, Object> getAttributes(@Nonnull ObjectName objectName, @Nonnull String... attributes) throws IOException, JMException {
+        checkOpen();
+        AttributeList attributeList = mbeanServer.getAttributes(objectName, attributes);
+        Map<String, Object> result = new LinkedHashMap<String, Object>(attributeList.size() * 2);
+        for (Object attribute : attributeList) {
+            result.put(((Attribute) attribute).getName(), ((Attribute) attribute).getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Write the given attribute. <code>String</code> values are converted to the type of the attribute as on the
+     * command line (see {@link com.cloudbees.jmx.convert.TypeConverters}), other values are written as is.
+     */
+    public void set(@Nonnull ObjectName objectName, @Nonnull String attribute, @Nullable Object value) throws IOException, JMException {
+        checkOpen();
+        if (value instanceof String) {
+            MBeanAttributeInfo attributeInfo = jmxInvoker.getMBeanInfo(mbeanServer, objectName).getAttribute(attribute);
+            if (attributeInfo == null) {
+                throw new AttributeNotFoundException("No attribute '" + attribute + "' found on '" + objectName + "'");
+            }
+            value = convert((String) value, attributeInfo.getType(), jmxInvoker.getTypeConverters().getConverter(attributeInfo.getType()));
+        }
+        mbeanServer.setAttribute(objectName, new Attribute(attribute, value));
+    }
+
+    /**
+     * Invoke the given operation, its signature being resolved on the number and on the types of the given
+     * <code>arguments</code>:
+     * <ul>
+     * <li>when all the arguments are <code>String</code>s (or <code>null</code>), they are converted and the overloads
+     * resolved as on the command line (see {@link JmxInvoker#resolveOperation(ObjectName, MBeanInfoIndex, String, String[])})</li>
+     * <li>otherwise, the overload accepting the given arguments is invoked, <code>String</code> arguments being
+     * converted to the type of their parameter</li>
+     * </ul>
+     * Use {@link #invoke(ObjectName, String, Object[], String[])} when the signature is known.
+     *
+     * @throws IllegalArgumentException if no operation or several overloads match the arguments
+     */
+    @Nullable
+    public Object invoke(@Nonnull ObjectName objectName, @Nonnull String operation, @Nonnull Object... arguments) throws IOException, JMException {
+        checkOpen();
+        MBeanInfoIndex mbeanInfo = jmxInvoker.getMBeanInfo(mbeanServer, objectName);
+
+        String[] stringArguments = toStringArguments(arguments);
+        if (stringArguments != null) {
+            MBeanInfoIndex.OperationSignature signature = jmxInvoker.resolveOperation(objectName, mbeanInfo, operation, stringArguments);
+            Object[] convertedArguments = jmxInvoker.convertValues(stringArguments, signature.getTypes(), signature.getConverters(jmxInvoker.getTypeConverters()));
+            return mbeanServer.invoke(objectName, operation, convertedArguments, signature.getTypes());
+        }
+
+        MBeanInfoIndex.OperationSignature matchingSignature = null;
+        Object[] matchingArguments = null;
+        for (MBeanInfoIndex.OperationSignature signature : mbeanInfo.getOperations(operation, arguments.length)) {
+            Object[] convertedArguments = convertArguments(arguments, signature);
+            if (convertedArguments == null) {
+                logger.trace("Ignore non matching operation {}", signature);
+            } else if (matchingSignature == null) {
+                matchingSignature = signature;
+                matchingArguments = convertedArguments;
+            } else {
+                throw new IllegalArgumentException("More than 1 operation '" + operation + "(" + Strings2.join(arguments, ", ") + ")' found on '" +
+                        objectName + "': " + matchingSignature + ", " + signature + ". Specify the signature");
+            }
+        }
+        if (matchingSignature == null) {
+            throw new IllegalArgumentException("Operation '" + operation + "(" + Strings2.join(arguments, ", ") + ")' NOT found on " + objectName);
+        }
+        return mbeanServer.invoke(objectName, operation, matchingArguments, matchingSignature.getTypes());
+    }
+
+    /**
+     * Invoke the given operation with the given signature, no {@link MBeanInfo} is needed.
+     */
+    @Nullable
+    public Object invoke(@Nonnull ObjectName objectName, @Nonnull String operation, @Nonnull Object[] arguments, @Nonnull String[] signature) throws IOException, JMException {
+        checkOpen();
+        return mbeanServer.invoke(objectName, operation, arguments, signature);
+    }
+
+    /**
+     * @return the names of the MBeans matching the given pattern and query
+     */
+    @Nonnull
+    public Set<ObjectName> query(@Nullable ObjectName pattern, @Nullable QueryExp query) throws IOException {
+        checkOpen();
+        return mbeanServer.queryNames(pattern, query);
+    }
+
+    /**
+     * @param pattern ObjectName pattern (e.g. <code>java.lang:type=GarbageCollector,*</code>)
+     * @throws IllegalArgumentException if the pattern is not a valid ObjectName
+     */
+    @Nonnull
+    public Set<ObjectName> query(@Nonnull String pattern) throws IOException {
+        try {
+            return query(new ObjectName(pattern), null);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid ObjectName '" + pattern + "'", e);
+        }
+    }
+
+    @Nonnull
+    public MBeanServerConnection getMBeanServerConnection() {
+        checkOpen();
+        return mbeanServer;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close the connection if it has been opened by {@link #open(String)}. Invocations in progress may fail.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (ownConnection) {
+            jmxInvoker.closeMbeanServerConnection(mbeanServer);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Session closed");
+        }
+    }
+
+    /**
+     * @return the given arguments if they are all <code>String</code>s or <code>null</code>, <code>null</code> otherwise
+     */
+    @Nullable
+    private static String[] toStringArguments(@Nonnull Object[] arguments) {
+        if (arguments instanceof String[]) {
+            return (String[]) arguments;
+        }
+        String[] result = new String[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] != null && !(arguments[i] instanceof String)) {
+                return null;
+            }
+            result[i] = (String) arguments[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return the arguments converted to the signature, <code>null</code> if they don't match it
+     */
+    @Nullable
+    private Object[] convertArguments(@Nonnull Object[] arguments, @Nonnull MBeanInfoIndex.OperationSignature signature) {
+        String[] types = signature.getTypes();
+        TypeConverter[] converters = signature.getConverters(jmxInvoker.getTypeConverters());
+        Object[] result = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            Object argument = arguments[i];
+            String type = types[i];
+            if (argument == null) {
+                if (WRAPPER_TYPES.containsKey(type)) {
+                    return null;
+                }
+            } else if (argument instanceof String) {
+                try {
+                    result[i] = convert((String) argument, type, converters[i]);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            } else if (isInstance(argument, type)) {
+                result[i] = argument;
+            } else {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    private static Object convert(@Nonnull String value, @Nonnull String type, @Nonnull TypeConverter converter) {
+        if (JmxInvoker.NULL_VALUE.equals(value)) {
+            return null;
+        }
+        return converter == SimpleTypeConverter.STRING ? value : converter.convert(value, type);
+    }
+
+    private static boolean isInstance(@Nonnull Object value, @Nonnull String type) {
+        Class<?> valueClass = value.getClass();
+        if (valueClass.getName().equals(type) || valueClass == WRAPPER_TYPES.get(type)) {
+            return true;
+        }
+        try {
+            return Class.forName(type, false, valueClass.getClassLoader()).isInstance(value);
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
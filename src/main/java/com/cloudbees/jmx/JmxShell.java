@@ -0,0 +1,492 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import jline.console.ConsoleReader;
+import jline.console.completer.Completer;
+import jline.console.history.FileHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interactive shell invoking the MBeans of a JVM on a single connection, see {@link #HELP} for the commands. The same
+ * commands can be read from a file with {@link #executeScript(BufferedReader, int, PrintWriter)}.
+ * <p/>
+ * Each command is processed as a {@link JmxInvoker} invocation (<code>get</code> is <code>--attribute</code>,
+ * <code>invoke</code> is <code>--operation</code>, ...) on the connection opened when the shell started so that
+ * the JVM startup, the attach and the JMX connection are only paid once. Tab completion relies on the cached
+ * ObjectNames and on the {@link MBeanInfoCache} of the invoker.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class JmxShell {
+
+    public static final String HELP = "" +
+            "list [OBJECT_NAME]                           list the MBeans matching the ObjectName (default --object-name)\n" +
+            "describe OBJECT_NAME                         describe the operations and attributes of the MBeans\n" +
+            "get OBJECT_NAME ATTRIBUTE[,ATTRIBUTE...|*]   read attribute(s)\n" +
+            "set OBJECT_NAME ATTRIBUTE VALUE              write an attribute\n" +
+            "invoke OBJECT_NAME OPERATION [ARG...]        invoke an operation\n" +
+            "time COMMAND                                 execute the command and print its duration\n" +
+            "help                                         print this help\n" +
+            "exit                                         quit the shell\n" +
+            "Arguments containing spaces can be quoted (\"PS Eden Space\"), special value " + JmxInvoker.NULL_VALUE + " is null.";
+
+    static final List<String> COMMANDS = Arrays.asList("list", "describe", "get", "set", "invoke", "time", "help", "exit");
+
+    private final Logger logger = LoggerFactory.getLogger(JmxShell.class);
+
+    private final String pid;
+
+    private final MBeanServerConnection mbeanServer;
+
+    @Nullable
+    private final ObjectName defaultObjectName;
+
+    /**
+     * Invoker executing the commands, shares the {@link Timings}, type converters and MBeanInfo cache of the command line
+     */
+    private final JmxInvoker jmxInvoker;
+
+    /**
+     * ObjectNames offered by the completion, loaded on demand and refreshed by the <code>list</code> command
+     */
+    private volatile SortedSet<String> objectNames;
+
+    /**
+     * @param defaultObjectName scope of <code>list</code> without argument and of the ObjectName completion,
+     *                          all the MBeans if <code>null</code>
+     */
+    public JmxShell(@Nonnull String pid, @Nonnull MBeanServerConnection mbeanServer, @Nullable ObjectName defaultObjectName) {
+        this(new JmxInvoker(), pid, mbeanServer, defaultObjectName);
+    }
+
+    /**
+     * @param jmxInvoker        invoker executing the commands on the given <code>mbeanServer</code>
+     * @param defaultObjectName scope of <code>list</code> without argument and of the ObjectName completion,
+     *                          all the MBeans if <code>null</code>
+     */
+    public JmxShell(@Nonnull JmxInvoker jmxInvoker, @Nonnull String pid, @Nonnull MBeanServerConnection mbeanServer, @Nullable ObjectName defaultObjectName) {
+        this.jmxInvoker = jmxInvoker;
+        this.pid = pid;
+        this.mbeanServer = mbeanServer;
+        this.defaultObjectName = defaultObjectName;
+        jmxInvoker.listenForRegistrations(mbeanServer);
+    }
+
+    /**
+     * Read and execute commands from the console until <code>exit</code> or end of input. The command history is
+     * kept in <code>~/.jmx-invoker-history</code>.
+     */
+    public void run() throws IOException {
+        ConsoleReader console = new ConsoleReader();
+        FileHistory history = new FileHistory(new File(System.getProperty("user.home"), ".jmx-invoker-history"));
+        try {
+            console.setHistory(history);
+            console.addCompleter(newCompleter());
+            console.setPrompt("jmx " + pid + "> ");
+            PrintWriter out = new PrintWriter(console.getOutput());
+            out.println("Connected to JVM " + pid + ", type 'help' for the list of commands");
+            out.flush();
+
+            String line;
+            while ((line = console.readLine()) != null) {
+                if (!execute(line, out)) {
+                    break;
+                }
+            }
+        } finally {
+            try {
+                history.flush();
+            } catch (IOException e) {
+                logger.debug("Exception saving history", e);
+            }
+            console.shutdown();
+        }
+    }
+
+    /**
+     * Execute the given command line.
+     *
+     * @return <code>false</code> if the shell must exit
+     */
+    public boolean execute(@Nonnull String line, @Nonnull PrintWriter out) {
+        try {
+            List<String> tokens = tokenize(line);
+            if (tokens.isEmpty()) {
+                return true;
+            } else if ("exit".equals(tokens.get(0)) || "quit".equals(tokens.get(0))) {
+                return false;
+            }
+            boolean timed = "time".equals(tokens.get(0));
+            if (timed) {
+                tokens = tokens.subList(1, tokens.size());
+            }
+            long nanosBefore = System.nanoTime();
+            execute(tokens, out);
+            if (timed) {
+                out.println(String.format(Locale.ENGLISH, "Time: %.3fms", (System.nanoTime() - nanosBefore) / 1000000.0));
+            }
+        } catch (Exception e) {
+            logger.debug("Exception executing '{}'", line, e);
+            out.println("ERROR: " + e.getMessage());
+        } finally {
+            out.flush();
+        }
+        return true;
+    }
+
+    /**
+     * Execute the given tokenized command.
+     *
+     * @return <code>false</code> if the invocation of one of the MBeans failed
+     */
+    protected boolean execute(@Nonnull List<String> tokens, @Nonnull PrintWriter out) throws Exception {
+        String command = tokens.isEmpty() ? "help" : tokens.get(0);
+        List<String> args = tokens.subList(Math.min(1, tokens.size()), tokens.size());
+
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        arguments.pid = pid;
+        if ("help".equals(command)) {
+            out.println(HELP);
+            return true;
+        } else if ("list".equals(command)) {
+            checkArgumentsCount(args, 0, 1, "list [OBJECT_NAME]");
+            arguments.objectName = args.isEmpty() ? getDefaultObjectName() : new ObjectName(args.get(0));
+            arguments.listMbeans = true;
+            objectNames = null;
+        } else if ("describe".equals(command)) {
+            checkArgumentsCount(args, 1, 1, "describe OBJECT_NAME");
+            arguments.objectName = new ObjectName(args.get(0));
+            arguments.describeMbeans = true;
+        } else if ("get".equals(command)) {
+            checkArgumentsCount(args, 2, 2, "get OBJECT_NAME ATTRIBUTE[,ATTRIBUTE...|*]");
+            arguments.objectName = new ObjectName(args.get(0));
+            arguments.attribute = new String[]{args.get(1)};
+        } else if ("set".equals(command)) {
+            checkArgumentsCount(args, 3, 3, "set OBJECT_NAME ATTRIBUTE VALUE");
+            if (JmxInvoker.isMultipleAttributes(args.get(1))) {
+                throw new IllegalArgumentException("Can NOT write a value to more than one attribute");
+            }
+            arguments.objectName = new ObjectName(args.get(0));
+            arguments.attribute = new String[]{args.get(1), args.get(2)};
+        } else if ("invoke".equals(command)) {
+            checkArgumentsCount(args, 2, Integer.MAX_VALUE, "invoke OBJECT_NAME OPERATION [ARG...]");
+            arguments.objectName = new ObjectName(args.get(0));
+            arguments.operation = args.subList(1, args.size()).toArray(new String[args.size() - 1]);
+        } else {
+            throw new IllegalArgumentException("Unknown command '" + command + "', type 'help' for the list of commands");
+        }
+        final AtomicBoolean success = new AtomicBoolean(true);
+        jmxInvoker.process(pid, mbeanServer, arguments, new TextResultWriter(out) {
+            @Override
+            public synchronized void onResult(@Nonnull JmxInvoker.Result result) {
+                if (result.exception != null) {
+                    success.set(false);
+                }
+                super.onResult(result);
+            }
+        });
+        return success.get();
+    }
+
+    /**
+     * Execute the commands of the given script, one per line, blank lines and lines starting with <code>#</code> being
+     * ignored. The output of each command is written to <code>out</code> after a <code># line N: COMMAND</code> header,
+     * in the order of the script; a failing command is reported with an <code>ERROR line N:</code> line and does not
+     * stop the script.
+     * <p/>
+     * With a <code>parallelism</code> greater than 1, the commands are pipelined on the connection by as many threads,
+     * they must then be independent of each other (e.g. no <code>get</code> of an attribute <code>set</code> on a
+     * previous line).
+     *
+     * @return <code>true</code> if all the commands succeeded
+     */
+    public boolean executeScript(@Nonnull BufferedReader script, int parallelism, @Nonnull PrintWriter out) throws IOException, InterruptedException {
+        List<Callable<String>> commands = new ArrayList<Callable<String>>();
+        final AtomicInteger failures = new AtomicInteger();
+        String line;
+        int lineNumber = 0;
+        while ((line = script.readLine()) != null) {
+            lineNumber++;
+            final String command = line.trim();
+            if (command.length() == 0 || command.startsWith("#")) {
+                continue;
+            }
+            final int commandLineNumber = lineNumber;
+            commands.add(new Callable<String>() {
+                @Override
+                public String call() {
+                    StringWriter output = new StringWriter();
+                    PrintWriter commandOut = new PrintWriter(output);
+                    commandOut.println("# line " + commandLineNumber + ": " + command);
+                    try {
+                        List<String> tokens = tokenize(command);
+                        boolean timed = "time".equals(tokens.get(0));
+                        if (timed) {
+                            tokens = tokens.subList(1, tokens.size());
+                        }
+                        long nanosBefore = System.nanoTime();
+                        if (!execute(tokens, commandOut)) {
+                            failures.incrementAndGet();
+                            commandOut.println("ERROR line " + commandLineNumber + ": invocation failed");
+                        }
+                        if (timed) {
+                            commandOut.println(String.format(Locale.ENGLISH, "Time: %.3fms", (System.nanoTime() - nanosBefore) / 1000000.0));
+                        }
+                    } catch (Exception e) {
+                        logger.debug("Exception executing line {}: '{}'", commandLineNumber, command, e);
+                        failures.incrementAndGet();
+                        commandOut.println("ERROR line " + commandLineNumber + ": " + e.getMessage());
+                    }
+                    commandOut.flush();
+                    return output.toString();
+                }
+            });
+        }
+
+        if (parallelism <= 1) {
+            for (Callable<String> command : commands) {
+                try {
+                    out.print(command.call());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e); // commands catch their exceptions
+                }
+                out.flush();
+            }
+        } else {
+            ExecutorService executorService = Executors.newFixedThreadPool(parallelism, new JmxInvoker.DaemonThreadFactory("jmx-invoker-script-"));
+            try {
+                List<Future<String>> futures = new ArrayList<Future<String>>(commands.size());
+                for (Callable<String> command : commands) {
+                    futures.add(executorService.submit(command));
+                }
+                for (Future<String> future : futures) {
+                    try {
+                        out.print(future.get());
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException(e.getCause()); // commands catch their exceptions
+                    }
+                    out.flush();
+                }
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+        return failures.get() == 0;
+    }
+
+    private void checkArgumentsCount(@Nonnull List<String> args, int min, int max, @Nonnull String usage) {
+        if (args.size() < min || args.size() > max) {
+            throw new IllegalArgumentException("Usage: " + usage);
+        }
+    }
+
+    @Nonnull
+    private ObjectName getDefaultObjectName() throws MalformedObjectNameException {
+        return defaultObjectName == null ? new ObjectName("*:*") : defaultObjectName;
+    }
+
+    @Nonnull
+    protected SortedSet<String> getObjectNames() throws IOException, MalformedObjectNameException {
+        SortedSet<String> result = objectNames;
+        if (result == null) {
+            result = new TreeSet<String>();
+            for (ObjectName objectName : mbeanServer.queryNames(getDefaultObjectName(), null)) {
+                result.add(objectName.toString());
+            }
+            objectNames = result;
+        }
+        return result;
+    }
+
+    @Nonnull
+    public Completer newCompleter() {
+        return new Completer() {
+            @Override
+            public int complete(String buffer, int cursor, List<CharSequence> candidates) {
+                try {
+                    return JmxShell.this.complete(buffer == null ? "" : buffer.substring(0, cursor), candidates);
+                } catch (Exception e) {
+                    logger.debug("Exception completing '{}'", buffer, e);
+                    return -1;
+                }
+            }
+        };
+    }
+
+    /**
+     * Add to <code>candidates</code> the completions of the last token of the given <code>line</code>.
+     *
+     * @return the position in the line of the completed token, <code>-1</code> if there is no candidate
+     */
+    protected int complete(@Nonnull String line, @Nonnull List<CharSequence> candidates) throws Exception {
+        List<Integer> starts = new ArrayList<Integer>();
+        List<String> tokens = tokenize(line, starts, true);
+        int position;
+        if (tokenize(line + "x", new ArrayList<Integer>(), true).size() > tokens.size()) {
+            // the line ends with a whitespace that is not in an open quote, complete a new token
+            tokens.add("");
+            position = line.length();
+        } else {
+            position = starts.get(starts.size() - 1);
+        }
+        String prefix = tokens.get(tokens.size() - 1);
+        if (tokens.size() > 1 && "time".equals(tokens.get(0))) {
+            tokens = tokens.subList(1, tokens.size());
+        }
+
+        Collection<String> words;
+        int index = tokens.size() - 1;
+        String command = tokens.get(0);
+        if (index == 0) {
+            words = COMMANDS;
+        } else if (index == 1 && !"help".equals(command) && !"exit".equals(command)) {
+            words = getObjectNames();
+        } else if (index == 2 && ("get".equals(command) || "set".equals(command) || "invoke".equals(command))) {
+            MBeanInfoIndex mbeanInfo = jmxInvoker.getMBeanInfo(mbeanServer, new ObjectName(tokens.get(1)));
+            words = new TreeSet<String>();
+            if ("invoke".equals(command)) {
+                for (MBeanOperationInfo operation : mbeanInfo.getMBeanInfo().getOperations()) {
+                    words.add(operation.getName());
+                }
+            } else {
+                for (MBeanAttributeInfo attribute : mbeanInfo.getMBeanInfo().getAttributes()) {
+                    if ("get".equals(command) ? attribute.isReadable() : attribute.isWritable()) {
+                        words.add(attribute.getName());
+                    }
+                }
+            }
+        } else {
+            words = Collections.emptyList();
+        }
+
+        for (String word : words) {
+            if (word.startsWith(prefix)) {
+                candidates.add(quote(word));
+            }
+        }
+        return candidates.isEmpty() ? -1 : position;
+    }
+
+    /**
+     * Split the given command line on whitespaces. Tokens starting with a single or double quote extend to the
+     * matching quote, the quotes are removed and backslash escapes the next character. Quotes inside a token (e.g.
+     * <code>name="http-nio 8080"</code>) are kept and protect their whitespaces.
+     *
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    @Nonnull
+    public static List<String> tokenize(@Nonnull String line) {
+        return tokenize(line, new ArrayList<Integer>(), false);
+    }
+
+    @Nonnull
+    static List<String> tokenize(@Nonnull String line, @Nonnull List<Integer> starts, boolean lenient) {
+        List<String> tokens = new ArrayList<String>();
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                return tokens;
+            }
+            starts.add(i);
+            StringBuilder token = new StringBuilder();
+            char c = line.charAt(i);
+            if (c == '"' || c == '\'') {
+                char quote = c;
+                i++;
+                while (i < length && (c = line.charAt(i)) != quote) {
+                    if (c == '\\' && i + 1 < length) {
+                        c = line.charAt(++i);
+                    }
+                    token.append(c);
+                    i++;
+                }
+                if (i == length && !lenient) {
+                    throw new IllegalArgumentException("Unterminated quote " + quote + " in '" + line + "'");
+                }
+                i++;
+            } else {
+                boolean inQuotes = false;
+                while (i < length) {
+                    c = line.charAt(i);
+                    if (!inQuotes && Character.isWhitespace(c)) {
+                        break;
+                    } else if (c == '"') {
+                        inQuotes = !inQuotes;
+                    }
+                    token.append(c);
+                    i++;
+                }
+                if (inQuotes && !lenient) {
+                    throw new IllegalArgumentException("Unterminated quote \" in '" + line + "'");
+                }
+            }
+            tokens.add(token.toString());
+        }
+    }
+
+    /**
+     * Quote the given word if it would not be read back as a single token by {@link #tokenize(String)}.
+     */
+    @Nonnull
+    static String quote(@Nonnull String word) {
+        boolean quote = word.length() == 0 || word.charAt(0) == '"' || word.charAt(0) == '\'';
+        boolean inQuotes = false;
+        for (int i = 0; i < word.length() && !quote; i++) {
+            char c = word.charAt(i);
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (Character.isWhitespace(c) && !inQuotes) {
+                quote = true;
+            }
+        }
+        quote |= inQuotes;
+        if (!quote) {
+            return word;
+        }
+        StringBuilder sb = new StringBuilder(word.length() + 2).append('"');
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}
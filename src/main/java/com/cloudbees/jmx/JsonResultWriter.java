@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.util.Json;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link ResultListener} writing each result as a JSON record as soon as it is available, either as the elements of
+ * a JSON array or as newline delimited JSON (one record per line).
+ * <p/>
+ * Record: <code>{"pid":"123","objectName":"...","value":...,"durationMillis":1.234,"error":"..."}</code>,
+ * <code>error</code> is only present if the invocation failed.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class JsonResultWriter implements ResultListener {
+
+    private final PrintWriter out;
+
+    private final boolean newlineDelimited;
+
+    private boolean firstRecord = true;
+
+    public JsonResultWriter(@Nonnull PrintWriter out, boolean newlineDelimited) {
+        this.out = out;
+        this.newlineDelimited = newlineDelimited;
+    }
+
+    @Override
+    public synchronized void onStart(@Nonnull List<String> pids) {
+        if (!newlineDelimited) {
+            out.print('[');
+        }
+    }
+
+    @Override
+    public synchronized void onResult(@Nonnull JmxInvoker.Result result) {
+        if (!newlineDelimited) {
+            if (!firstRecord) {
+                out.print(',');
+            }
+            out.println();
+        }
+        firstRecord = false;
+        try {
+            writeRecord(result, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        if (newlineDelimited) {
+            out.println();
+        }
+        out.flush();
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        if (!newlineDelimited) {
+            out.println();
+            out.println(']');
+        }
+        out.flush();
+    }
+
+    static void writeRecord(@Nonnull JmxInvoker.Result result, @Nonnull Appendable out) throws IOException {
+        out.append("{\"pid\":");
+        Json.write(result.pid, out);
+        out.append(",\"objectName\":");
+        Json.write(result.objectName == null ? null : result.objectName.toString(), out);
+        out.append(",\"value\":");
+        if (result.exception != null || result.value == void.class) {
+            out.append("null");
+        } else {
+            Json.write(result.value, out);
+        }
+        out.append(",\"durationMillis\":").append(String.format(Locale.ENGLISH, "%.3f", result.durationInNanos / 1000000.0));
+        if (result.exception != null) {
+            out.append(",\"error\":");
+            Json.write(result.exception.toString(), out);
+        }
+        out.append('}');
+    }
+}
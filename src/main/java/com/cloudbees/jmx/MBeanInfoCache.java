@@ -0,0 +1,269 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.management.*;
+import javax.management.relation.MBeanServerNotificationFilter;
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cache of the {@link MBeanInfo} of the MBeans of a JVM.
+ * <p/>
+ * {@link MBeanInfo}s are cached by {@link ObjectName} and, when they are {@linkplain MBeanInfoIndex#isImmutable() immutable},
+ * by MBean class name so that hundreds of MBeans of the same class (connectors, pools, ...) only cost one
+ * {@link MBeanServerConnection#getMBeanInfo(ObjectName)} call.
+ * <p/>
+ * Entries of unregistered MBeans are evicted once {@link #listenForRegistrations(MBeanServerConnection)} has been called.
+ * The entries by ObjectName are cleared when they exceed {@link #getMaxObjectNames() maxObjectNames} so that the cache
+ * of a long living connection does not grow with the churn of the MBeans (e.g. per web application or per session MBeans).
+ * The class name entries can be persisted with {@link #save(File)} and reloaded with {@link #load(File)}.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class MBeanInfoCache {
+
+    public static final int DEFAULT_MAX_OBJECT_NAMES = 10000;
+
+    /**
+     * Classes, besides the <code>javax.management</code> ones and their arrays, that can be read from a cache file:
+     * the map of the cache and the values of the descriptors and open types. <code>java.lang.Object</code> is not
+     * serializable, it can only be read as the element type of an array.
+     */
+    private static final Set<String> DESERIALIZABLE_CLASSES = new HashSet<String>(Arrays.asList(
+            HashMap.class.getName(), HashSet.class.getName(), "java.util.TreeMap", "java.util.TreeSet", "java.util.ArrayList",
+            "java.util.Collections$UnmodifiableSet", "java.util.Collections$UnmodifiableCollection",
+            "java.util.Collections$UnmodifiableList", "java.util.Collections$UnmodifiableRandomAccessList", "java.util.Date",
+            Object.class.getName(), String.class.getName(), Number.class.getName(), Boolean.class.getName(), Character.class.getName(),
+            Byte.class.getName(), Short.class.getName(), Integer.class.getName(), Long.class.getName(),
+            Float.class.getName(), Double.class.getName(), "java.math.BigInteger", "java.math.BigDecimal", Enum.class.getName()));
+
+    private final Logger logger = LoggerFactory.getLogger(MBeanInfoCache.class);
+
+    private final ConcurrentMap<ObjectName, MBeanInfoIndex> byObjectName = new ConcurrentHashMap<ObjectName, MBeanInfoIndex>();
+
+    private final ConcurrentMap<String, MBeanInfoIndex> byClassName = new ConcurrentHashMap<String, MBeanInfoIndex>();
+
+    private final ConcurrentMap<ObjectName, String> classNames = new ConcurrentHashMap<ObjectName, String>();
+
+    private final int maxObjectNames;
+
+    private final AtomicBoolean listeningForRegistrations = new AtomicBoolean();
+
+    private final NotificationListener registrationListener = new NotificationListener() {
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (notification instanceof MBeanServerNotification) {
+                ObjectName objectName = ((MBeanServerNotification) notification).getMBeanName();
+                logger.trace("Evict {} on {}", objectName, notification.getType());
+                byObjectName.remove(objectName);
+                classNames.remove(objectName);
+            }
+        }
+    };
+
+    public MBeanInfoCache() {
+        this(DEFAULT_MAX_OBJECT_NAMES);
+    }
+
+    /**
+     * @param maxObjectNames maximum number of MBeans cached by ObjectName
+     */
+    public MBeanInfoCache(int maxObjectNames) {
+        if (maxObjectNames < 1) {
+            throw new IllegalArgumentException("Max ObjectNames must be greater than 0: " + maxObjectNames);
+        }
+        this.maxObjectNames = maxObjectNames;
+    }
+
+    /**
+     * Return the indexed {@link MBeanInfo} of the given MBean, fetching it from the given <code>mbeanServer</code> if needed.
+     */
+    @Nonnull
+    public MBeanInfoIndex getMBeanInfo(@Nonnull MBeanServerConnection mbeanServer, @Nonnull ObjectName objectName) throws IOException, JMException {
+        MBeanInfoIndex mbeanInfo = byObjectName.get(objectName);
+        if (mbeanInfo != null) {
+            return mbeanInfo;
+        }
+        String className = classNames.get(objectName);
+        if (className == null) {
+            evictObjectNamesIfFull();
+            className = mbeanServer.getObjectInstance(objectName).getClassName();
+            classNames.put(objectName, className);
+        }
+        mbeanInfo = byClassName.get(className);
+        if (mbeanInfo == null) {
+            logger.trace("Get MBeanInfo of {}", objectName);
+            mbeanInfo = new MBeanInfoIndex(mbeanServer.getMBeanInfo(objectName));
+            if (mbeanInfo.isImmutable()) {
+                byClassName.put(className, mbeanInfo);
+            }
+        }
+        evictObjectNamesIfFull();
+        byObjectName.put(objectName, mbeanInfo);
+        return mbeanInfo;
+    }
+
+    /**
+     * Record the class name of the given MBean (e.g. obtained with {@link MBeanServerConnection#queryMBeans(ObjectName, QueryExp)})
+     * to spare a {@link MBeanServerConnection#getObjectInstance(ObjectName)} call on lookup.
+     */
+    public void registerObjectInstance(@Nonnull ObjectInstance objectInstance) {
+        evictObjectNamesIfFull();
+        classNames.put(objectInstance.getObjectName(), objectInstance.getClassName());
+    }
+
+    /**
+     * Evict the entries of the MBeans registered and unregistered on the given <code>mbeanServer</code> listening to
+     * the {@link MBeanServerDelegate} notifications. Only worth for long living caches. Calling it again is a no-op.
+     */
+    public void listenForRegistrations(@Nonnull MBeanServerConnection mbeanServer) throws IOException, InstanceNotFoundException {
+        if (!listeningForRegistrations.compareAndSet(false, true)) {
+            return;
+        }
+        MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+        filter.enableAllObjectNames();
+        boolean listening = false;
+        try {
+            mbeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationListener, filter, null);
+            listening = true;
+        } finally {
+            listeningForRegistrations.set(listening);
+        }
+    }
+
+    public void stopListeningForRegistrations(@Nonnull MBeanServerConnection mbeanServer) {
+        if (!listeningForRegistrations.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            mbeanServer.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationListener);
+        } catch (Exception e) {
+            logger.debug("Exception removing registration listener", e);
+        }
+    }
+
+    public int getMaxObjectNames() {
+        return maxObjectNames;
+    }
+
+    private void evictObjectNamesIfFull() {
+        if (byObjectName.size() >= maxObjectNames || classNames.size() >= maxObjectNames) {
+            logger.debug("More than {} MBeans cached by ObjectName, clear them", maxObjectNames);
+            // entries by class name, costly to fetch again, are kept
+            byObjectName.clear();
+            classNames.clear();
+        }
+    }
+
+    public void clear() {
+        byObjectName.clear();
+        byClassName.clear();
+        classNames.clear();
+    }
+
+    /**
+     * Load the {@link MBeanInfo}s cached by class name previously {@linkplain #save(File) saved} in the given file.
+     * Corrupted or missing files are ignored, as well as files containing classes that can not be part of a
+     * {@link MBeanInfo}.
+     */
+    public void load(@Nonnull File file) {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file))) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    if (!isDeserializable(desc.getName())) {
+                        throw new InvalidClassException(desc.getName(), "Unexpected class in MBeanInfo cache");
+                    }
+                    return super.resolveClass(desc);
+                }
+            };
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, MBeanInfo> mbeanInfos = (Map<String, MBeanInfo>) in.readObject();
+                for (Map.Entry<String, MBeanInfo> entry : mbeanInfos.entrySet()) {
+                    byClassName.putIfAbsent(entry.getKey(), new MBeanInfoIndex(entry.getValue()));
+                }
+                logger.debug("Loaded {} MBeanInfo from {}", mbeanInfos.size(), file);
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            logger.warn("Exception loading MBeanInfo cache {}, ignore it", file, e);
+        }
+    }
+
+    /**
+     * Save the {@link MBeanInfo}s cached by class name in the given file.
+     */
+    public void save(@Nonnull File file) throws IOException {
+        Map<String, MBeanInfo> mbeanInfos = new HashMap<String, MBeanInfo>();
+        for (Map.Entry<String, MBeanInfoIndex> entry : byClassName.entrySet()) {
+            mbeanInfos.put(entry.getKey(), entry.getValue().getMBeanInfo());
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            // the file is deserialized by the next invocations, only writable by the owner as the connector address cache
+            tmpFile.setReadable(false, false);
+            tmpFile.setReadable(true, true);
+            tmpFile.setWritable(false, false);
+            tmpFile.setWritable(true, true);
+            out.writeObject(mbeanInfos);
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Exception renaming " + tmpFile + " to " + file);
+            }
+        }
+        logger.debug("Saved {} MBeanInfo in {}", mbeanInfos.size(), file);
+    }
+
+    /**
+     * @param className class name as written in the serialization stream, <code>[Ljava.lang.String;</code> for arrays
+     */
+    static boolean isDeserializable(@Nonnull String className) {
+        String elementClassName = className;
+        while (elementClassName.startsWith("[")) {
+            elementClassName = elementClassName.substring(1);
+        }
+        if (elementClassName.length() != className.length()) {
+            if (!elementClassName.startsWith("L")) {
+                // array of primitives
+                return true;
+            }
+            elementClassName = elementClassName.substring(1, elementClassName.length() - 1);
+        }
+        return elementClassName.startsWith("javax.management.") || DESERIALIZABLE_CLASSES.contains(elementClassName);
+    }
+}
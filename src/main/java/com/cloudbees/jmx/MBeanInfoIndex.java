@@ -0,0 +1,274 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.convert.SimpleTypeConverter;
+import com.cloudbees.jmx.convert.TypeConverter;
+import com.cloudbees.jmx.convert.TypeConverters;
+import com.cloudbees.util.Strings2;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.Descriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import java.util.*;
+
+/**
+ * {@link MBeanInfo} with its attributes indexed by name and its operations indexed by name and number of parameters.
+ * <p/>
+ * The signature of each operation is computed once (see {@link OperationSignature}) so that repeated invocations
+ * (sampling, daemon, shell) don't rebuild it nor resolve again the converters of its parameters.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class MBeanInfoIndex {
+
+    private final MBeanInfo mbeanInfo;
+
+    private final Map<String, MBeanAttributeInfo> attributesByName;
+
+    private final String[] readableAttributeNames;
+
+    private final Map<String, List<MBeanOperationInfo>> operationsByName;
+
+    /**
+     * Overloads indexed by name and then by number of parameters, <code>null</code> elements for the missing arities
+     */
+    private final Map<String, OperationSignature[][]> operationsByNameAndArity;
+
+    public MBeanInfoIndex(@Nonnull MBeanInfo mbeanInfo) {
+        this.mbeanInfo = mbeanInfo;
+
+        MBeanAttributeInfo[] attributes = mbeanInfo.getAttributes();
+        attributesByName = new HashMap<String, MBeanAttributeInfo>(attributes.length * 2);
+        List<String> readableNames = new ArrayList<String>(attributes.length);
+        for (MBeanAttributeInfo attribute : attributes) {
+            attributesByName.put(attribute.getName(), attribute);
+            if (attribute.isReadable()) {
+                readableNames.add(attribute.getName());
+            }
+        }
+        readableAttributeNames = readableNames.toArray(new String[readableNames.size()]);
+
+        MBeanOperationInfo[] operations = mbeanInfo.getOperations();
+        operationsByName = new HashMap<String, List<MBeanOperationInfo>>(operations.length * 2);
+        for (MBeanOperationInfo operation : operations) {
+            List<MBeanOperationInfo> overloads = operationsByName.get(operation.getName());
+            if (overloads == null) {
+                overloads = new ArrayList<MBeanOperationInfo>(1);
+                operationsByName.put(operation.getName(), overloads);
+            }
+            overloads.add(operation);
+        }
+
+        operationsByNameAndArity = new HashMap<String, OperationSignature[][]>(operationsByName.size() * 2);
+        for (Map.Entry<String, List<MBeanOperationInfo>> entry : operationsByName.entrySet()) {
+            int maxArity = 0;
+            for (MBeanOperationInfo operation : entry.getValue()) {
+                maxArity = Math.max(maxArity, operation.getSignature().length);
+            }
+            OperationSignature[][] byArity = new OperationSignature[maxArity + 1][];
+            for (MBeanOperationInfo operation : entry.getValue()) {
+                int arity = operation.getSignature().length;
+                OperationSignature[] overloads = byArity[arity];
+                if (overloads == null) {
+                    overloads = new OperationSignature[]{new OperationSignature(operation)};
+                } else {
+                    overloads = Arrays.copyOf(overloads, overloads.length + 1);
+                    overloads[overloads.length - 1] = new OperationSignature(operation);
+                }
+                byArity[arity] = overloads;
+            }
+            operationsByNameAndArity.put(entry.getKey(), byArity);
+        }
+    }
+
+    @Nonnull
+    public MBeanInfo getMBeanInfo() {
+        return mbeanInfo;
+    }
+
+    /**
+     * @return <code>null</code> if no attribute with the given <code>name</code> exists
+     */
+    @Nullable
+    public MBeanAttributeInfo getAttribute(@Nonnull String name) {
+        return attributesByName.get(name);
+    }
+
+    /**
+     * @return the names of the attributes of the MBean
+     */
+    @Nonnull
+    public Set<String> getAttributeNames() {
+        return Collections.unmodifiableSet(attributesByName.keySet());
+    }
+
+    /**
+     * @return the names of the readable attributes of the MBean. The array is shared and must not be modified.
+     */
+    @Nonnull
+    public String[] getReadableAttributeNames() {
+        return readableAttributeNames;
+    }
+
+    /**
+     * @return the operations (overloads) with the given <code>name</code>, empty if none exist
+     */
+    @Nonnull
+    public List<MBeanOperationInfo> getOperations(@Nonnull String name) {
+        List<MBeanOperationInfo> operations = operationsByName.get(name);
+        return operations == null ? Collections.<MBeanOperationInfo>emptyList() : operations;
+    }
+
+    /**
+     * @return the operations (overloads) with the given <code>name</code> and number of parameters, empty if none exist.
+     *         The array is shared and must not be modified.
+     */
+    @Nonnull
+    public OperationSignature[] getOperations(@Nonnull String name, int arity) {
+        OperationSignature[][] byArity = operationsByNameAndArity.get(name);
+        if (byArity == null || arity >= byArity.length || byArity[arity] == null) {
+            return OperationSignature.NONE;
+        }
+        return byArity[arity];
+    }
+
+    /**
+     * Return <code>true</code> if the {@link MBeanInfo} never changes during the life of the MBean and can thus be shared
+     * by all the MBeans of the same class (e.g. Standard MBeans and MXBeans).
+     *
+     * @see <a href="http://docs.oracle.com/javase/6/docs/api/javax/management/Descriptor.html">immutableInfo descriptor field</a>
+     */
+    public boolean isImmutable() {
+        Descriptor descriptor = mbeanInfo.getDescriptor();
+        return descriptor != null && "true".equalsIgnoreCase(String.valueOf(descriptor.getFieldValue("immutableInfo")));
+    }
+
+    /**
+     * {@link MBeanOperationInfo} with its signature (parameter types) computed once and the {@link TypeConverter}s of
+     * its parameters resolved on first use.
+     */
+    public static class OperationSignature {
+        static final OperationSignature[] NONE = new OperationSignature[0];
+
+        private final MBeanOperationInfo operationInfo;
+
+        private final String[] types;
+
+        private volatile ResolvedConverters resolvedConverters;
+
+        public OperationSignature(@Nonnull MBeanOperationInfo operationInfo) {
+            this.operationInfo = operationInfo;
+            MBeanParameterInfo[] parameters = operationInfo.getSignature();
+            this.types = new String[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                types[i] = parameters[i].getType();
+            }
+        }
+
+        @Nonnull
+        public MBeanOperationInfo getOperationInfo() {
+            return operationInfo;
+        }
+
+        @Nonnull
+        public String getName() {
+            return operationInfo.getName();
+        }
+
+        /**
+         * @return the parameter types as expected by {@link javax.management.MBeanServerConnection#invoke(javax.management.ObjectName, String, Object[], String[])}.
+         *         The array is shared and must not be modified.
+         */
+        @Nonnull
+        public String[] getTypes() {
+            return types;
+        }
+
+        /**
+         * @return the converters of the parameters, resolved with the given <code>typeConverters</code> and cached
+         */
+        @Nonnull
+        public TypeConverter[] getConverters(@Nonnull TypeConverters typeConverters) {
+            ResolvedConverters resolved = resolvedConverters;
+            if (resolved == null || resolved.typeConverters != typeConverters) {
+                resolved = new ResolvedConverters(typeConverters, typeConverters.getConverters(types));
+                resolvedConverters = resolved;
+            }
+            return resolved.converters;
+        }
+
+        /**
+         * Score how well the given command line <code>arguments</code> match the parameter types of this operation to
+         * choose between overloads with the same number of parameters.
+         *
+         * @return <code>-1</code> if an argument can not be converted to the type of its parameter (e.g. <code>"abc"</code>
+         *         for an <code>int</code>, <code>"yes"</code> for a <code>boolean</code>, {@value JmxInvoker#NULL_VALUE}
+         *         for a primitive), otherwise the number of arguments converted to a type more specific than
+         *         {@link String}
+         */
+        public int getMatchScore(@Nonnull String[] arguments, @Nonnull TypeConverters typeConverters) {
+            TypeConverter[] converters = getConverters(typeConverters);
+            int score = 0;
+            for (int i = 0; i < arguments.length; i++) {
+                String argument = arguments[i];
+                String type = types[i];
+                if (argument == null || JmxInvoker.NULL_VALUE.equals(argument)) {
+                    if (type.indexOf('.') == -1 && !type.startsWith("[")) {
+                        return -1; // primitive
+                    }
+                    continue;
+                }
+                if (converters[i] == SimpleTypeConverter.STRING) {
+                    continue;
+                }
+                if (converters[i] == SimpleTypeConverter.BOOLEAN) {
+                    // Boolean.valueOf() converts anything
+                    if (!"true".equalsIgnoreCase(argument.trim()) && !"false".equalsIgnoreCase(argument.trim())) {
+                        return -1;
+                    }
+                } else {
+                    try {
+                        converters[i].convert(argument, type);
+                    } catch (IllegalArgumentException e) {
+                        return -1;
+                    }
+                }
+                score++;
+            }
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return operationInfo.getReturnType() + " " + operationInfo.getName() + "(" + Strings2.join(types, ", ") + ")";
+        }
+    }
+
+    private static class ResolvedConverters {
+        final TypeConverters typeConverters;
+        final TypeConverter[] converters;
+
+        ResolvedConverters(TypeConverters typeConverters, TypeConverter[] converters) {
+            this.typeConverters = typeConverters;
+            this.converters = converters;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.util.Json;
+import com.cloudbees.util.Strings2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link NotificationListener} streaming the received {@link Notification}s to a {@link Writer}, one line per
+ * notification, as text or as newline delimited JSON.
+ * <p/>
+ * The JMX notification threads only enqueue the notifications in a bounded lock-free queue: when the queue is full,
+ * notifications are dropped and counted rather than blocking the JMX connector. A single writer thread drains the
+ * queue and writes the notifications in batches, flushing once per batch; drops are reported in the output.
+ * The handback of the listener is written as the pid of the notification.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class NotificationStreamer implements NotificationListener, Closeable {
+
+    /**
+     * Maximum number of notifications written per batch
+     */
+    public static final int BATCH_SIZE = 256;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Logger logger = LoggerFactory.getLogger(NotificationStreamer.class);
+
+    private final Queue<ReceivedNotification> queue = new ConcurrentLinkedQueue<ReceivedNotification>();
+
+    /**
+     * Size of the {@link #queue}, {@link ConcurrentLinkedQueue#size()} being O(n)
+     */
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    private final AtomicLong receivedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    private final int capacity;
+
+    private final Writer out;
+
+    private final boolean json;
+
+    private final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    private final Thread writerThread;
+
+    /**
+     * Maximum number of notifications written, the following ones are ignored
+     */
+    private volatile long maxCount = Long.MAX_VALUE;
+
+    private volatile boolean closed;
+
+    private final Object closeLock = new Object();
+
+    private long reportedDroppedCount;
+
+    /**
+     * @param out      output of the notifications
+     * @param json     <code>true</code> to write one JSON record per line, <code>false</code> for tab separated text
+     * @param capacity maximum number of notifications waiting to be written
+     */
+    public NotificationStreamer(@Nonnull Writer out, boolean json, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be greater than 0: " + capacity);
+        }
+        this.out = out;
+        this.json = json;
+        this.capacity = capacity;
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "jmx-invoker-notification-writer");
+        this.writerThread.setDaemon(true);
+    }
+
+    /**
+     * Stop writing notifications once <code>maxCount</code> of them have been written, even if more are pending.
+     */
+    public void setMaxCount(long maxCount) {
+        if (maxCount < 1) {
+            throw new IllegalArgumentException("Max count must be greater than 0: " + maxCount);
+        }
+        this.maxCount = maxCount;
+    }
+
+    public void start() {
+        writerThread.start();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (closed || writtenCount.get() >= maxCount) {
+            return;
+        }
+        receivedCount.incrementAndGet();
+        if (queueSize.incrementAndGet() > capacity) {
+            queueSize.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return;
+        }
+        queue.offer(new ReceivedNotification(notification, handback == null ? null : handback.toString(), System.currentTimeMillis()));
+    }
+
+    /**
+     * Count notifications lost before reaching this listener, e.g. by the JMX connector
+     * ({@link javax.management.remote.JMXConnectionNotification#NOTIFS_LOST}), as dropped.
+     */
+    public void notificationsLost(long count) {
+        receivedCount.addAndGet(count);
+        droppedCount.addAndGet(count);
+    }
+
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            boolean wasClosed = closed;
+            int written = drain(batch);
+            if (written == 0) {
+                if (wasClosed) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Write a batch of notifications.
+     *
+     * @return the number of notifications written
+     */
+    private int drain(@Nonnull StringBuilder batch) {
+        batch.setLength(0);
+        long dropped = droppedCount.get();
+        if (dropped > reportedDroppedCount) {
+            appendDropped(dropped - reportedDroppedCount, batch);
+            reportedDroppedCount = dropped;
+        }
+        int count = 0;
+        long limit = Math.min(BATCH_SIZE, maxCount - writtenCount.get());
+        ReceivedNotification notification;
+        while (count < limit && (notification = queue.poll()) != null) {
+            queueSize.decrementAndGet();
+            append(notification, batch);
+            count++;
+        }
+        if (batch.length() > 0) {
+            try {
+                out.write(batch.toString());
+                out.flush();
+            } catch (IOException e) {
+                logger.warn("Exception writing {} notifications", count, e);
+            }
+        }
+        if (count > 0) {
+            writtenCount.addAndGet(count);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        return count;
+    }
+
+    private void append(@Nonnull ReceivedNotification received, @Nonnull StringBuilder out) {
+        Notification notification = received.notification;
+        String timestamp = dateFormat.format(new Date(received.timestamp));
+        String source = notification.getSource() == null ? null : notification.getSource().toString();
+        if (json) {
+            try {
+                out.append("{\"timestamp\":");
+                Json.writeString(timestamp, out);
+                out.append(",\"pid\":");
+                Json.write(received.pid, out);
+                out.append(",\"source\":");
+                Json.write(source, out);
+                out.append(",\"type\":");
+                Json.write(notification.getType(), out);
+                out.append(",\"sequenceNumber\":").append(notification.getSequenceNumber());
+                out.append(",\"message\":");
+                Json.write(notification.getMessage(), out);
+                out.append(",\"userData\":");
+                Json.write(notification.getUserData(), out);
+                out.append("}\n");
+            } catch (IOException e) {
+                // can not happen on a StringBuilder
+                throw new IllegalStateException(e);
+            }
+        } else {
+            out.append(timestamp).append('\t');
+            out.append(received.pid).append('\t');
+            out.append(source).append('\t');
+            out.append(notification.getType()).append('\t');
+            out.append(notification.getSequenceNumber()).append('\t');
+            out.append(notification.getMessage());
+            if (notification.getUserData() != null) {
+                Strings2.appendTo(notification.getUserData(), out.append('\t'));
+            }
+            out.append('\n');
+        }
+    }
+
+    private void appendDropped(long dropped, @Nonnull StringBuilder out) {
+        String timestamp = dateFormat.format(new Date());
+        if (json) {
+            out.append("{\"timestamp\":\"").append(timestamp).append("\",\"dropped\":").append(dropped).append("}\n");
+        } else {
+            out.append(timestamp).append("\t## DROPPED ## ").append(dropped).append(" notifications, queue of ").append(capacity).append(" full or lost by the connector\n");
+        }
+    }
+
+    /**
+     * Wait until at least <code>count</code> notifications have been written or the streamer is {@linkplain #close() closed}.
+     *
+     * @return <code>false</code> if the timeout elapsed or the streamer was closed before
+     */
+    public boolean awaitWritten(long count, long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        long timeoutInNanos = unit.toNanos(timeout);
+        long startInNanos = System.nanoTime();
+        synchronized (this) {
+            while (writtenCount.get() < count && !closed) {
+                long remainingInMillis = TimeUnit.NANOSECONDS.toMillis(timeoutInNanos - (System.nanoTime() - startInNanos));
+                if (remainingInMillis <= 0) {
+                    return false;
+                }
+                wait(remainingInMillis);
+            }
+        }
+        return writtenCount.get() >= count;
+    }
+
+    /**
+     * Write the pending notifications and stop the writer thread. Notifications received afterwards are ignored.
+     * Can be called by any thread, e.g. when the connection to the JVM is lost.
+     */
+    @Override
+    public void close() {
+        // not synchronized on this to not block the notifyAll() of the writer thread
+        synchronized (closeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (writerThread.isAlive()) {
+                LockSupport.unpark(writerThread);
+                try {
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                StringBuilder batch = new StringBuilder();
+                while (drain(batch) > 0) {
+                    // drain
+                }
+            }
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+        logger.debug("Notifications received: {}, written: {}, dropped: {}", receivedCount, writtenCount, droppedCount);
+    }
+
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    private static class ReceivedNotification {
+        final Notification notification;
+        @Nullable
+        final String pid;
+        final long timestamp;
+
+        ReceivedNotification(@Nonnull Notification notification, @Nullable String pid, long timestamp) {
+            this.notification = notification;
+            this.pid = pid;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.util.Strings2;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Walk the leaves of the open data values returned by MXBeans ({@link CompositeData}, {@link TabularData} and arrays)
+ * as key paths, e.g. <code>LastGcInfo.memoryUsageAfterGc.PS Eden Space.used</code>, without rendering intermediate
+ * strings: the path is built in a single reused buffer and each leaf is pushed to a {@link LeafVisitor}.
+ * <p/>
+ * Path segments are the item names of {@link CompositeData}, the keys of the {@link TabularData} (the <code>key</code>
+ * item of the key/value tables of the MXBean maps, the comma separated index values otherwise) and the indexes of the
+ * arrays. A {@linkplain #parseSelectors(String) selector} restricts the walk to the matching paths: only the selected
+ * items are fetched from the open data, a selector ending on an intermediate node selects all the leaves below it and
+ * <code>{@value #WILDCARD}</code> matches any segment.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class OpenDataPaths {
+
+    public static final char SEPARATOR = '.';
+
+    public static final String WILDCARD = "*";
+
+    public interface LeafVisitor {
+        /**
+         * @param path path of the leaf, only valid during the call
+         */
+        void visit(@Nonnull CharSequence path, @Nullable Object value) throws IOException;
+    }
+
+    private OpenDataPaths() {
+
+    }
+
+    /**
+     * @return <code>true</code> if the given value is a tree of open data with leaves to walk
+     */
+    public static boolean isOpenData(@Nullable Object value) {
+        return value instanceof CompositeData || value instanceof TabularData ||
+                value instanceof CompositeData[] || value instanceof TabularData[];
+    }
+
+    /**
+     * Parse comma separated paths, e.g. <code>HeapMemoryUsage.used,LastGcInfo.memoryUsageAfterGc.*.used</code>.
+     */
+    @Nonnull
+    public static List<String[]> parseSelectors(@Nonnull String selectors) {
+        List<String[]> result = new ArrayList<String[]>();
+        for (String selector : selectors.split(",")) {
+            selector = selector.trim();
+            if (selector.isEmpty()) {
+                continue;
+            }
+            String[] segments = selector.split("\\.");
+            for (String segment : segments) {
+                if (segment.isEmpty()) {
+                    throw new IllegalArgumentException("Empty segment in path '" + selector + "'");
+                }
+            }
+            result.add(segments);
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("No path in '" + selectors + "'");
+        }
+        return result;
+    }
+
+    /**
+     * Walk the leaves of the given value named <code>rootName</code>.
+     *
+     * @param selectors only walk the paths (including the <code>rootName</code> segment) matching one of these
+     *                  selectors, all the paths if <code>null</code>
+     */
+    public static void walk(@Nonnull String rootName, @Nullable Object value, @Nullable List<String[]> selectors, @Nonnull LeafVisitor visitor) throws IOException {
+        StringBuilder path = new StringBuilder();
+        child(rootName, value, path, 0, selectors, visitor);
+    }
+
+    /**
+     * Append one <code>path: value</code> line per leaf of the given value, each line being preceded by
+     * <code>linePrefix</code>.
+     */
+    public static void appendTo(@Nonnull String rootName, @Nullable Object value, @Nullable List<String[]> selectors,
+                                @Nonnull final String linePrefix, @Nonnull final StringBuilder out) {
+        try {
+            walk(rootName, value, selectors, new LeafVisitor() {
+                @Override
+                public void visit(@Nonnull CharSequence path, @Nullable Object value) {
+                    Strings2.appendTo(value, out.append(linePrefix).append(path).append(": "));
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected exception appending to a StringBuilder", e);
+        }
+    }
+
+    /**
+     * @return the leaves of the given value indexed by path, in walk order
+     */
+    @Nonnull
+    public static Map<String, Object> toMap(@Nonnull String rootName, @Nullable Object value, @Nullable List<String[]> selectors) {
+        final Map<String, Object> leaves = new LinkedHashMap<String, Object>();
+        try {
+            walk(rootName, value, selectors, new LeafVisitor() {
+                @Override
+                public void visit(@Nonnull CharSequence path, @Nullable Object value) {
+                    leaves.put(path.toString(), value);
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return leaves;
+    }
+
+    /**
+     * Visit the child <code>segment</code> of the node at the given <code>depth</code> if it matches the selectors.
+     *
+     * @param selectors selectors matching the parent node, <code>null</code> if the parent is entirely selected
+     */
+    private static void child(@Nonnull String segment, @Nullable Object value, @Nonnull StringBuilder path, int depth,
+                              @Nullable List<String[]> selectors, @Nonnull LeafVisitor visitor) throws IOException {
+        List<String[]> childSelectors = null;
+        if (selectors != null) {
+            childSelectors = new ArrayList<String[]>(selectors.size());
+            for (String[] selector : selectors) {
+                if (selector.length > depth && (WILDCARD.equals(selector[depth]) || selector[depth].equals(segment))) {
+                    if (selector.length == depth + 1) {
+                        // the whole subtree is selected
+                        childSelectors = null;
+                        break;
+                    }
+                    childSelectors.add(selector);
+                }
+            }
+            if (childSelectors != null && childSelectors.isEmpty()) {
+                return;
+            }
+        }
+        int pathLength = path.length();
+        if (depth > 0) {
+            path.append(SEPARATOR);
+        }
+        path.append(segment);
+        try {
+            node(value, path, depth + 1, childSelectors, visitor);
+        } finally {
+            path.setLength(pathLength);
+        }
+    }
+
+    private static void node(@Nullable Object value, @Nonnull StringBuilder path, int depth, @Nullable List<String[]> selectors,
+                             @Nonnull LeafVisitor visitor) throws IOException {
+        if (value instanceof CompositeData) {
+            CompositeData compositeData = (CompositeData) value;
+            Set<String> keys = literalSegments(selectors, depth);
+            if (keys == null) {
+                keys = compositeData.getCompositeType().keySet();
+            }
+            for (String key : keys) {
+                if (compositeData.containsKey(key)) {
+                    child(key, compositeData.get(key), path, depth, selectors, visitor);
+                }
+            }
+        } else if (value instanceof TabularData) {
+            TabularData tabularData = (TabularData) value;
+            boolean keyValueTable = isKeyValueTable(tabularData);
+            boolean stringKeys = keyValueTable && SimpleType.STRING.equals(tabularData.getTabularType().getRowType().getType("key"));
+            Set<String> keys = stringKeys ? literalSegments(selectors, depth) : null;
+            if (keys != null) {
+                // lookup only the selected rows
+                for (String key : keys) {
+                    CompositeData row = tabularData.get(new Object[]{key});
+                    if (row != null) {
+                        child(key, row.get("value"), path, depth, selectors, visitor);
+                    }
+                }
+            } else {
+                List<String> indexNames = tabularData.getTabularType().getIndexNames();
+                for (Object row : tabularData.values()) {
+                    CompositeData compositeRow = (CompositeData) row;
+                    if (keyValueTable) {
+                        child(String.valueOf(compositeRow.get("key")), compositeRow.get("value"), path, depth, selectors, visitor);
+                    } else {
+                        StringBuilder index = new StringBuilder();
+                        for (String indexName : indexNames) {
+                            if (index.length() > 0) {
+                                index.append(',');
+                            }
+                            Strings2.appendTo(compositeRow.get(indexName), index);
+                        }
+                        child(index.toString(), compositeRow, path, depth, selectors, visitor);
+                    }
+                }
+            }
+        } else if (value instanceof Object[] && isOpenDataArray((Object[]) value)) {
+            Object[] array = (Object[]) value;
+            for (int i = 0; i < array.length; i++) {
+                child(Integer.toString(i), array[i], path, depth, selectors, visitor);
+            }
+        } else {
+            visitor.visit(path, value);
+        }
+    }
+
+    /**
+     * MXBean {@link Map}s are mapped to tables with <code>key</code> and <code>value</code> items indexed by <code>key</code>.
+     */
+    private static boolean isKeyValueTable(@Nonnull TabularData tabularData) {
+        List<String> indexNames = tabularData.getTabularType().getIndexNames();
+        Set<String> items = tabularData.getTabularType().getRowType().keySet();
+        return indexNames.size() == 1 && "key".equals(indexNames.get(0)) && items.size() == 2 && items.contains("value");
+    }
+
+    private static boolean isOpenDataArray(@Nonnull Object[] array) {
+        return array instanceof CompositeData[] || array instanceof TabularData[];
+    }
+
+    /**
+     * @return the segments of the given depth if all the selectors are literal at this depth, <code>null</code> if the
+     * node must be iterated
+     */
+    @Nullable
+    private static Set<String> literalSegments(@Nullable List<String[]> selectors, int depth) {
+        if (selectors == null) {
+            return null;
+        }
+        Set<String> segments = new LinkedHashSet<String>();
+        for (String[] selector : selectors) {
+            if (WILDCARD.equals(selector[depth])) {
+                return null;
+            }
+            segments.add(selector[depth]);
+        }
+        return segments;
+    }
+}
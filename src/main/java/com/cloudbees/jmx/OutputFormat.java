@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import javax.annotation.Nonnull;
+import java.io.PrintWriter;
+
+/**
+ * Output formats of the invocation results.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public enum OutputFormat {
+    /**
+     * Human readable description of the results.
+     */
+    TEXT {
+        @Nonnull
+        @Override
+        public ResultListener newResultWriter(@Nonnull PrintWriter out) {
+            return new TextResultWriter(out);
+        }
+    },
+    /**
+     * JSON array of result records.
+     */
+    JSON {
+        @Nonnull
+        @Override
+        public ResultListener newResultWriter(@Nonnull PrintWriter out) {
+            return new JsonResultWriter(out, false);
+        }
+    },
+    /**
+     * Newline delimited JSON, one result record per line.
+     */
+    NDJSON {
+        @Nonnull
+        @Override
+        public ResultListener newResultWriter(@Nonnull PrintWriter out) {
+            return new JsonResultWriter(out, true);
+        }
+    },
+    /**
+     * CSV with a header line, one line per result or per attribute when several attributes are read.
+     */
+    CSV {
+        @Nonnull
+        @Override
+        public ResultListener newResultWriter(@Nonnull PrintWriter out) {
+            return new CsvResultWriter(out);
+        }
+    };
+
+    @Nonnull
+    public abstract ResultListener newResultWriter(@Nonnull PrintWriter out);
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link ConnectionProvider} to JVMs identified by their JMX service URL (e.g.
+ * <code>service:jmx:rmi:///jndi/rmi://host:9999/jmxrmi</code>) or by their pid, keeping a bounded pool of
+ * {@link JMXConnector}s per target.
+ * <ul>
+ * <li>The pids of local JVMs are resolved to the address of their local connector with the
+ * {@link #setConnectorAddressResolver(ConnectorAddressResolver) connectorAddressResolver} when a connection is
+ * established, once per pool as long as the connections succeed</li>
+ * <li>At most {@link #setMaxConnections(int) maxConnections} connections per target are in use at a time, callers wait at
+ * most {@link #setBorrowTimeoutInMillis(long) borrowTimeoutInMillis} for a connection to be released</li>
+ * <li>Idle connections are checked with a cheap remote call when they have not been used for
+ * {@link #setValidationIntervalInMillis(long) validationIntervalInMillis} and closed after
+ * {@link #setMaxIdleTimeInMillis(long) maxIdleTimeInMillis}. Connections reported as failed or closed by the
+ * {@link JMXConnector} are discarded on release</li>
+ * <li>Connections are established within {@link #setConnectTimeoutInMillis(long) connectTimeoutInMillis}; after a
+ * failure, new attempts to the same target fail fast during an exponential backoff from
+ * {@link #setInitialBackoffInMillis(long) initialBackoffInMillis} to {@link #setMaxBackoffInMillis(long) maxBackoffInMillis}</li>
+ * </ul>
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class PooledConnectionProvider implements ConnectionProvider {
+
+    private final Logger logger = LoggerFactory.getLogger(PooledConnectionProvider.class);
+
+    private final ConcurrentMap<String, Pool> pools = new ConcurrentHashMap<String, Pool>();
+
+    /**
+     * Connections in use
+     */
+    private final Map<MBeanServerConnection, PooledConnection> borrowedConnections = Collections.synchronizedMap(new IdentityHashMap<MBeanServerConnection, PooledConnection>());
+
+    private final ExecutorService connectExecutor = Executors.newCachedThreadPool(new JmxInvoker.DaemonThreadFactory("jmx-invoker-connect-"));
+
+    @Nullable
+    private Map<String, ?> environment;
+
+    private int maxConnections = 4;
+
+    private long borrowTimeoutInMillis = 30000;
+
+    private long connectTimeoutInMillis = 10000;
+
+    private long validationIntervalInMillis = 5000;
+
+    private long maxIdleTimeInMillis = 5 * 60 * 1000;
+
+    private long initialBackoffInMillis = 100;
+
+    private long maxBackoffInMillis = 30000;
+
+    private ConnectorAddressResolver connectorAddressResolver = new ConnectorAddressResolver(null);
+
+    private volatile boolean closed;
+
+    @Nonnull
+    @Override
+    public MBeanServerConnection getConnection(@Nonnull String target) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Connection provider is closed");
+        }
+        Pool pool = pools.get(target);
+        if (pool == null) {
+            Pool newPool = new Pool(target, JmxInvoker.isServiceUrl(target) ? new JMXServiceURL(target) : null);
+            pool = pools.putIfAbsent(target, newPool);
+            if (pool == null) {
+                pool = newPool;
+            }
+        }
+        PooledConnection connection = pool.borrow();
+        borrowedConnections.put(connection.mbeanServer, connection);
+        return connection.mbeanServer;
+    }
+
+    @Override
+    public void releaseConnection(@Nonnull MBeanServerConnection mbeanServer) {
+        PooledConnection connection = borrowedConnections.remove(mbeanServer);
+        if (connection == null) {
+            logger.debug("Release of unknown connection {}, ignore it", mbeanServer);
+            return;
+        }
+        connection.pool.release(connection);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Pool pool : pools.values()) {
+            pool.close();
+        }
+        connectExecutor.shutdownNow();
+    }
+
+    /**
+     * Pool of the connections to a JMX service URL or a pid
+     */
+    private class Pool {
+        final String target;
+        /**
+         * Service URL of the target, <code>null</code> for a pid until its local connector address is resolved
+         */
+        @Nullable
+        volatile JMXServiceURL serviceUrl;
+        final Semaphore permits = new Semaphore(maxConnections, true);
+        /**
+         * Idle connections, most recently used first so that the others age and get closed
+         */
+        final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<PooledConnection>();
+        int consecutiveFailures;
+        long nextAttemptTimeInMillis;
+
+        Pool(@Nonnull String target, @Nullable JMXServiceURL serviceUrl) {
+            this.target = target;
+            this.serviceUrl = serviceUrl;
+        }
+
+        @Nonnull
+        PooledConnection borrow() throws IOException {
+            try {
+                if (!permits.tryAcquire(borrowTimeoutInMillis, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Timeout waiting " + borrowTimeoutInMillis + "ms for one of the " + maxConnections + " connections to " + target);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for a connection to " + target);
+            }
+            boolean borrowed = false;
+            try {
+                PooledConnection connection;
+                while ((connection = idleConnections.pollFirst()) != null) {
+                    if (isValid(connection)) {
+                        borrowed = true;
+                        return connection;
+                    }
+                    connection.close();
+                }
+                connection = connect();
+                borrowed = true;
+                return connection;
+            } finally {
+                if (!borrowed) {
+                    permits.release();
+                }
+            }
+        }
+
+        void release(@Nonnull PooledConnection connection) {
+            try {
+                if (connection.broken || closed) {
+                    connection.close();
+                } else {
+                    connection.lastUsedInMillis = System.currentTimeMillis();
+                    idleConnections.offerFirst(connection);
+                }
+                evictIdleConnections();
+            } finally {
+                permits.release();
+            }
+        }
+
+        private boolean isValid(@Nonnull PooledConnection connection) {
+            long idleTimeInMillis = System.currentTimeMillis() - connection.lastUsedInMillis;
+            if (connection.broken || idleTimeInMillis > maxIdleTimeInMillis) {
+                return false;
+            } else if (idleTimeInMillis < validationIntervalInMillis) {
+                return true;
+            }
+            try {
+                connection.mbeanServer.getMBeanCount();
+                return true;
+            } catch (Exception e) {
+                logger.debug("Discard broken connection to {}", target, e);
+                return false;
+            }
+        }
+
+        private void evictIdleConnections() {
+            long now = System.currentTimeMillis();
+            PooledConnection connection;
+            while ((connection = idleConnections.peekLast()) != null && now - connection.lastUsedInMillis > maxIdleTimeInMillis) {
+                if (idleConnections.removeLastOccurrence(connection)) {
+                    logger.debug("Close idle connection to {}", target);
+                    connection.close();
+                }
+            }
+        }
+
+        @Nonnull
+        private PooledConnection connect() throws IOException {
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (now < nextAttemptTimeInMillis) {
+                    throw new IOException("Connection to " + target + " failed " + consecutiveFailures + " times, next attempt in " +
+                            (nextAttemptTimeInMillis - now) + "ms");
+                }
+            }
+            logger.debug("Connect to {}", target);
+            // set by the connect task when it hands over the connector or by the caller when it gives up, whoever is first
+            final AtomicBoolean claimed = new AtomicBoolean();
+            final Future<JMXConnector> future = connectExecutor.submit(new Callable<JMXConnector>() {
+                @Override
+                public JMXConnector call() throws Exception {
+                    JMXConnector jmxConnector = JMXConnectorFactory.connect(getServiceUrl(), environment);
+                    if (!claimed.compareAndSet(false, true)) {
+                        logger.debug("Close connection to {} established after the caller gave up", target);
+                        closeQuietly(jmxConnector);
+                    }
+                    return jmxConnector;
+                }
+            });
+            try {
+                JMXConnector jmxConnector = future.get(connectTimeoutInMillis, TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    consecutiveFailures = 0;
+                    nextAttemptTimeInMillis = 0;
+                }
+                return new PooledConnection(this, jmxConnector);
+            } catch (InterruptedException e) {
+                abandon(future, claimed);
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted connecting to " + target);
+            } catch (Exception e) {
+                abandon(future, claimed);
+                if (!JmxInvoker.isServiceUrl(target)) {
+                    // the JVM may have been restarted with another connector address
+                    serviceUrl = null;
+                    connectorAddressResolver.invalidate(target);
+                }
+                long backoffInMillis;
+                synchronized (this) {
+                    consecutiveFailures++;
+                    backoffInMillis = Math.min(maxBackoffInMillis, initialBackoffInMillis << Math.min(consecutiveFailures - 1, 30));
+                    nextAttemptTimeInMillis = System.currentTimeMillis() + backoffInMillis;
+                }
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                String message = e instanceof TimeoutException ? "Timeout connecting to " + target + " after " + connectTimeoutInMillis + "ms" :
+                        "Exception connecting to " + target + ": " + cause;
+                logger.debug("{}, retry in {}ms", message, backoffInMillis);
+                IOException ioException = new IOException(message);
+                ioException.initCause(cause);
+                throw ioException;
+            }
+        }
+
+        @Nonnull
+        private JMXServiceURL getServiceUrl() throws IOException {
+            JMXServiceURL serviceUrl = this.serviceUrl;
+            if (serviceUrl == null) {
+                serviceUrl = new JMXServiceURL(connectorAddressResolver.resolve(target));
+                this.serviceUrl = serviceUrl;
+            }
+            return serviceUrl;
+        }
+
+        /**
+         * Give up the given connection attempt. Interrupting the task doesn't stop {@link JMXConnectorFactory#connect(JMXServiceURL, Map)},
+         * a connector established after this call is closed by the task; a connector handed over just before is
+         * closed asynchronously.
+         */
+        private void abandon(@Nonnull final Future<JMXConnector> future, @Nonnull AtomicBoolean claimed) {
+            if (claimed.compareAndSet(false, true)) {
+                future.cancel(true);
+            } else {
+                try {
+                    connectExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                closeQuietly(future.get());
+                            } catch (Exception e) {
+                                logger.debug("Exception closing abandoned connection to {}", target, e);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    logger.debug("Provider closed, can not close abandoned connection to {}", target, e);
+                }
+            }
+        }
+
+        private void closeQuietly(@Nonnull JMXConnector jmxConnector) {
+            try {
+                jmxConnector.close();
+            } catch (IOException e) {
+                logger.debug("Exception closing connection to {}", target, e);
+            }
+        }
+
+        void close() {
+            PooledConnection connection;
+            while ((connection = idleConnections.pollFirst()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private class PooledConnection implements NotificationListener {
+        final Pool pool;
+        final JMXConnector jmxConnector;
+        final MBeanServerConnection mbeanServer;
+        volatile long lastUsedInMillis = System.currentTimeMillis();
+        volatile boolean broken;
+
+        PooledConnection(@Nonnull Pool pool, @Nonnull JMXConnector jmxConnector) throws IOException {
+            this.pool = pool;
+            this.jmxConnector = jmxConnector;
+            this.mbeanServer = jmxConnector.getMBeanServerConnection();
+            jmxConnector.addConnectionNotificationListener(this, null, null);
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            String type = notification.getType();
+            if (JMXConnectionNotification.FAILED.equals(type) || JMXConnectionNotification.CLOSED.equals(type)) {
+                logger.debug("Connection to {} {}", pool.target, type);
+                broken = true;
+            }
+        }
+
+        void close() {
+            broken = true;
+            try {
+                jmxConnector.close();
+            } catch (Exception e) {
+                logger.debug("Exception closing connection to {}", pool.target, e);
+            }
+        }
+    }
+
+    @Nonnull
+    public ConnectorAddressResolver getConnectorAddressResolver() {
+        return connectorAddressResolver;
+    }
+
+    /**
+     * @param connectorAddressResolver resolver of the local connector address of the pid targets, without cache by default
+     */
+    public void setConnectorAddressResolver(@Nonnull ConnectorAddressResolver connectorAddressResolver) {
+        this.connectorAddressResolver = connectorAddressResolver;
+    }
+
+    @Nullable
+    public Map<String, ?> getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * @param environment environment of the {@link JMXConnector}s, e.g. {@link JMXConnector#CREDENTIALS}
+     */
+    public void setEnvironment(@Nullable Map<String, ?> environment) {
+        this.environment = environment;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections maximum number of connections per target, default 4. Only applies to the targets not yet connected.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public long getBorrowTimeoutInMillis() {
+        return borrowTimeoutInMillis;
+    }
+
+    public void setBorrowTimeoutInMillis(long borrowTimeoutInMillis) {
+        this.borrowTimeoutInMillis = borrowTimeoutInMillis;
+    }
+
+    public long getConnectTimeoutInMillis() {
+        return connectTimeoutInMillis;
+    }
+
+    public void setConnectTimeoutInMillis(long connectTimeoutInMillis) {
+        this.connectTimeoutInMillis = connectTimeoutInMillis;
+    }
+
+    public long getValidationIntervalInMillis() {
+        return validationIntervalInMillis;
+    }
+
+    public void setValidationIntervalInMillis(long validationIntervalInMillis) {
+        this.validationIntervalInMillis = validationIntervalInMillis;
+    }
+
+    public long getMaxIdleTimeInMillis() {
+        return maxIdleTimeInMillis;
+    }
+
+    public void setMaxIdleTimeInMillis(long maxIdleTimeInMillis) {
+        this.maxIdleTimeInMillis = maxIdleTimeInMillis;
+    }
+
+    public long getInitialBackoffInMillis() {
+        return initialBackoffInMillis;
+    }
+
+    public void setInitialBackoffInMillis(long initialBackoffInMillis) {
+        this.initialBackoffInMillis = initialBackoffInMillis;
+    }
+
+    public long getMaxBackoffInMillis() {
+        return maxBackoffInMillis;
+    }
+
+    public void setMaxBackoffInMillis(long maxBackoffInMillis) {
+        this.maxBackoffInMillis = maxBackoffInMillis;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import javax.annotation.Nonnull;
+import javax.management.AttributeValueExp;
+import javax.management.Query;
+import javax.management.QueryExp;
+import javax.management.StringValueExp;
+import javax.management.ValueExp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compile <code>--where</code> expressions to {@link QueryExp}s evaluated by the target MBeanServer so that only the
+ * matching MBeans are returned over the wire.
+ * <p/>
+ * Grammar:
+ * <pre>
+ * expression := term ( 'or' term )*
+ * term       := factor ( 'and' factor )*
+ * factor     := 'not' factor | '(' expression ')' | comparison
+ * comparison := value ( '=' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=' ) value
+ *             | attribute 'like' string
+ *             | 'instanceof' string
+ * value      := attribute | number | string | 'true' | 'false'
+ * </pre>
+ * Attributes are identifiers (e.g. <code>numActive</code>), strings are single or double quoted and <code>like</code>
+ * patterns accept the <code>*</code> and <code>?</code> wildcards of {@link Query#match(AttributeValueExp, StringValueExp)}.
+ * Keywords are case insensitive. Example: <code>numActive &gt; 50 and (url like 'jdbc:mysql:*' or maxActive &gt;= 100)</code>.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class QueryExpressions {
+
+    private final String expression;
+
+    private final List<String> tokens;
+
+    private int position;
+
+    private QueryExpressions(@Nonnull String expression) {
+        this.expression = expression;
+        this.tokens = tokenize(expression);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the given <code>expression</code> is invalid
+     */
+    @Nonnull
+    public static QueryExp parse(@Nonnull String expression) {
+        QueryExpressions parser = new QueryExpressions(expression);
+        if (parser.tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty expression");
+        }
+        QueryExp query = parser.parseExpression();
+        if (parser.position < parser.tokens.size()) {
+            throw parser.newException("Unexpected '" + parser.tokens.get(parser.position) + "'");
+        }
+        return query;
+    }
+
+    private QueryExp parseExpression() {
+        QueryExp query = parseTerm();
+        while (acceptKeyword("or")) {
+            query = Query.or(query, parseTerm());
+        }
+        return query;
+    }
+
+    private QueryExp parseTerm() {
+        QueryExp query = parseFactor();
+        while (acceptKeyword("and")) {
+            query = Query.and(query, parseFactor());
+        }
+        return query;
+    }
+
+    private QueryExp parseFactor() {
+        if (acceptKeyword("not")) {
+            return Query.not(parseFactor());
+        } else if (accept("(")) {
+            QueryExp query = parseExpression();
+            expect(")");
+            return query;
+        } else if (acceptKeyword("instanceof")) {
+            return Query.isInstanceOf(parseString());
+        }
+
+        String left = next("value");
+        if (acceptKeyword("like")) {
+            if (!isIdentifier(left)) {
+                throw newException("Attribute name expected before 'like', found '" + left + "'");
+            }
+            return Query.match(Query.attr(left), parseString());
+        }
+        String operator = next("comparison operator");
+        ValueExp leftValue = toValue(left);
+        ValueExp rightValue = toValue(next("value"));
+        if ("=".equals(operator) || "==".equals(operator)) {
+            return Query.eq(leftValue, rightValue);
+        } else if ("!=".equals(operator) || "<>".equals(operator)) {
+            return Query.not(Query.eq(leftValue, rightValue));
+        } else if ("<".equals(operator)) {
+            return Query.lt(leftValue, rightValue);
+        } else if ("<=".equals(operator)) {
+            return Query.leq(leftValue, rightValue);
+        } else if (">".equals(operator)) {
+            return Query.gt(leftValue, rightValue);
+        } else if (">=".equals(operator)) {
+            return Query.geq(leftValue, rightValue);
+        } else {
+            throw newException("Comparison operator expected, found '" + operator + "'");
+        }
+    }
+
+    private StringValueExp parseString() {
+        String token = next("string");
+        if (!isString(token)) {
+            throw newException("Quoted string expected, found '" + token + "'");
+        }
+        return Query.value(token.substring(1));
+    }
+
+    private ValueExp toValue(@Nonnull String token) {
+        char c = token.charAt(0);
+        if (isString(token)) {
+            return Query.value(token.substring(1));
+        } else if ("true".equalsIgnoreCase(token) || "false".equalsIgnoreCase(token)) {
+            return Query.value(Boolean.parseBoolean(token));
+        } else if (Character.isDigit(c) || c == '-' || c == '.') {
+            try {
+                if (token.indexOf('.') == -1 && token.indexOf('e') == -1 && token.indexOf('E') == -1) {
+                    return Query.value(Long.parseLong(token));
+                } else {
+                    return Query.value(Double.parseDouble(token));
+                }
+            } catch (NumberFormatException e) {
+                throw newException("Invalid number '" + token + "'");
+            }
+        } else if (isIdentifier(token)) {
+            return Query.attr(token);
+        } else {
+            throw newException("Value expected, found '" + token + "'");
+        }
+    }
+
+    private boolean isIdentifier(@Nonnull String token) {
+        return Character.isJavaIdentifierStart(token.charAt(0));
+    }
+
+    /**
+     * Strings are kept as tokens prefixed by their opening quote to distinguish them from identifiers
+     */
+    private boolean isString(@Nonnull String token) {
+        return token.charAt(0) == '\'' || token.charAt(0) == '"';
+    }
+
+    private boolean accept(@Nonnull String token) {
+        if (position < tokens.size() && tokens.get(position).equals(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptKeyword(@Nonnull String keyword) {
+        if (position < tokens.size() && tokens.get(position).equalsIgnoreCase(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(@Nonnull String token) {
+        if (!accept(token)) {
+            throw newException("'" + token + "' expected" + (position < tokens.size() ? ", found '" + tokens.get(position) + "'" : ""));
+        }
+    }
+
+    @Nonnull
+    private String next(@Nonnull String expected) {
+        if (position >= tokens.size()) {
+            throw newException(expected + " expected at end of expression");
+        }
+        return tokens.get(position++);
+    }
+
+    @Nonnull
+    private IllegalArgumentException newException(@Nonnull String message) {
+        return new IllegalArgumentException(message + " in --where expression '" + expression + "'");
+    }
+
+    @Nonnull
+    private static List<String> tokenize(@Nonnull String expression) {
+        List<String> tokens = new ArrayList<String>();
+        int length = expression.length();
+        int i = 0;
+        while (i < length) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '=' || c == '!' || c == '<' || c == '>') {
+                int start = i++;
+                if (i < length && (expression.charAt(i) == '=' || (c == '<' && expression.charAt(i) == '>'))) {
+                    i++;
+                }
+                tokens.add(expression.substring(start, i));
+            } else if (c == '\'' || c == '"') {
+                StringBuilder token = new StringBuilder().append(c);
+                i++;
+                while (i < length && expression.charAt(i) != c) {
+                    if (expression.charAt(i) == '\\' && i + 1 < length) {
+                        i++;
+                    }
+                    token.append(expression.charAt(i++));
+                }
+                if (i == length) {
+                    throw new IllegalArgumentException("Unterminated string in --where expression '" + expression + "'");
+                }
+                i++;
+                tokens.add(token.toString());
+            } else {
+                int start = i;
+                while (i < length && isWordPart(expression.charAt(i))) {
+                    i++;
+                }
+                if (start == i) {
+                    throw new IllegalArgumentException("Unexpected character '" + c + "' in --where expression '" + expression + "'");
+                }
+                tokens.add(expression.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isWordPart(char c) {
+        return Character.isJavaIdentifierPart(c) || c == '.' || c == '-' || c == '+';
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import javax.annotation.Nonnull;
+import javax.management.ObjectName;
+import java.util.*;
+
+/**
+ * {@link ResultListener} keeping all the results in memory, indexed by pid and sorted by {@link ObjectName}.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class ResultCollector implements ResultListener {
+
+    private final Map<String, Map<ObjectName, JmxInvoker.Result>> resultsByPid = new LinkedHashMap<String, Map<ObjectName, JmxInvoker.Result>>();
+
+    @Override
+    public synchronized void onStart(@Nonnull List<String> pids) {
+        for (String pid : pids) {
+            getResults(pid);
+        }
+    }
+
+    @Override
+    public synchronized void onResult(@Nonnull JmxInvoker.Result result) {
+        getResults(result.pid).put(result.objectName, result);
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    /**
+     * @return the results indexed by pid (in the order of the pids given to {@link #onStart(List)}) and then by ObjectName
+     */
+    @Nonnull
+    public synchronized Map<String, Map<ObjectName, JmxInvoker.Result>> getResultsByPid() {
+        return resultsByPid;
+    }
+
+    @Nonnull
+    public synchronized Map<ObjectName, JmxInvoker.Result> getResults(@Nonnull String pid) {
+        Map<ObjectName, JmxInvoker.Result> results = resultsByPid.get(pid);
+        if (results == null) {
+            results = new TreeMap<ObjectName, JmxInvoker.Result>();
+            resultsByPid.put(pid, results);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Receive the {@link JmxInvoker.Result}s of an invocation as soon as they are available.
+ * <p/>
+ * Implementations must be thread safe: when several JVMs are invoked, results are pushed concurrently.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public interface ResultListener {
+
+    /**
+     * Called once before any result with the pids of all the invoked JVMs.
+     */
+    void onStart(@Nonnull List<String> pids);
+
+    void onResult(@Nonnull JmxInvoker.Result result);
+
+    /**
+     * Called once after all the results.
+     */
+    void onComplete();
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import javax.annotation.Nonnull;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ResultListener} buffering all the results and pushing them to its delegate sorted by pid and by
+ * {@link ObjectName} once the invocation is completed.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class SortedResultListener extends ResultCollector {
+
+    private final ResultListener delegate;
+
+    public SortedResultListener(@Nonnull ResultListener delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onComplete() {
+        Map<String, Map<ObjectName, JmxInvoker.Result>> resultsByPid = getResultsByPid();
+        delegate.onStart(new ArrayList<String>(resultsByPid.keySet()));
+        for (Map<ObjectName, JmxInvoker.Result> results : resultsByPid.values()) {
+            for (JmxInvoker.Result result : results.values()) {
+                delegate.onResult(result);
+            }
+        }
+        delegate.onComplete();
+    }
+}
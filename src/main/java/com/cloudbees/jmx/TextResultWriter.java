@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import javax.annotation.Nonnull;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * {@link ResultListener} writing the human readable {@link JmxInvoker.Result#description} of each result. When several
+ * JVMs are invoked, a <code># JVM pid</code> line is written each time the pid changes.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class TextResultWriter implements ResultListener {
+
+    private final PrintWriter out;
+
+    private boolean severalJvms;
+
+    private String lastPid;
+
+    public TextResultWriter(@Nonnull OutputStream out) {
+        this(new PrintWriter(out));
+    }
+
+    public TextResultWriter(@Nonnull PrintWriter out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void onStart(@Nonnull List<String> pids) {
+        severalJvms = pids.size() > 1;
+    }
+
+    @Override
+    public synchronized void onResult(@Nonnull JmxInvoker.Result result) {
+        if (severalJvms && (lastPid == null || !lastPid.equals(result.pid))) {
+            out.println("# JVM " + result.pid);
+            lastPid = result.pid;
+        }
+        out.println(result.description);
+        out.flush();
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        out.flush();
+    }
+}
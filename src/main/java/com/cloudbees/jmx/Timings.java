@@ -0,0 +1,346 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import javax.annotation.Nonnull;
+import javax.management.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Durations of the phases of the invocations (attach, connection, query, MBeanInfo, invocation...) measured with
+ * {@link System#nanoTime()}, each phase being recorded in a {@link Histogram}.
+ * <p/>
+ * The timings are printed with <code>--timings</code> and can be exposed as an MBean with
+ * {@link #register(MBeanServer)} to watch where the latency goes in long running invokers (e.g. the
+ * {@link JmxInvokerDaemon}). Thread safe.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class Timings {
+
+    public static final String OBJECT_NAME = "com.cloudbees.jmx:type=JmxInvokerTimings";
+
+    public enum Phase {
+        /**
+         * Startup of the invoker JVM until <code>main</code>
+         */
+        JVM_STARTUP("JvmStartup"),
+        /**
+         * Resolution of the local connector address: cache lookup or attach
+         */
+        RESOLVE_CONNECTOR_ADDRESS("ResolveConnectorAddress"),
+        ATTACH("Attach"),
+        LOAD_AGENT("LoadAgent"),
+        CONNECT("Connect"),
+        QUERY("Query"),
+        GET_MBEAN_INFO("GetMBeanInfo"),
+        /**
+         * Attribute read or write and operation invocation
+         */
+        INVOKE("Invoke"),
+        /**
+         * Whole <code>main</code>
+         */
+        TOTAL("Total");
+
+        private final String label;
+
+        Phase(@Nonnull String label) {
+            this.label = label;
+        }
+
+        @Nonnull
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Map<Phase, Histogram> histograms = new EnumMap<Phase, Histogram>(Phase.class);
+
+    public Timings() {
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new Histogram());
+        }
+    }
+
+    public void record(@Nonnull Phase phase, long durationInNanos) {
+        histograms.get(phase).record(durationInNanos);
+    }
+
+    /**
+     * Record the duration elapsed since the given {@link System#nanoTime()}.
+     */
+    public void recordSince(@Nonnull Phase phase, long startInNanos) {
+        record(phase, System.nanoTime() - startInNanos);
+    }
+
+    @Nonnull
+    public Histogram get(@Nonnull Phase phase) {
+        return histograms.get(phase);
+    }
+
+    public void reset() {
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Append a table of the recorded phases, one line per phase, durations in milliseconds.
+     */
+    public void appendReport(@Nonnull Appendable out) throws IOException {
+        out.append(String.format(Locale.ENGLISH, "%-24s %8s %12s %10s %10s %10s %10s %10s%n",
+                "Phase", "Count", "Total(ms)", "Mean(ms)", "P50(ms)", "P90(ms)", "P99(ms)", "Max(ms)"));
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = histograms.get(phase);
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            out.append(String.format(Locale.ENGLISH, "%-24s %8d %12.3f %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+                    phase.getLabel(), count, toMillis(histogram.getTotalInNanos()), histogram.getMeanInNanos() / 1000000.0,
+                    toMillis(histogram.getPercentileInNanos(50)), toMillis(histogram.getPercentileInNanos(90)),
+                    toMillis(histogram.getPercentileInNanos(99)), toMillis(histogram.getMaxInNanos())));
+        }
+    }
+
+    @Nonnull
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        try {
+            appendReport(report);
+        } catch (IOException e) {
+            // can not happen on a StringBuilder
+            throw new IllegalStateException(e);
+        }
+        return report.toString();
+    }
+
+    /**
+     * Register these timings as the {@value #OBJECT_NAME} MBean, replacing any previously registered instance.
+     */
+    @Nonnull
+    public ObjectName register(@Nonnull MBeanServer mbeanServer) throws JMException {
+        ObjectName objectName = new ObjectName(OBJECT_NAME);
+        if (mbeanServer.isRegistered(objectName)) {
+            mbeanServer.unregisterMBean(objectName);
+        }
+        mbeanServer.registerMBean(new TimingsMBean(), objectName);
+        return objectName;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    /**
+     * Lock free histogram of durations with logarithmic buckets of 8 sub-buckets each: percentiles are accurate
+     * within 12.5%, min, max, count and total are exact.
+     */
+    public static class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalInNanos = new AtomicLong();
+        private final AtomicLong minInNanos = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong maxInNanos = new AtomicLong();
+
+        public void record(long durationInNanos) {
+            long value = Math.max(0, durationInNanos);
+            counts.incrementAndGet(bucket(value));
+            count.incrementAndGet();
+            totalInNanos.addAndGet(value);
+            long min;
+            while (value < (min = minInNanos.get()) && !minInNanos.compareAndSet(min, value)) {
+                // retry
+            }
+            long max;
+            while (value > (max = maxInNanos.get()) && !maxInNanos.compareAndSet(max, value)) {
+                // retry
+            }
+        }
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        /**
+         * @return the highest value of the given bucket
+         */
+        static long bucketUpperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            int subBucket = bucket % SUB_BUCKETS;
+            long lowerBound = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+            return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalInNanos() {
+            return totalInNanos.get();
+        }
+
+        public double getMeanInNanos() {
+            long count = this.count.get();
+            return count == 0 ? 0 : (double) totalInNanos.get() / count;
+        }
+
+        public long getMinInNanos() {
+            long min = minInNanos.get();
+            return min == Long.MAX_VALUE ? 0 : min;
+        }
+
+        public long getMaxInNanos() {
+            return maxInNanos.get();
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return upper bound of the bucket containing the given percentile, 0 if nothing has been recorded
+         */
+        public long getPercentileInNanos(double percentile) {
+            long count = this.count.get();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long cumulated = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                cumulated += counts.get(bucket);
+                if (cumulated >= rank) {
+                    return Math.min(bucketUpperBound(bucket), getMaxInNanos());
+                }
+            }
+            return getMaxInNanos();
+        }
+
+        public void reset() {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts.set(bucket, 0);
+            }
+            count.set(0);
+            totalInNanos.set(0);
+            minInNanos.set(Long.MAX_VALUE);
+            maxInNanos.set(0);
+        }
+    }
+
+    /**
+     * Read only view of the timings: for each phase, <code>&lt;Phase&gt;Count</code>, <code>&lt;Phase&gt;MeanMillis</code>,
+     * <code>&lt;Phase&gt;P50Millis</code>, <code>&lt;Phase&gt;P90Millis</code>, <code>&lt;Phase&gt;P99Millis</code> and
+     * <code>&lt;Phase&gt;MaxMillis</code> plus the <code>Report</code> table and a <code>reset()</code> operation.
+     */
+    private class TimingsMBean implements DynamicMBean {
+        private final String[] statistics = {"Count", "MeanMillis", "P50Millis", "P90Millis", "P99Millis", "MaxMillis"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            if ("Report".equals(attribute)) {
+                return getReport();
+            }
+            for (Phase phase : Phase.values()) {
+                if (attribute.startsWith(phase.getLabel())) {
+                    Histogram histogram = histograms.get(phase);
+                    String statistic = attribute.substring(phase.getLabel().length());
+                    if ("Count".equals(statistic)) {
+                        return histogram.getCount();
+                    } else if ("MeanMillis".equals(statistic)) {
+                        return histogram.getMeanInNanos() / 1000000.0;
+                    } else if ("P50Millis".equals(statistic)) {
+                        return toMillis(histogram.getPercentileInNanos(50));
+                    } else if ("P90Millis".equals(statistic)) {
+                        return toMillis(histogram.getPercentileInNanos(90));
+                    } else if ("P99Millis".equals(statistic)) {
+                        return toMillis(histogram.getPercentileInNanos(99));
+                    } else if ("MaxMillis".equals(statistic)) {
+                        return toMillis(histogram.getMaxInNanos());
+                    }
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList result = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    result.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // skip it as specified by DynamicMBean#getAttributes()
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Attribute " + attribute.getName() + " is read only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if ("reset".equals(actionName) && (params == null || params.length == 0)) {
+                reset();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName), "No operation " + actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+            attributes.add(new MBeanAttributeInfo("Report", String.class.getName(), "Table of the timings of all the phases", true, false, false));
+            for (Phase phase : Phase.values()) {
+                for (String statistic : statistics) {
+                    String type = "Count".equals(statistic) ? long.class.getName() : double.class.getName();
+                    attributes.add(new MBeanAttributeInfo(phase.getLabel() + statistic, type, phase.getLabel() + " " + statistic, true, false, false));
+                }
+            }
+            MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Reset all the timings", new MBeanParameterInfo[0], void.class.getName(), MBeanOperationInfo.ACTION);
+            return new MBeanInfo(Timings.class.getName(), "Timings of the phases of the JMX invocations",
+                    attributes.toArray(new MBeanAttributeInfo[attributes.size()]), new MBeanConstructorInfo[0],
+                    new MBeanOperationInfo[]{reset}, new MBeanNotificationInfo[0],
+                    new ImmutableDescriptor("immutableInfo=true"));
+        }
+    }
+}
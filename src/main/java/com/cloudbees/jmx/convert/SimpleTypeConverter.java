@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx.convert;
+
+import javax.annotation.Nonnull;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Converters of the JDK types and of the {@link javax.management.openmbean.SimpleType}s.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public enum SimpleTypeConverter implements TypeConverter {
+    STRING(String.class.getName(), CharSequence.class.getName(), Object.class.getName(), java.io.Serializable.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            return value;
+        }
+    },
+    BOOLEAN(boolean.class.getName(), Boolean.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            return Boolean.valueOf(value.trim());
+        }
+    },
+    CHARACTER(char.class.getName(), Character.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            if (value.length() != 1) {
+                throw new IllegalArgumentException("Exactly one character expected for type " + type + ": '" + value + "'");
+            }
+            return value.charAt(0);
+        }
+    },
+    BYTE(byte.class.getName(), Byte.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            return Byte.valueOf(value.trim());
+        }
+    },
+    SHORT(short.class.getName(), Short.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            return Short.valueOf(value.trim());
+        }
+    },
+    INTEGER(int.class.getName(), Integer.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            return Integer.valueOf(value.trim());
+        }
+    },
+    LONG(long.class.getName(), Long.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            return Long.valueOf(value.trim());
+        }
+    },
+    FLOAT(float.class.getName(), Float.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            return Float.valueOf(value.trim());
+        }
+    },
+    DOUBLE(double.class.getName(), Double.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            return Double.valueOf(value.trim());
+        }
+    },
+    BIG_INTEGER(BigInteger.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            return new BigInteger(value.trim());
+        }
+    },
+    BIG_DECIMAL(BigDecimal.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            return new BigDecimal(value.trim());
+        }
+    },
+    OBJECT_NAME(ObjectName.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            try {
+                return new ObjectName(value);
+            } catch (MalformedObjectNameException e) {
+                throw new IllegalArgumentException("Invalid ObjectName '" + value + "'", e);
+            }
+        }
+    },
+    /**
+     * Epoch milliseconds or <code>yyyy-MM-dd'T'HH:mm:ss.SSSZ</code>
+     */
+    DATE(Date.class.getName()) {
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            String trimmedValue = value.trim();
+            try {
+                return new Date(Long.parseLong(trimmedValue));
+            } catch (NumberFormatException e) {
+                try {
+                    return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").parse(trimmedValue);
+                } catch (ParseException pe) {
+                    throw new IllegalArgumentException("Invalid date '" + value + "', epoch millis or yyyy-MM-dd'T'HH:mm:ss.SSSZ expected", pe);
+                }
+            }
+        }
+    };
+
+    private final String[] types;
+
+    private SimpleTypeConverter(String... types) {
+        this.types = types;
+    }
+
+    @Nonnull
+    @Override
+    public String[] getTypes() {
+        return Arrays.copyOf(types, types.length);
+    }
+}
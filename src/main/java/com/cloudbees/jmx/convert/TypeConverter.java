@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx.convert;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Convert the string arguments given on the command line to the type expected by a MBean attribute or operation
+ * parameter.
+ * <p/>
+ * Custom converters are registered in {@link TypeConverters} or discovered with {@link java.util.ServiceLoader},
+ * declaring their implementation class in <code>META-INF/services/com.cloudbees.jmx.convert.TypeConverter</code>.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public interface TypeConverter {
+
+    /**
+     * @return the names of the types handled by this converter as returned by {@link javax.management.MBeanParameterInfo#getType()}
+     *         (e.g. <code>int</code>, <code>java.lang.Integer</code>, <code>[J</code>)
+     */
+    @Nonnull
+    String[] getTypes();
+
+    /**
+     * Convert the given <code>value</code> to the given <code>type</code>.
+     *
+     * @throws IllegalArgumentException if the value can not be converted
+     */
+    @Nullable
+    Object convert(@Nonnull String value, @Nonnull String type);
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx.convert;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the {@link TypeConverter}s indexed by type name.
+ * <p/>
+ * Besides the registered converters, the following types are resolved on first use and then cached: arrays
+ * (comma separated elements), {@link List}, {@link Set} and {@link Collection} (comma separated strings) and
+ * enums available in the classpath. Other types fall back to {@link String}.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class TypeConverters {
+
+    /**
+     * Bound the number of failing providers to not loop forever on an iterator failing again and again
+     */
+    private static final int MAX_PROVIDER_ERRORS = 100;
+
+    private static final TypeConverters DEFAULT = newDefaultTypeConverters();
+
+    private static final Map<String, Class<?>> PRIMITIVE_TYPES = new HashMap<String, Class<?>>();
+
+    static {
+        for (Class<?> primitiveType : new Class<?>[]{boolean.class, char.class, byte.class, short.class, int.class, long.class, float.class, double.class}) {
+            PRIMITIVE_TYPES.put(primitiveType.getName(), primitiveType);
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(TypeConverters.class);
+
+    private final ConcurrentMap<String, TypeConverter> converters = new ConcurrentHashMap<String, TypeConverter>();
+
+    /**
+     * @return the shared registry of the built-in converters and of the converters declared with {@link ServiceLoader}
+     */
+    @Nonnull
+    public static TypeConverters getDefault() {
+        return DEFAULT;
+    }
+
+    @Nonnull
+    private static TypeConverters newDefaultTypeConverters() {
+        TypeConverters typeConverters = new TypeConverters();
+        typeConverters.registerAll(ServiceLoader.load(TypeConverter.class).iterator());
+        return typeConverters;
+    }
+
+    /**
+     * Register the converters of the given {@link ServiceLoader} iterator, logging and skipping the providers that
+     * can not be loaded rather than failing the initialization of this class.
+     */
+    void registerAll(@Nonnull Iterator<TypeConverter> typeConverters) {
+        int errors = 0;
+        while (true) {
+            try {
+                if (!typeConverters.hasNext()) {
+                    return;
+                }
+                register(typeConverters.next());
+            } catch (ServiceConfigurationError e) {
+                logger.warn("Skip TypeConverter provider that can not be loaded", e);
+                if (++errors >= MAX_PROVIDER_ERRORS) {
+                    logger.warn("Too many TypeConverter provider errors, skip the remaining providers");
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a registry with the built-in converters.
+     */
+    public TypeConverters() {
+        for (SimpleTypeConverter typeConverter : SimpleTypeConverter.values()) {
+            register(typeConverter);
+        }
+    }
+
+    /**
+     * Register the given converter for all its {@linkplain TypeConverter#getTypes() types}, replacing any previously
+     * registered converter of these types.
+     */
+    public void register(@Nonnull TypeConverter typeConverter) {
+        for (String type : typeConverter.getTypes()) {
+            converters.put(type, typeConverter);
+        }
+    }
+
+    /**
+     * Return the converter of the given type, resolving and caching it on first use.
+     */
+    @Nonnull
+    public TypeConverter getConverter(@Nonnull String type) {
+        TypeConverter typeConverter = converters.get(type);
+        if (typeConverter == null) {
+            typeConverter = resolveConverter(type);
+            TypeConverter previous = converters.putIfAbsent(type, typeConverter);
+            if (previous != null) {
+                typeConverter = previous;
+            }
+        }
+        return typeConverter;
+    }
+
+    /**
+     * Return the converters of the given signature (e.g. {@link javax.management.MBeanParameterInfo#getType()}s).
+     */
+    @Nonnull
+    public TypeConverter[] getConverters(@Nonnull String[] signature) {
+        TypeConverter[] result = new TypeConverter[signature.length];
+        for (int i = 0; i < signature.length; i++) {
+            result[i] = getConverter(signature[i]);
+        }
+        return result;
+    }
+
+    @Nullable
+    public Object convert(@Nonnull String value, @Nonnull String type) {
+        return getConverter(type).convert(value, type);
+    }
+
+    @Nonnull
+    protected TypeConverter resolveConverter(@Nonnull String type) {
+        if (type.startsWith("[")) {
+            String componentType = getComponentType(type);
+            return new ArrayTypeConverter(loadClass(componentType), getConverter(componentType));
+        }
+        if (List.class.getName().equals(type) || Collection.class.getName().equals(type) || Iterable.class.getName().equals(type)) {
+            return new CollectionTypeConverter(false);
+        }
+        if (Set.class.getName().equals(type)) {
+            return new CollectionTypeConverter(true);
+        }
+        Class<?> clazz = loadClass(type);
+        if (clazz != null && clazz.isEnum()) {
+            return new EnumTypeConverter(clazz);
+        }
+        logger.warn("Unexpected type {}, values will be passed as String", type);
+        return SimpleTypeConverter.STRING;
+    }
+
+    /**
+     * @param arrayType array type name as returned by {@link Class#getName()} (e.g. <code>[I</code>, <code>[Ljava.lang.String;</code>)
+     */
+    @Nonnull
+    static String getComponentType(@Nonnull String arrayType) {
+        String componentType = arrayType.substring(1);
+        if (componentType.startsWith("[")) {
+            return componentType;
+        } else if (componentType.startsWith("L") && componentType.endsWith(";")) {
+            return componentType.substring(1, componentType.length() - 1);
+        }
+        switch (componentType.charAt(0)) {
+            case 'Z':
+                return "boolean";
+            case 'C':
+                return "char";
+            case 'B':
+                return "byte";
+            case 'S':
+                return "short";
+            case 'I':
+                return "int";
+            case 'J':
+                return "long";
+            case 'F':
+                return "float";
+            case 'D':
+                return "double";
+            default:
+                throw new IllegalArgumentException("Invalid array type " + arrayType);
+        }
+    }
+
+    @Nullable
+    private Class<?> loadClass(@Nonnull String type) {
+        Class<?> primitiveType = PRIMITIVE_TYPES.get(type);
+        if (primitiveType != null) {
+            return primitiveType;
+        }
+        try {
+            return Class.forName(type, false, TypeConverters.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            logger.debug("Type {} not found in classpath", type);
+            return null;
+        }
+    }
+
+    /**
+     * Convert comma separated values to an array.
+     */
+    static class ArrayTypeConverter implements TypeConverter {
+        private final Class<?> componentType;
+        private final TypeConverter componentConverter;
+
+        ArrayTypeConverter(@Nullable Class<?> componentType, @Nonnull TypeConverter componentConverter) {
+            this.componentType = componentType == null ? String.class : componentType;
+            this.componentConverter = componentConverter;
+        }
+
+        @Nonnull
+        @Override
+        public String[] getTypes() {
+            return new String[0];
+        }
+
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            String[] elements = value.isEmpty() ? new String[0] : value.split(",");
+            String componentTypeName = getComponentType(type);
+            Object array = Array.newInstance(componentType, elements.length);
+            for (int i = 0; i < elements.length; i++) {
+                Array.set(array, i, componentConverter.convert(elements[i], componentTypeName));
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Convert comma separated values to a {@link List} or a {@link Set} of strings.
+     */
+    static class CollectionTypeConverter implements TypeConverter {
+        private final boolean set;
+
+        CollectionTypeConverter(boolean set) {
+            this.set = set;
+        }
+
+        @Nonnull
+        @Override
+        public String[] getTypes() {
+            return new String[0];
+        }
+
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            List<String> elements = value.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(value.split(","));
+            return set ? new LinkedHashSet<String>(elements) : new ArrayList<String>(elements);
+        }
+    }
+
+    /**
+     * Convert the name of an enum constant, case insensitive.
+     */
+    static class EnumTypeConverter implements TypeConverter {
+        private final Class<?> enumType;
+
+        EnumTypeConverter(@Nonnull Class<?> enumType) {
+            this.enumType = enumType;
+        }
+
+        @Nonnull
+        @Override
+        public String[] getTypes() {
+            return new String[]{enumType.getName()};
+        }
+
+        @Override
+        public Object convert(@Nonnull String value, @Nonnull String type) {
+            for (Object constant : enumType.getEnumConstants()) {
+                if (((Enum<?>) constant).name().equalsIgnoreCase(value.trim())) {
+                    return constant;
+                }
+            }
+            throw new IllegalArgumentException("Invalid value '" + value + "' for enum " + type + ", expected one of " + Arrays.asList(enumType.getEnumConstants()));
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx.perfdata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Read only view of the performance counters that a HotSpot JVM publishes in its memory mapped
+ * <code>hsperfdata_&lt;user&gt;/&lt;pid&gt;</code> file (the counters read by <code>jstat</code>).
+ * <p/>
+ * The file is mapped once and the counters are read in place on each call, without attaching to the JVM and without
+ * any side effect on it. Only the <code>long</code> counters and the byte array (string) counters are supported.
+ * <p/>
+ * See <code>hotspot/src/share/vm/runtime/perfMemory.hpp</code> for the layout of the file.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class PerfData {
+
+    public static final int MAGIC = 0xcafec0c0;
+
+    /**
+     * Frequency of the high resolution timer used by the counters in "ticks"
+     */
+    public static final String TICKS_FREQUENCY = "sun.os.hrt.frequency";
+
+    private static final int PROLOGUE_BYTE_ORDER_OFFSET = 4;
+    private static final int PROLOGUE_MAJOR_VERSION_OFFSET = 5;
+    private static final int PROLOGUE_ACCESSIBLE_OFFSET = 7;
+    private static final int PROLOGUE_ENTRY_OFFSET_OFFSET = 24;
+    private static final int PROLOGUE_NUM_ENTRIES_OFFSET = 28;
+
+    private static final Logger logger = LoggerFactory.getLogger(PerfData.class);
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Counters by name, sorted to ease listing
+     */
+    private final SortedMap<String, Counter> counters = new TreeMap<String, Counter>();
+
+    /**
+     * @param buffer the content of a hsperfdata file
+     * @throws IllegalArgumentException if the content is not a supported hsperfdata file
+     */
+    public PerfData(@Nonnull ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        int magic = this.buffer.order(ByteOrder.BIG_ENDIAN).getInt(0);
+        if (magic != MAGIC) {
+            throw new IllegalArgumentException("Invalid hsperfdata magic 0x" + Integer.toHexString(magic));
+        }
+        this.buffer.order(buffer.get(PROLOGUE_BYTE_ORDER_OFFSET) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        int majorVersion = buffer.get(PROLOGUE_MAJOR_VERSION_OFFSET);
+        if (majorVersion != 2) {
+            throw new IllegalArgumentException("Unsupported hsperfdata version " + majorVersion);
+        }
+        if (buffer.get(PROLOGUE_ACCESSIBLE_OFFSET) == 0) {
+            logger.debug("hsperfdata not yet marked accessible by the JVM");
+        }
+
+        int entryOffset = this.buffer.getInt(PROLOGUE_ENTRY_OFFSET_OFFSET);
+        int entries = this.buffer.getInt(PROLOGUE_NUM_ENTRIES_OFFSET);
+        for (int i = 0; i < entries; i++) {
+            int entryLength = this.buffer.getInt(entryOffset);
+            int nameOffset = this.buffer.getInt(entryOffset + 4);
+            int vectorLength = this.buffer.getInt(entryOffset + 8);
+            char type = (char) this.buffer.get(entryOffset + 12);
+            int units = this.buffer.get(entryOffset + 14);
+            int dataOffset = this.buffer.getInt(entryOffset + 16);
+
+            String name = readString(entryOffset + nameOffset, entryLength - nameOffset);
+            if (type == 'J' && vectorLength == 0) {
+                counters.put(name, new Counter(name, entryOffset + dataOffset, 0, units));
+            } else if (type == 'B' && vectorLength > 0) {
+                counters.put(name, new Counter(name, entryOffset + dataOffset, vectorLength, units));
+            } else {
+                logger.trace("Skip unsupported counter {} of type {}[{}]", name, type, vectorLength);
+            }
+            entryOffset += entryLength;
+        }
+    }
+
+    /**
+     * Map the hsperfdata file of the local JVM with the given <code>pid</code>.
+     *
+     * @throws IllegalStateException if the file is not found, e.g. the JVM runs with <code>-XX:-UsePerfData</code>
+     */
+    @Nonnull
+    public static PerfData open(@Nonnull String pid) throws IOException {
+        File file = findFile(pid);
+        if (file == null) {
+            throw new IllegalStateException("No hsperfdata file found for JVM " + pid + " (JVM started with -XX:-UsePerfData or -XX:+PerfDisableSharedMem?)");
+        }
+        return open(file);
+    }
+
+    @Nonnull
+    public static PerfData open(@Nonnull File file) throws IOException {
+        logger.debug("Map {}", file);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // the mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new PerfData(buffer);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Return the hsperfdata file of the given JVM looking in the <code>hsperfdata_*</code> directories of the
+     * temporary directories as the JVM may run as another user.
+     *
+     * @return <code>null</code> if not found
+     */
+    @Nullable
+    public static File findFile(@Nonnull String pid) {
+        Set<File> tmpDirs = new LinkedHashSet<File>();
+        tmpDirs.add(new File(System.getProperty("java.io.tmpdir")));
+        tmpDirs.add(new File("/tmp"));
+        return findFile(pid, tmpDirs, System.getProperty("user.name"));
+    }
+
+    /**
+     * The <code>hsperfdata_&lt;userName&gt;</code> directories are looked up first. Otherwise, as a stale file of a
+     * dead JVM of another user may have the same pid (e.g. in containers sharing <code>/tmp</code>), the most recently
+     * modified file is returned.
+     */
+    @Nullable
+    static File findFile(@Nonnull String pid, @Nonnull Collection<File> tmpDirs, @Nullable String userName) {
+        if (userName != null) {
+            for (File tmpDir : tmpDirs) {
+                File file = new File(new File(tmpDir, "hsperfdata_" + userName), pid);
+                if (file.isFile()) {
+                    return file;
+                }
+            }
+        }
+        File result = null;
+        for (File tmpDir : tmpDirs) {
+            File[] perfDataDirs = tmpDir.listFiles();
+            if (perfDataDirs == null) {
+                continue;
+            }
+            for (File perfDataDir : perfDataDirs) {
+                File file = new File(perfDataDir, pid);
+                if (perfDataDir.getName().startsWith("hsperfdata_") && file.isFile()) {
+                    if (result == null || file.lastModified() > result.lastModified()) {
+                        result = file;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    public Set<String> getCounterNames() {
+        return Collections.unmodifiableSet(counters.keySet());
+    }
+
+    public boolean hasCounter(@Nonnull String name) {
+        return counters.containsKey(name);
+    }
+
+    /**
+     * @return the current value of the counter, a {@link Long} or a {@link String}
+     * @throws IllegalArgumentException if the counter does not exist
+     */
+    @Nonnull
+    public Object getValue(@Nonnull String name) {
+        Counter counter = getCounter(name);
+        return counter.isString() ? readString(counter.offset, counter.vectorLength) : buffer.getLong(counter.offset);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the counter does not exist or is not a <code>long</code>
+     */
+    public long getLong(@Nonnull String name) {
+        Counter counter = getCounter(name);
+        if (counter.isString()) {
+            throw new IllegalArgumentException("Counter " + name + " is not a long");
+        }
+        return buffer.getLong(counter.offset);
+    }
+
+    /**
+     * @return the value of the given <code>long</code> counter or <code>defaultValue</code> if it does not exist
+     */
+    public long getLong(@Nonnull String name, long defaultValue) {
+        return hasCounter(name) ? getLong(name) : defaultValue;
+    }
+
+    /**
+     * Return the value of the given counter of ticks converted in milliseconds
+     */
+    public long getTicksAsMillis(@Nonnull String name) {
+        return ticksToMillis(getLong(name), getLong(TICKS_FREQUENCY));
+    }
+
+    /**
+     * Convert without overflowing: <code>ticks * 1000</code> exceeds {@link Long#MAX_VALUE} after 106 days at 1 GHz.
+     */
+    static long ticksToMillis(long ticks, long frequency) {
+        return ticks / frequency * 1000 + ticks % frequency * 1000 / frequency;
+    }
+
+    /**
+     * @return <code>true</code> if the given counter is expressed in ticks of the high resolution timer
+     */
+    public boolean isTicks(@Nonnull String name) {
+        return getCounter(name).units == 3;
+    }
+
+    @Nonnull
+    private Counter getCounter(@Nonnull String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            throw new IllegalArgumentException("Counter " + name + " not found");
+        }
+        return counter;
+    }
+
+    /**
+     * Read the null terminated string at the given offset
+     */
+    @Nonnull
+    private String readString(int offset, int maxLength) {
+        int length = 0;
+        while (length < maxLength && buffer.get(offset + length) != 0) {
+            length++;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Counter {
+        final String name;
+        final int offset;
+        /**
+         * 0 for <code>long</code> counters, size of the byte array of string counters
+         */
+        final int vectorLength;
+        final int units;
+
+        Counter(String name, int offset, int vectorLength, int units) {
+            this.name = name;
+            this.offset = offset;
+            this.vectorLength = vectorLength;
+            this.units = units;
+        }
+
+        boolean isString() {
+            return vectorLength > 0;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx.perfdata;
+
+import javax.annotation.Nonnull;
+import javax.management.*;
+import java.util.*;
+
+/**
+ * Read only {@link DynamicMBean} whose attributes are computed from the counters of a {@link PerfData}.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class PerfDataMBean implements DynamicMBean {
+
+    private final PerfData perfData;
+
+    private final String className;
+
+    private final String description;
+
+    private final Map<String, PerfAttribute> attributes = new TreeMap<String, PerfAttribute>();
+
+    /**
+     * @param className class name exposed in the {@link MBeanInfo}, MBeans sharing a class name must have the same
+     *                  attributes as their {@link MBeanInfo} is immutable
+     */
+    public PerfDataMBean(@Nonnull PerfData perfData, @Nonnull String className, @Nonnull String description) {
+        this.perfData = perfData;
+        this.className = className;
+        this.description = description;
+    }
+
+    /**
+     * Attribute computed from one or more counters
+     */
+    public abstract static class PerfAttribute {
+        final String type;
+        final String description;
+
+        /**
+         * @param type e.g. <code>long</code>
+         */
+        protected PerfAttribute(@Nonnull String type, @Nonnull String description) {
+            this.type = type;
+            this.description = description;
+        }
+
+        @Nonnull
+        protected abstract Object getValue(@Nonnull PerfData perfData);
+    }
+
+    /**
+     * Add the given attribute.
+     *
+     * @return this MBean
+     */
+    @Nonnull
+    public PerfDataMBean addAttribute(@Nonnull String name, @Nonnull PerfAttribute attribute) {
+        attributes.put(name, attribute);
+        return this;
+    }
+
+    /**
+     * Add an attribute with the value of the given counter if this counter exists, counters of ticks being
+     * converted in milliseconds.
+     *
+     * @return this MBean
+     */
+    @Nonnull
+    public PerfDataMBean addCounter(@Nonnull String name, @Nonnull final String counter) {
+        if (!perfData.hasCounter(counter)) {
+            return this;
+        }
+        boolean string = perfData.getValue(counter) instanceof String;
+        final boolean ticks = !string && perfData.isTicks(counter);
+        return addAttribute(name, new PerfAttribute(string ? String.class.getName() : "long", "Counter " + counter + (ticks ? " in ms" : "")) {
+            @Nonnull
+            @Override
+            protected Object getValue(@Nonnull PerfData perfData) {
+                return ticks ? perfData.getTicksAsMillis(counter) : perfData.getValue(counter);
+            }
+        });
+    }
+
+    public boolean isEmpty() {
+        return attributes.isEmpty();
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        PerfAttribute perfAttribute = attributes.get(attribute);
+        if (perfAttribute == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return perfAttribute.getValue(perfData);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        AttributeList result = new AttributeList(names.length);
+        for (String name : names) {
+            PerfAttribute perfAttribute = attributes.get(name);
+            if (perfAttribute != null) {
+                result.add(new Attribute(name, perfAttribute.getValue(perfData)));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Attribute " + attribute.getName() + " is read only, perf counters can't be written");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        // perf counters are read only, no attribute is set
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "Perf counters have no operation");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributeInfos = new ArrayList<MBeanAttributeInfo>(attributes.size());
+        for (Map.Entry<String, PerfAttribute> entry : attributes.entrySet()) {
+            attributeInfos.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().type, entry.getValue().description, true, false, false));
+        }
+        return new MBeanInfo(className, description, attributeInfos.toArray(new MBeanAttributeInfo[attributeInfos.size()]),
+                null, null, null, new ImmutableDescriptor("immutableInfo=true"));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx.perfdata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Expose the {@link PerfData} counters of a JVM as MBeans registered in a local {@link MBeanServer}:
+ * <ul>
+ * <li>A subset of the attributes of the platform MBeans computed from the counters: {@value ManagementFactory#THREAD_MXBEAN_NAME},
+ * {@value ManagementFactory#CLASS_LOADING_MXBEAN_NAME}, {@value ManagementFactory#RUNTIME_MXBEAN_NAME},
+ * {@value ManagementFactory#COMPILATION_MXBEAN_NAME} and {@value ManagementFactory#GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE},name=...
+ * for the young and old collectors</li>
+ * <li>All the raw counters as the attributes of {@value #COUNTERS_OBJECT_NAME} (e.g. <code>sun.gc.collector.0.invocations</code>)</li>
+ * </ul>
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class PerfDataMBeans {
+
+    public static final String COUNTERS_OBJECT_NAME = "hsperfdata:type=Counters";
+
+    /**
+     * GarbageCollector MBean name by <code>sun.gc.collector.N.name</code>
+     */
+    private static final Map<String, String> GARBAGE_COLLECTOR_NAMES = new HashMap<String, String>();
+
+    static {
+        GARBAGE_COLLECTOR_NAMES.put("PSScavenge", "PS Scavenge");
+        GARBAGE_COLLECTOR_NAMES.put("PSParallelCompact", "PS MarkSweep");
+        GARBAGE_COLLECTOR_NAMES.put("PSMarkSweep", "PS MarkSweep");
+        GARBAGE_COLLECTOR_NAMES.put("Copy", "Copy");
+        GARBAGE_COLLECTOR_NAMES.put("MSC", "MarkSweepCompact");
+        GARBAGE_COLLECTOR_NAMES.put("PCopy", "ParNew");
+        GARBAGE_COLLECTOR_NAMES.put("CMS", "ConcurrentMarkSweep");
+        GARBAGE_COLLECTOR_NAMES.put("G1 incremental collections", "G1 Young Generation");
+        GARBAGE_COLLECTOR_NAMES.put("G1 stop-the-world full collections", "G1 Old Generation");
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(PerfDataMBeans.class);
+
+    private PerfDataMBeans() {
+
+    }
+
+    /**
+     * Create a new {@link MBeanServer}, not registered in the {@link MBeanServerFactory}, exposing the counters of
+     * the given <code>perfData</code>.
+     */
+    @Nonnull
+    public static MBeanServer newMBeanServer(@Nonnull PerfData perfData) throws JMException {
+        MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+        register(mbeanServer, perfData);
+        return mbeanServer;
+    }
+
+    public static void register(@Nonnull MBeanServer mbeanServer, @Nonnull final PerfData perfData) throws JMException {
+        PerfDataMBean counters = new PerfDataMBean(perfData, PerfData.class.getName(), "Raw hsperfdata counters");
+        for (final String name : perfData.getCounterNames()) {
+            String type = perfData.getValue(name) instanceof String ? String.class.getName() : "long";
+            counters.addAttribute(name, new PerfDataMBean.PerfAttribute(type, "Raw counter " + name) {
+                @Nonnull
+                @Override
+                protected Object getValue(@Nonnull PerfData perfData) {
+                    return perfData.getValue(name);
+                }
+            });
+        }
+        register(mbeanServer, counters, COUNTERS_OBJECT_NAME);
+
+        register(mbeanServer, new PerfDataMBean(perfData, ThreadMXBean.class.getName(), "Threading")
+                .addCounter("ThreadCount", "java.threads.live")
+                .addCounter("PeakThreadCount", "java.threads.livePeak")
+                .addCounter("DaemonThreadCount", "java.threads.daemon")
+                .addCounter("TotalStartedThreadCount", "java.threads.started"),
+                ManagementFactory.THREAD_MXBEAN_NAME);
+
+        PerfDataMBean classLoading = new PerfDataMBean(perfData, ClassLoadingMXBean.class.getName(), "Class loading");
+        if (perfData.hasCounter("java.cls.loadedClasses")) {
+            classLoading
+                    .addAttribute("LoadedClassCount", new PerfDataMBean.PerfAttribute("long", "Number of classes currently loaded") {
+                        @Nonnull
+                        @Override
+                        protected Object getValue(@Nonnull PerfData perfData) {
+                            return getTotalLoadedClassCount(perfData) - getUnloadedClassCount(perfData);
+                        }
+                    })
+                    .addAttribute("TotalLoadedClassCount", new PerfDataMBean.PerfAttribute("long", "Number of classes loaded since the start of the JVM") {
+                        @Nonnull
+                        @Override
+                        protected Object getValue(@Nonnull PerfData perfData) {
+                            return getTotalLoadedClassCount(perfData);
+                        }
+                    })
+                    .addAttribute("UnloadedClassCount", new PerfDataMBean.PerfAttribute("long", "Number of classes unloaded since the start of the JVM") {
+                        @Nonnull
+                        @Override
+                        protected Object getValue(@Nonnull PerfData perfData) {
+                            return getUnloadedClassCount(perfData);
+                        }
+                    });
+        }
+        register(mbeanServer, classLoading, ManagementFactory.CLASS_LOADING_MXBEAN_NAME);
+
+        PerfDataMBean runtime = new PerfDataMBean(perfData, RuntimeMXBean.class.getName(), "Runtime")
+                .addCounter("StartTime", "sun.rt.vmInitDoneTime")
+                .addCounter("VmName", "java.property.java.vm.name")
+                .addCounter("VmVendor", "java.property.java.vm.vendor")
+                .addCounter("VmVersion", "java.property.java.vm.version")
+                .addCounter("SpecVersion", "java.property.java.vm.specification.version");
+        if (perfData.hasCounter("sun.rt.vmInitDoneTime")) {
+            runtime.addAttribute("Uptime", new PerfDataMBean.PerfAttribute("long", "Uptime of the JVM in ms") {
+                @Nonnull
+                @Override
+                protected Object getValue(@Nonnull PerfData perfData) {
+                    return System.currentTimeMillis() - perfData.getLong("sun.rt.vmInitDoneTime");
+                }
+            });
+        }
+        register(mbeanServer, runtime, ManagementFactory.RUNTIME_MXBEAN_NAME);
+
+        register(mbeanServer, new PerfDataMBean(perfData, CompilationMXBean.class.getName(), "Compilation")
+                .addCounter("TotalCompilationTime", "java.ci.totalTime"),
+                ManagementFactory.COMPILATION_MXBEAN_NAME);
+
+        for (int i = 0; perfData.hasCounter("sun.gc.collector." + i + ".name"); i++) {
+            String collector = (String) perfData.getValue("sun.gc.collector." + i + ".name");
+            String name = GARBAGE_COLLECTOR_NAMES.containsKey(collector) ? GARBAGE_COLLECTOR_NAMES.get(collector) : collector;
+            register(mbeanServer, new PerfDataMBean(perfData, GarbageCollectorMXBean.class.getName(), "Garbage collector " + collector)
+                    .addCounter("CollectionCount", "sun.gc.collector." + i + ".invocations")
+                    .addCounter("CollectionTime", "sun.gc.collector." + i + ".time"),
+                    ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",name=" + (name.matches(".*[,=:\"*?\\n].*") ? ObjectName.quote(name) : name));
+        }
+    }
+
+    private static void register(@Nonnull MBeanServer mbeanServer, @Nonnull PerfDataMBean mbean, @Nonnull String objectName) throws JMException {
+        if (mbean.isEmpty()) {
+            logger.debug("No counter for {}, skip it", objectName);
+            return;
+        }
+        mbeanServer.registerMBean(mbean, new ObjectName(objectName));
+    }
+
+    private static long getTotalLoadedClassCount(@Nonnull PerfData perfData) {
+        return perfData.getLong("java.cls.loadedClasses", 0) + perfData.getLong("sun.cls.sharedLoadedClasses", 0);
+    }
+
+    private static long getUnloadedClassCount(@Nonnull PerfData perfData) {
+        return perfData.getLong("java.cls.unloadedClasses", 0) + perfData.getLong("sun.cls.sharedUnloadedClasses", 0);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Map;
+
+/**
+ * Minimal streaming JSON encoder for JMX values.
+ * <p/>
+ * Supported types: <code>null</code>, {@link Boolean}, {@link Number}, {@link CharSequence}, {@link Map},
+ * {@link Iterable}, arrays (including primitive arrays), {@link CompositeData} (encoded as an object) and
+ * {@link TabularData} (encoded as an array of row objects). Other objects are encoded as their
+ * {@link Object#toString()} string.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class Json {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private Json() {
+
+    }
+
+    @Nonnull
+    public static String toJson(@Nullable Object value) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            write(value, sb);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    public static void write(@Nullable Object value, @Nonnull Appendable out) throws IOException {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Boolean) {
+            out.append(value.toString());
+        } else if (value instanceof Number) {
+            writeNumber((Number) value, out);
+        } else if (value instanceof CharSequence) {
+            writeString((CharSequence) value, out);
+        } else if (value instanceof CompositeData) {
+            CompositeData compositeData = (CompositeData) value;
+            out.append('{');
+            boolean first = true;
+            for (String key : compositeData.getCompositeType().keySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(key, out);
+                out.append(':');
+                write(compositeData.get(key), out);
+            }
+            out.append('}');
+        } else if (value instanceof TabularData) {
+            out.append('[');
+            boolean first = true;
+            for (Object row : ((TabularData) value).values()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                write(row, out);
+            }
+            out.append(']');
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(String.valueOf(entry.getKey()), out);
+                out.append(':');
+                write(entry.getValue(), out);
+            }
+            out.append('}');
+        } else if (value instanceof Iterable) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : (Iterable<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                write(element, out);
+            }
+            out.append(']');
+        } else if (value.getClass().isArray()) {
+            out.append('[');
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                write(Array.get(value, i), out);
+            }
+            out.append(']');
+        } else if (value instanceof Class) {
+            writeString(((Class<?>) value).getName(), out);
+        } else {
+            writeString(value.toString(), out);
+        }
+    }
+
+    private static void writeNumber(@Nonnull Number number, @Nonnull Appendable out) throws IOException {
+        if ((number instanceof Double && (((Double) number).isNaN() || ((Double) number).isInfinite())) ||
+                (number instanceof Float && (((Float) number).isNaN() || ((Float) number).isInfinite()))) {
+            // not representable in JSON
+            writeString(number.toString(), out);
+        } else {
+            out.append(number.toString());
+        }
+    }
+
+    public static void writeString(@Nonnull CharSequence str, @Nonnull Appendable out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -17,21 +17,23 @@ package com.cloudbees.util;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
-import java.lang.reflect.Array;
 import java.util.Arrays;
-import java.util.Collection;
 
 /**
  * String utils
+ * <p/>
+ * The <code>join</code>, <code>indent</code> and <code>appendTo</code> methods write directly to a caller supplied
+ * {@link Appendable} or {@link StringBuilder} so that large values (arrays of thousands of elements, multi KB descriptions)
+ * are rendered in linear time without intermediate strings.
  *
  * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
  */
 public class Strings2 {
     public static final String LINE_BREAK = System.getProperty("line.separator");
 
+    public static final String NULL = "#null#";
+
     private Strings2() {
 
     }
@@ -62,21 +64,40 @@ public class Strings2 {
     }
 
     @Nullable
-    public static String join(@Nullable Iterable<Object> objects, @Nullable String delimiter) {
+    public static String join(@Nullable Iterable<?> objects, @Nullable String delimiter) {
         if (objects == null)
             return null;
-        if (delimiter == null)
-            delimiter = "";
 
-        String result = "";
-        for (Object o : objects) {
-            result += toString(o) + delimiter;
+        return join(objects, delimiter, new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the {@linkplain #toString(Object) string representation} of the given <code>objects</code> separated by
+     * the given <code>delimiter</code> to <code>out</code>.
+     */
+    @Nonnull
+    public static StringBuilder join(@Nonnull Iterable<?> objects, @Nullable String delimiter, @Nonnull StringBuilder out) {
+        try {
+            join(objects, delimiter, (Appendable) out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected exception appending to a StringBuilder", e);
         }
+        return out;
+    }
 
-        if (!result.isEmpty()) {
-            result = result.substring(0, result.length() - delimiter.length());
+    /**
+     * @see #join(Iterable, String, StringBuilder)
+     */
+    public static void join(@Nonnull Iterable<?> objects, @Nullable String delimiter, @Nonnull Appendable out) throws IOException {
+        boolean first = true;
+        for (Object o : objects) {
+            if (first) {
+                first = false;
+            } else if (delimiter != null) {
+                out.append(delimiter);
+            }
+            appendTo(o, out);
         }
-        return result;
     }
 
     @Nullable
@@ -86,20 +107,52 @@ public class Strings2 {
         if (str == null)
             return indentation;
 
-        BufferedReader reader = new BufferedReader(new StringReader(str));
-        String result = "";
-        String line;
+        return indent(str, indentation, new StringBuilder(str.length() + 16 * indentation.length())).toString();
+    }
+
+    /**
+     * Append each line of the given <code>str</code> prefixed by the given <code>indentation</code> to <code>out</code>.
+     * Lines are terminated by <code>\n</code>, <code>\r</code> or <code>\r\n</code> and re-joined with
+     * {@link #LINE_BREAK}, a trailing line terminator is dropped.
+     */
+    @Nonnull
+    public static StringBuilder indent(@Nonnull CharSequence str, @Nullable String indentation, @Nonnull StringBuilder out) {
         try {
-            while ((line = reader.readLine()) != null) {
-                result += indentation + line + LINE_BREAK;
-            }
+            indent(str, indentation, (Appendable) out);
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new IllegalStateException("Unexpected exception appending to a StringBuilder", e);
         }
-        // remove last LINE_BREAK
-        result = result.isEmpty() ? indentation : result.substring(0, result.length() - LINE_BREAK.length());
+        return out;
+    }
 
-        return result;
+    /**
+     * @see #indent(CharSequence, String, StringBuilder)
+     */
+    public static void indent(@Nonnull CharSequence str, @Nullable String indentation, @Nonnull Appendable out) throws IOException {
+        if (indentation == null)
+            indentation = "";
+
+        int length = str.length();
+        if (length == 0) {
+            out.append(indentation);
+            return;
+        }
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            char c = 0;
+            while (end < length && (c = str.charAt(end)) != '\n' && c != '\r') {
+                end++;
+            }
+            if (start > 0) {
+                out.append(LINE_BREAK);
+            }
+            out.append(indentation).append(str, start, end);
+            if (c == '\r' && end + 1 < length && str.charAt(end + 1) == '\n') {
+                end++;
+            }
+            start = end + 1;
+        }
     }
 
     @Nullable
@@ -107,22 +160,128 @@ public class Strings2 {
         return (o != null) ? toString(o) : nullDefault;
     }
 
+    /**
+     * Return the string representation of the given object, arrays (including primitive and nested arrays) being
+     * rendered as <code>[a, b, c]</code> and <code>null</code> as {@value #NULL}.
+     */
     @Nonnull
     public static String toString(@Nullable Object o) {
         if (o == null)
-            return "#null#";
-        String str = "";
-
-        if (o.getClass().isArray()) {
-            str += "[";
-            for (int i = 0; i < Array.getLength(o); i++) {
-                str += toString(Array.get(o, i));
-                if (i < Array.getLength(o) - 1)
-                    str += ", ";
+            return NULL;
+        if (o instanceof String)
+            return (String) o;
+        if (!o.getClass().isArray())
+            return o.toString();
+
+        return appendTo(o, new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the {@linkplain #toString(Object) string representation} of the given object to <code>out</code>.
+     */
+    @Nonnull
+    public static StringBuilder appendTo(@Nullable Object o, @Nonnull StringBuilder out) {
+        try {
+            appendTo(o, (Appendable) out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected exception appending to a StringBuilder", e);
+        }
+        return out;
+    }
+
+    /**
+     * @see #appendTo(Object, StringBuilder)
+     */
+    public static void appendTo(@Nullable Object o, @Nonnull Appendable out) throws IOException {
+        if (o == null) {
+            out.append(NULL);
+        } else if (o instanceof CharSequence) {
+            out.append((CharSequence) o);
+        } else if (!o.getClass().isArray()) {
+            out.append(o.toString());
+        } else if (o instanceof Object[]) {
+            Object[] array = (Object[]) o;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    out.append(", ");
+                appendTo(array[i], out);
+            }
+            out.append(']');
+        } else if (o instanceof long[]) {
+            long[] array = (long[]) o;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    out.append(", ");
+                out.append(Long.toString(array[i]));
+            }
+            out.append(']');
+        } else if (o instanceof int[]) {
+            int[] array = (int[]) o;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    out.append(", ");
+                out.append(Integer.toString(array[i]));
+            }
+            out.append(']');
+        } else if (o instanceof double[]) {
+            double[] array = (double[]) o;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    out.append(", ");
+                out.append(Double.toString(array[i]));
+            }
+            out.append(']');
+        } else if (o instanceof boolean[]) {
+            boolean[] array = (boolean[]) o;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    out.append(", ");
+                out.append(array[i] ? "true" : "false");
+            }
+            out.append(']');
+        } else if (o instanceof char[]) {
+            char[] array = (char[]) o;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    out.append(", ");
+                out.append(array[i]);
+            }
+            out.append(']');
+        } else if (o instanceof byte[]) {
+            byte[] array = (byte[]) o;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    out.append(", ");
+                out.append(Byte.toString(array[i]));
+            }
+            out.append(']');
+        } else if (o instanceof short[]) {
+            short[] array = (short[]) o;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    out.append(", ");
+                out.append(Short.toString(array[i]));
+            }
+            out.append(']');
+        } else if (o instanceof float[]) {
+            float[] array = (float[]) o;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    out.append(", ");
+                out.append(Float.toString(array[i]));
             }
+            out.append(']');
         } else {
-            str += o.toString();
+            throw new IllegalArgumentException("Unsupported array type " + o.getClass());
         }
-        return str;
     }
 }
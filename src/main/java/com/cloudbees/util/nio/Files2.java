@@ -16,8 +16,15 @@
 package com.cloudbees.util.nio;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.*;
+import java.lang.reflect.Array;
 import java.nio.charset.Charset;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * File Utils.
@@ -53,6 +60,129 @@ public class Files2 {
 
     }
 
+    /**
+     * Return the existing files matching the given path <code>pattern</code>. The wildcards <code>*</code> and
+     * <code>?</code> can be used in any segment of the path (e.g. <code>/var/run/tomcat-*&#47;catalina.pid</code>).
+     *
+     * @return the matching files sorted by path, empty if none matches
+     */
+    @Nonnull
+    public static List<File> glob(@Nonnull String pattern) {
+        String normalizedPattern = pattern.replace('\\', '/');
+        List<File> files = new ArrayList<File>();
+        if (normalizedPattern.indexOf('*') == -1 && normalizedPattern.indexOf('?') == -1) {
+            File file = new File(pattern);
+            if (file.exists()) {
+                files.add(file);
+            }
+            return files;
+        }
+
+        List<File> candidates = new ArrayList<File>();
+        String[] segments = normalizedPattern.split("/");
+        int firstSegment = 0;
+        if (normalizedPattern.startsWith("/")) {
+            candidates.add(new File("/"));
+            firstSegment = 1;
+        } else if (segments[0].endsWith(":")) {
+            // windows drive
+            candidates.add(new File(segments[0] + File.separator));
+            firstSegment = 1;
+        } else {
+            candidates.add(null);
+        }
+
+        for (int i = firstSegment; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.length() == 0 || segment.equals(".")) {
+                continue;
+            }
+            List<File> matches = new ArrayList<File>();
+            if (segment.indexOf('*') == -1 && segment.indexOf('?') == -1) {
+                for (File candidate : candidates) {
+                    File file = new File(candidate, segment);
+                    if (file.exists()) {
+                        matches.add(file);
+                    }
+                }
+            } else {
+                final Pattern segmentPattern = Pattern.compile(globToRegex(segment));
+                for (File candidate : candidates) {
+                    File[] children = (candidate == null ? new File(".") : candidate).listFiles(new FilenameFilter() {
+                        @Override
+                        public boolean accept(File dir, String name) {
+                            return segmentPattern.matcher(name).matches();
+                        }
+                    });
+                    if (children != null) {
+                        for (File child : children) {
+                            matches.add(candidate == null ? new File(child.getName()) : child);
+                        }
+                    }
+                }
+            }
+            candidates = matches;
+        }
+        for (File candidate : candidates) {
+            if (candidate != null) {
+                files.add(candidate);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    @Nonnull
+    private static String globToRegex(@Nonnull String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Return the name of the owner of the given file, read with <code>java.nio.file.Files#getOwner()</code> by
+     * reflection as it requires Java 7.
+     *
+     * @return <code>null</code> if the owner can not be read (e.g. Java 6)
+     */
+    @Nullable
+    public static String getOwner(@Nonnull File file) {
+        try {
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Object linkOptions = Array.newInstance(Class.forName("java.nio.file.LinkOption"), 0);
+            Object path = File.class.getMethod("toPath").invoke(file);
+            Object owner = Class.forName("java.nio.file.Files").getMethod("getOwner", pathClass, linkOptions.getClass()).invoke(null, path, linkOptions);
+            return ((Principal) owner).getName();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Return <code>true</code> if the given file is owned by the user running this JVM (<code>user.name</code>), or
+     * if its owner can not be read.
+     */
+    public static boolean isOwnedByCurrentUser(@Nonnull File file) {
+        String owner = getOwner(file);
+        String user = System.getProperty("user.name");
+        // windows owners are qualified by their domain
+        return owner == null || owner.equals(user) || owner.endsWith("\\" + user);
+    }
+
     /**
      * Copy the given inputstream to the given outputstream.
      */
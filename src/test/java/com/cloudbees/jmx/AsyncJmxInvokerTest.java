@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.model.MockSimpleJmxBean;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class AsyncJmxInvokerTest {
+
+    public interface SlowMBean {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    static MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    static ObjectName simpleObjectName;
+    static ObjectName slowObjectName;
+
+    AsyncJmxInvoker asyncJmxInvoker;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        simpleObjectName = new ObjectName("test-async:type=SimpleJmxBean");
+        MockSimpleJmxBean mockSimpleJmxBean = new MockSimpleJmxBean();
+        mockSimpleJmxBean.setZeAttribute("zeValue");
+        mbeanServer.registerMBean(mockSimpleJmxBean, simpleObjectName);
+        slowObjectName = new ObjectName("test-async:type=Slow");
+        mbeanServer.registerMBean(new StandardMBean(new SlowMBean() {
+            @Override
+            public void sleep(long millis) throws InterruptedException {
+                Thread.sleep(millis);
+            }
+        }, SlowMBean.class), slowObjectName);
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        mbeanServer.unregisterMBean(simpleObjectName);
+        mbeanServer.unregisterMBean(slowObjectName);
+    }
+
+    @Before
+    public void before() {
+        asyncJmxInvoker = new AsyncJmxInvoker(new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) {
+                return mbeanServer;
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        asyncJmxInvoker.close();
+    }
+
+    @Test
+    public void callback_receives_result() throws Exception {
+        final AtomicReference<Object> value = new AtomicReference<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        asyncJmxInvoker.invokeAttribute("12345", simpleObjectName, "ZeAttribute", null).addCallback(new InvocationFuture.Callback<JmxInvoker.Result>() {
+            @Override
+            public void onSuccess(JmxInvoker.Result result) {
+                value.set(result.value);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                value.set(throwable);
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertThat(value.get(), is((Object) "zeValue"));
+    }
+
+    @Test
+    public void failure_is_reported() throws Exception {
+        try {
+            asyncJmxInvoker.invokeAttribute("12345", simpleObjectName, "DoesNotExist", null).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalArgumentException.class));
+        }
+    }
+
+    @Test
+    public void slow_invocation_times_out() throws Exception {
+        asyncJmxInvoker.setTimeoutInMillis(100L);
+        InvocationFuture<JmxInvoker.Result> future = asyncJmxInvoker.invokeOperation("12345", slowObjectName, "sleep", "60000");
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TimeoutException.class));
+        }
+
+        // the interrupted thread is reused
+        asyncJmxInvoker.setTimeoutInMillis(null);
+        assertThat(asyncJmxInvoker.invokeAttribute("12345", simpleObjectName, "ZeAttribute", null).get(10, TimeUnit.SECONDS).value, is((Object) "zeValue"));
+    }
+
+    @Test
+    public void cancelled_invocation_notifies_callback() throws Exception {
+        InvocationFuture<JmxInvoker.Result> future = asyncJmxInvoker.invokeOperation("12345", slowObjectName, "sleep", "60000");
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        future.addCallback(new InvocationFuture.Callback<JmxInvoker.Result>() {
+            @Override
+            public void onSuccess(JmxInvoker.Result result) {
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                failure.set(throwable);
+            }
+        });
+        assertTrue(future.cancel(true));
+        assertThat(failure.get(), instanceOf(CancellationException.class));
+    }
+}
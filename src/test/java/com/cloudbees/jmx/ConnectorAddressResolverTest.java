@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.util.nio.Files2;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class ConnectorAddressResolverTest {
+
+    File cacheDir;
+
+    int attachments;
+
+    long creationTime = 1000;
+
+    @Before
+    public void before() throws Exception {
+        cacheDir = File.createTempFile("connector-address-", "");
+        cacheDir.delete();
+    }
+
+    @After
+    public void after() throws Exception {
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+    }
+
+    boolean cacheOwnedByCurrentUser = true;
+
+    ConnectorAddressResolver newResolver(File cacheDir) {
+        return new ConnectorAddressResolver(cacheDir) {
+            @Override
+            protected String attachAndResolve(String pid) throws IOException {
+                attachments++;
+                return "service:jmx:rmi://127.0.0.1/stub/" + pid + "-" + attachments;
+            }
+
+            @Override
+            protected Long getCreationTime(String pid) {
+                return creationTime;
+            }
+
+            @Override
+            protected boolean isOwnedByCurrentUser(File cacheFile) {
+                return cacheOwnedByCurrentUser;
+            }
+        };
+    }
+
+    @Test
+    public void cached_address_skips_attach() throws Exception {
+        assertThat(newResolver(cacheDir).resolve("123"), is("service:jmx:rmi://127.0.0.1/stub/123-1"));
+        assertThat(newResolver(cacheDir).resolve("123"), is("service:jmx:rmi://127.0.0.1/stub/123-1"));
+        assertThat(attachments, is(1));
+    }
+
+    @Test
+    public void new_jvm_with_same_pid_is_attached() throws Exception {
+        ConnectorAddressResolver resolver = newResolver(cacheDir);
+        resolver.resolve("123");
+        creationTime = 2000;
+        assertThat(resolver.resolve("123"), is("service:jmx:rmi://127.0.0.1/stub/123-2"));
+        assertThat(resolver.resolve("123"), is("service:jmx:rmi://127.0.0.1/stub/123-2"));
+        assertThat(attachments, is(2));
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        ConnectorAddressResolver resolver = newResolver(cacheDir);
+        resolver.resolve("123");
+        assertThat(resolver.invalidate("123"), is(true));
+        assertThat(resolver.invalidate("123"), is(false));
+        resolver.resolve("123");
+        assertThat(attachments, is(2));
+    }
+
+    @Test
+    public void no_cache_dir() throws Exception {
+        ConnectorAddressResolver resolver = newResolver(null);
+        resolver.resolve("123");
+        resolver.resolve("123");
+        assertThat(attachments, is(2));
+        assertThat(resolver.invalidate("123"), is(false));
+    }
+
+    @Test
+    public void cache_of_another_user_is_ignored() throws Exception {
+        newResolver(cacheDir).resolve("123");
+        cacheOwnedByCurrentUser = false;
+        assertThat(newResolver(cacheDir).resolve("123"), is("service:jmx:rmi://127.0.0.1/stub/123-2"));
+        assertThat(attachments, is(2));
+    }
+
+    @Test
+    public void cache_is_owned_by_current_user() throws Exception {
+        newResolver(cacheDir).resolve("123");
+        File cacheFile = new File(cacheDir, "connector-address-123.properties");
+        assertThat(Files2.isOwnedByCurrentUser(cacheFile), is(true));
+        String owner = Files2.getOwner(cacheFile);
+        assertThat(owner == null || owner.endsWith(System.getProperty("user.name")), is(true));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class CounterRatesTest {
+
+    static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void delta_and_rate_of_long_counter() {
+        CounterRates counterRates = new CounterRates();
+        long key = CounterRates.key(0, 0);
+        assertThat(counterRates.update(key, 100L, 0), nullValue());
+
+        CounterRates.Delta delta = counterRates.update(key, 150L, 2 * ONE_SECOND);
+        assertThat(delta.getDelta(), is((Number) 50L));
+        assertThat(delta.getRatePerSecond(), is(25.0));
+        assertThat(delta.isReset(), is(false));
+    }
+
+    @Test
+    public void counter_reset() {
+        CounterRates counterRates = new CounterRates();
+        long key = CounterRates.key(0, 0);
+        counterRates.update(key, 100, 0);
+
+        CounterRates.Delta delta = counterRates.update(key, 10, ONE_SECOND);
+        assertThat(delta.isReset(), is(true));
+        assertThat(delta.getDelta(), is((Number) 10L));
+
+        delta = counterRates.update(key, 15, 2 * ONE_SECOND);
+        assertThat(delta.isReset(), is(false));
+        assertThat(delta.getDelta(), is((Number) 5L));
+    }
+
+    @Test
+    public void double_counter_and_non_numeric_values() {
+        CounterRates counterRates = new CounterRates();
+        long key = CounterRates.key(0, 1);
+        counterRates.update(key, 1.5, 0);
+        assertThat(counterRates.update(key, 3.0, ONE_SECOND / 2).getRatePerSecond(), is(3.0));
+
+        assertThat(counterRates.update(CounterRates.key(0, 2), "a string", 0), nullValue());
+        assertThat(counterRates.update(CounterRates.key(0, 2), "a string", ONE_SECOND), nullValue());
+    }
+
+    @Test
+    public void many_counters() {
+        CounterRates counterRates = new CounterRates(2);
+        for (int mbean = 0; mbean < 1000; mbean++) {
+            for (int attribute = 0; attribute < 3; attribute++) {
+                counterRates.update(CounterRates.key(mbean, attribute), mbean * 10 + attribute, 0);
+            }
+        }
+        assertThat(counterRates.size(), is(3000));
+        for (int mbean = 0; mbean < 1000; mbean++) {
+            for (int attribute = 0; attribute < 3; attribute++) {
+                assertThat(counterRates.update(CounterRates.key(mbean, attribute), mbean * 10 + attribute + mbean, ONE_SECOND).getDelta(),
+                        is((Number) (long) mbean));
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.model.MockSimpleJmxBean;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class JmxInvokerDaemonTest {
+
+    static MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    static MockSimpleJmxBean mockSimpleJmxBean = new MockSimpleJmxBean();
+    static ObjectName mockSimpleBeanObjectName;
+    static JmxInvokerDaemon daemon;
+    static File tokenDir;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        mockSimpleBeanObjectName = new ObjectName("test-daemon:type=SimpleJmxBean");
+        mbeanServer.registerMBean(mockSimpleJmxBean, mockSimpleBeanObjectName);
+
+        tokenDir = File.createTempFile("jmx-invoker-daemon-", "");
+        tokenDir.delete();
+        tokenDir.mkdir();
+        daemon = new JmxInvokerDaemon(0, 2, tokenDir) {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return mbeanServer;
+            }
+        };
+        Thread thread = new Thread("test-jmx-invoker-daemon") {
+            @Override
+            public void run() {
+                daemon.run();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        daemon.close();
+        tokenDir.delete();
+        mbeanServer.unregisterMBean(mockSimpleBeanObjectName);
+    }
+
+    @Test
+    public void testGetAttribute() throws Exception {
+        mockSimpleJmxBean.setZeAttribute("aValueReadByTheDaemon");
+        String[] args = {"-p", "12345", "-on", mockSimpleBeanObjectName.toString(), "-attr", "ZeAttribute"};
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean success = JmxInvokerDaemon.sendRequest(tokenDir, daemon.getLocalPort(), args, new PrintStream(out, true));
+
+        Assert.assertTrue(success);
+        assertThat(out.toString(), containsString("aValueReadByTheDaemon"));
+    }
+
+    @Test
+    public void testArgumentWithLineBreaks() throws Exception {
+        String[] args = {"-p", "12345", "-on", mockSimpleBeanObjectName.toString(), "-attr", "ZeAttribute", "a\nb\\n\r\nc"};
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean success = JmxInvokerDaemon.sendRequest(tokenDir, daemon.getLocalPort(), args, new PrintStream(out, true));
+
+        Assert.assertTrue(out.toString(), success);
+        Assert.assertEquals("a\nb\\n\r\nc", mockSimpleJmxBean.getZeAttribute());
+    }
+
+    @Test
+    public void testPathsRelativeToClientWorkingDirectory() throws Exception {
+        File workingDirectory = new File(tokenDir, "client");
+        workingDirectory.mkdir();
+        try {
+            String[] args = {"-p", "12345", "-on", mockSimpleBeanObjectName.toString(), "-attr", "ZeAttribute", "--cache-dir", "cache"};
+            StringWriter out = new StringWriter();
+            Assert.assertTrue(out.toString(), daemon.process(args, workingDirectory, new PrintWriter(out)));
+            File[] cacheFiles = new File(workingDirectory, "cache").listFiles();
+            Assert.assertNotNull(cacheFiles);
+            Assert.assertEquals(1, cacheFiles.length);
+            cacheFiles[0].delete();
+        } finally {
+            new File(workingDirectory, "cache").delete();
+            workingDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testEscape() throws Exception {
+        for (String value : new String[]{"", "abc", "a\nb", "\\n", "\\", "c:\\temp\\new\r\n"}) {
+            String escaped = JmxInvokerDaemon.escape(value);
+            Assert.assertEquals(-1, escaped.indexOf('\n'));
+            Assert.assertEquals(-1, escaped.indexOf('\r'));
+            Assert.assertEquals(value, JmxInvokerDaemon.unescape(escaped));
+        }
+    }
+
+    @Test
+    public void testInvalidInvocation() throws Exception {
+        String[] args = {"-on", mockSimpleBeanObjectName.toString(), "-attr", "ZeAttribute"};
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean success = JmxInvokerDaemon.sendRequest(tokenDir, daemon.getLocalPort(), args, new PrintStream(out, true));
+
+        Assert.assertFalse(success);
+        assertThat(out.toString(), containsString("INVALID INVOCATION"));
+    }
+
+    @Test
+    public void testInvalidToken() throws Exception {
+        File tokenFile = JmxInvokerDaemon.getTokenFile(tokenDir, daemon.getLocalPort());
+        Assert.assertTrue(tokenFile.canRead());
+
+        File otherTokenDir = new File(tokenDir, "other");
+        otherTokenDir.mkdir();
+        File otherTokenFile = JmxInvokerDaemon.getTokenFile(otherTokenDir, daemon.getLocalPort());
+        FileWriter writer = new FileWriter(otherTokenFile);
+        writer.write("invalid");
+        writer.close();
+        try {
+            mockSimpleJmxBean.setZeAttribute("notUpdated");
+            String[] args = {"-p", "12345", "-on", mockSimpleBeanObjectName.toString(), "-attr", "ZeAttribute", "updated"};
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            boolean success = JmxInvokerDaemon.sendRequest(otherTokenDir, daemon.getLocalPort(), args, new PrintStream(out, true));
+
+            Assert.assertFalse(success);
+            assertThat(out.toString(), containsString("INVALID TOKEN"));
+            Assert.assertEquals("notUpdated", mockSimpleJmxBean.getZeAttribute());
+        } finally {
+            otherTokenFile.delete();
+            otherTokenDir.delete();
+        }
+    }
+
+    @Test
+    public void testIOExceptionAfterInvocationNotRetried() throws Exception {
+        final AtomicInteger invocations = new AtomicInteger();
+        // connection losing the response of the operations
+        final MBeanServerConnection brokenConnection = (MBeanServerConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{MBeanServerConnection.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        Object result;
+                        try {
+                            result = method.invoke(mbeanServer, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                        if ("invoke".equals(method.getName())) {
+                            invocations.incrementAndGet();
+                            throw new IOException("Connection lost");
+                        }
+                        return result;
+                    }
+                });
+        JmxInvokerDaemon brokenDaemon = new JmxInvokerDaemon(0, 1, tokenDir) {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return brokenConnection;
+            }
+        };
+        try {
+            String[] args = {"-p", "12345", "-on", mockSimpleBeanObjectName.toString(), "-op", "overloaded", "abc"};
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            boolean success = brokenDaemon.process(args, tokenDir, new java.io.PrintWriter(out, true));
+
+            Assert.assertEquals(1, invocations.get());
+            Assert.assertTrue(out.toString(), success);
+            assertThat(out.toString(), containsString("Connection lost"));
+        } finally {
+            brokenDaemon.close();
+        }
+    }
+}
@@ -17,18 +17,38 @@ package com.cloudbees.jmx;
 
 import com.cloudbees.jmx.model.MockMemoryPool;
 import com.cloudbees.jmx.model.MockSimpleJmxBean;
+import com.cloudbees.jmx.perfdata.PerfData;
 import org.junit.AfterClass;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 
 import javax.management.MBeanServer;
 import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
@@ -63,6 +83,30 @@ public class JmxInvokerTest {
         System.out.println(actual);
     }
 
+    @Test
+    public void testInvokeOverloadedOperation() throws Exception {
+        JmxInvoker jmxInvoker = new JmxInvoker();
+        Assert.assertEquals("String abc", jmxInvoker.invokeOperation(mbeanServer, mockSimpleBeanObjectName, "overloaded", "abc").value);
+        Assert.assertEquals("int 42", jmxInvoker.invokeOperation(mbeanServer, mockSimpleBeanObjectName, "overloaded", "42").value);
+        Assert.assertEquals("boolean true", jmxInvoker.invokeOperation(mbeanServer, mockSimpleBeanObjectName, "overloaded", "true").value);
+        Assert.assertEquals("String, String a, b", jmxInvoker.invokeOperation(mbeanServer, mockSimpleBeanObjectName, "overloaded", "a", "b").value);
+        Assert.assertEquals("String null",
+                jmxInvoker.invokeOperation(mbeanServer, mockSimpleBeanObjectName, "overloaded", JmxInvoker.NULL_VALUE).value);
+
+        try {
+            jmxInvoker.invokeOperation(mbeanServer, mockSimpleBeanObjectName, "ambiguous", "42");
+            Assert.fail("int and long overloads should be ambiguous for 42");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("More than 1 (2) operation 'ambiguous(42)'"));
+        }
+        try {
+            jmxInvoker.invokeOperation(mbeanServer, mockSimpleBeanObjectName, "ambiguous", "abc");
+            Assert.fail("no overload accepts abc");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("No operation 'ambiguous(abc)' accepting these arguments"));
+        }
+    }
+
     @Test
     public void testSetStringAttribute() throws Exception {
         JmxInvoker jmxInvoker = new JmxInvoker();
@@ -111,6 +155,47 @@ public class JmxInvokerTest {
         Assert.assertEquals(actual.value, "aValueToRead");
     }
 
+    @Test
+    public void testGetMultipleAttributes() throws Exception {
+        JmxInvoker jmxInvoker = new JmxInvoker();
+        mockSimpleJmxBean.setZeAttribute("aValueToRead");
+        mockSimpleJmxBean.setIntAttribute(7);
+        String[] attributeNames = {"ZeAttribute", " IntAttribute "};
+        JmxInvoker.Result actual = jmxInvoker.invokeAttributes(mbeanServer, mockSimpleBeanObjectName, attributeNames);
+        Map<String, Object> values = (Map<String, Object>) actual.value;
+        Assert.assertEquals(Arrays.asList("ZeAttribute", "IntAttribute"), new ArrayList<String>(values.keySet()));
+        Assert.assertEquals(" IntAttribute ", attributeNames[1]);
+        Assert.assertEquals("aValueToRead", values.get("ZeAttribute"));
+        Assert.assertEquals(7, values.get("IntAttribute"));
+    }
+
+    @Test
+    public void testGetAllAttributes() throws Exception {
+        JmxInvoker jmxInvoker = new JmxInvoker();
+        JmxInvoker.Result actual = jmxInvoker.invokeAttributes(mbeanServer, mockEdenSpacePoolObjectName, JmxInvoker.ALL_ATTRIBUTES);
+        Map<String, Object> values = (Map<String, Object>) actual.value;
+        Assert.assertEquals(3, values.size());
+        Assert.assertEquals("PS Eden Space", values.get("Name"));
+    }
+
+    @Test
+    public void testMainGetMultipleAttributes() throws Exception {
+        String[] args = {"-p", "12345", "-on", mockSimpleBeanObjectName.toString(), "-attr", "ZeAttribute,IntAttribute"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+
+        JmxInvoker jmxInvoker = new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return mbeanServer;
+            }
+        };
+        Map<ObjectName, JmxInvoker.Result> results = jmxInvoker.process(arguments);
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(2, ((Map<?, ?>) results.get(mockSimpleBeanObjectName).value).size());
+    }
+
     @Test
     public void testMainInvokeOperation() throws Exception {
         String[] args = {"-v", "-p", "12345", "-on", mockSimpleBeanObjectName.toString(), "-op", "anOperation", "str1", "false", "true", "1", "2"};
@@ -145,6 +230,203 @@ public class JmxInvokerTest {
         System.out.println(results);
     }
 
+    @Test
+    public void testMainListMbeansConcurrently() throws Exception {
+        String[] args = {"-p", "12345", "-on", mockSimpleBeanObjectName.getDomain() + ":*", "-attr", "*", "--parallelism", "4", "--timeout", "10000"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+
+        JmxInvoker jmxInvoker = new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return mbeanServer;
+            }
+        };
+        Map<ObjectName, JmxInvoker.Result> results = jmxInvoker.process(arguments);
+        Assert.assertEquals(Arrays.asList(mockEdenSpacePoolObjectName, mockSimpleBeanObjectName), new ArrayList<ObjectName>(results.keySet()));
+        Assert.assertEquals("PS Eden Space", ((Map<?, ?>) results.get(mockEdenSpacePoolObjectName).value).get("Name"));
+    }
+
+    @Test
+    public void testMainListMbeansStreaming() throws Exception {
+        String[] args = {"-p", "12345", "-on", mockSimpleBeanObjectName.getDomain() + ":*", "-l", "--parallelism", "2"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+
+        JmxInvoker jmxInvoker = new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return mbeanServer;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jmxInvoker.processAll(arguments, new TextResultWriter(out));
+
+        String expected = mockEdenSpacePoolObjectName + "\n" + mockSimpleBeanObjectName + "\n";
+        Assert.assertEquals(expected, out.toString().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        String[] args = {"-p", "12345", "-on", mockEdenSpacePoolObjectName.toString(), "-attr", "Usage", "--select", "Usage.used,Usage.max", "--output", "ndjson"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+        arguments.cmdLineParser = parser;
+        JmxInvoker.checkArguments(arguments);
+
+        JmxInvoker jmxInvoker = new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return mbeanServer;
+            }
+        };
+        StringWriter out = new StringWriter();
+        jmxInvoker.processAll(arguments, arguments.outputFormat.newResultWriter(new PrintWriter(out)));
+
+        String actual = out.toString();
+        Assert.assertTrue(actual, actual.contains("\"value\":{\"Usage.used\":87359488,\"Usage.max\":88997888}"));
+
+        Map<ObjectName, JmxInvoker.Result> results = jmxInvoker.process("12345", arguments);
+        Assert.assertEquals("Get values " + mockEdenSpacePoolObjectName + "\n\tUsage.used: 87359488\n\tUsage.max: 88997888",
+                results.get(mockEdenSpacePoolObjectName).description.replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void testProcessAllCompletesOutputOnFailure() throws Exception {
+        String[] args = {"-p", "12345", "-on", mockEdenSpacePoolObjectName.toString(), "-attr", "Usage", "--output", "json"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+
+        JmxInvoker jmxInvoker = new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                throw new IOException("connection refused");
+            }
+        };
+        StringWriter out = new StringWriter();
+        try {
+            jmxInvoker.processAll(arguments, arguments.outputFormat.newResultWriter(new PrintWriter(out)));
+            Assert.fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        String actual = out.toString().trim();
+        Assert.assertTrue(actual, actual.startsWith("[") && actual.endsWith("]"));
+    }
+
+    @Test
+    public void testMainGetAttributeNdjson() throws Exception {
+        String[] args = {"-p", "12345", "-on", mockEdenSpacePoolObjectName.toString(), "-attr", "Usage", "--output", "ndjson"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+
+        JmxInvoker jmxInvoker = new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return mbeanServer;
+            }
+        };
+        StringWriter out = new StringWriter();
+        jmxInvoker.processAll(arguments, arguments.outputFormat.newResultWriter(new PrintWriter(out)));
+
+        String actual = out.toString();
+        Assert.assertTrue(actual, actual.startsWith("{\"pid\":\"12345\",\"objectName\":\"" + mockEdenSpacePoolObjectName + "\"," +
+                "\"value\":{\"committed\":87359488,\"init\":16318464,\"max\":88997888,\"used\":87359488},\"durationMillis\":"));
+        Assert.assertEquals(1, actual.trim().split("\n").length);
+    }
+
+    @Test
+    public void testMainInvokeSeveralJvms() throws Exception {
+        String[] args = {"-p", "12345,12346", "-on", mockSimpleBeanObjectName.toString(), "-attr", "ZeAttribute"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+
+        JmxInvoker jmxInvoker = new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return mbeanServer;
+            }
+        };
+        Map<String, Map<ObjectName, JmxInvoker.Result>> results = jmxInvoker.processAll(arguments);
+        Assert.assertEquals(Arrays.asList("12345", "12346"), new ArrayList<String>(results.keySet()));
+        Assert.assertEquals("12346", results.get("12346").get(mockSimpleBeanObjectName).pid);
+    }
+
+    @Test
+    public void testSample() throws Exception {
+        String[] args = {"-p", "12345", "-on", mockSimpleBeanObjectName.toString(), "-attr", "IntAttribute", "--interval", "10", "--count", "3"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+        mockSimpleJmxBean.setIntAttribute(5);
+
+        JmxInvoker jmxInvoker = new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return mbeanServer;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jmxInvoker.sample("12345", arguments, new PrintStream(out, true));
+
+        String[] lines = out.toString().split("\n");
+        Assert.assertEquals(3, lines.length);
+        Assert.assertTrue(lines[0], lines[0].endsWith("\t" + mockSimpleBeanObjectName + "\tIntAttribute=5"));
+    }
+
+    @Test
+    public void testTimings() throws Exception {
+        JmxInvoker jmxInvoker = new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return mbeanServer;
+            }
+        };
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        arguments.objectName = mockSimpleBeanObjectName;
+        arguments.attribute = new String[]{"IntAttribute"};
+        jmxInvoker.process("12345", arguments);
+
+        Timings timings = jmxInvoker.getTimings();
+        Assert.assertEquals(1, timings.get(Timings.Phase.QUERY).getCount());
+        Assert.assertEquals(1, timings.get(Timings.Phase.INVOKE).getCount());
+        Assert.assertEquals(1, timings.get(Timings.Phase.GET_MBEAN_INFO).getCount());
+        Assert.assertEquals(0, timings.get(Timings.Phase.ATTACH).getCount());
+    }
+
+    @Test
+    public void testSampleRate() throws Exception {
+        String[] args = {"-p", "12345", "-on", mockSimpleBeanObjectName.toString(), "-attr", "IntAttribute,ZeAttribute", "--interval", "10", "--count", "2", "--rate"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+        arguments.cmdLineParser = parser;
+        JmxInvoker.checkArguments(arguments);
+        mockSimpleJmxBean.setIntAttribute(5);
+        mockSimpleJmxBean.setZeAttribute("aValue");
+
+        JmxInvoker jmxInvoker = new JmxInvoker() {
+            @Override
+            protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+                return mbeanServer;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jmxInvoker.sample("12345", arguments, new PrintStream(out, true));
+
+        String[] lines = out.toString().split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0], lines[0].endsWith("\tIntAttribute=5\tZeAttribute=aValue"));
+        Assert.assertTrue(lines[1], lines[1].contains("\tIntAttribute=5\tIntAttribute.delta=0\tIntAttribute.rate=0.000\tZeAttribute=aValue"));
+    }
+
     @Test
     public void testMainDescribeMbean() throws Exception {
         String[] args = {"-v", "-p", "12345", "-on", mockSimpleBeanObjectName.toString(), "-d",};
@@ -174,4 +456,222 @@ public class JmxInvokerTest {
 
         System.out.println(arguments.objectName);
     }
+
+    @Test
+    public void testPerfCounters() throws Exception {
+        String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        Assume.assumeNotNull(PerfData.findFile(pid));
+
+        JmxInvoker jmxInvoker = new JmxInvoker();
+        jmxInvoker.setPerfCounters(true);
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        arguments.pid = pid;
+        arguments.objectName = new ObjectName(ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",*");
+        arguments.attribute = new String[]{"CollectionCount,CollectionTime"};
+
+        Map<ObjectName, JmxInvoker.Result> results = jmxInvoker.process(pid, arguments);
+        Assert.assertEquals(ManagementFactory.getGarbageCollectorMXBeans().size(), results.size());
+        for (JmxInvoker.Result result : results.values()) {
+            Assert.assertNull(result.exception);
+        }
+    }
+
+    @Test
+    public void testServiceUrlWithConnectionProvider() throws Exception {
+        JMXConnectorServer connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://127.0.0.1"), null, mbeanServer);
+        connectorServer.start();
+        PooledConnectionProvider connectionProvider = new PooledConnectionProvider();
+        try {
+            String url = connectorServer.getAddress().toString();
+            JmxInvoker jmxInvoker = new JmxInvoker();
+            jmxInvoker.setConnectionProvider(connectionProvider);
+            JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+            arguments.url = url;
+            arguments.objectName = mockEdenSpacePoolObjectName;
+            arguments.attribute = new String[]{"CollectionUsageThreshold"};
+
+            for (int i = 0; i < 2; i++) {
+                Map<ObjectName, JmxInvoker.Result> results = jmxInvoker.process(url, arguments);
+                Assert.assertEquals(1, results.size());
+                Assert.assertNull(results.get(mockEdenSpacePoolObjectName).exception);
+            }
+        } finally {
+            connectionProvider.close();
+            connectorServer.stop();
+        }
+    }
+
+    public interface EmitterMBean {
+    }
+
+    public static class Emitter extends NotificationBroadcasterSupport implements EmitterMBean {
+    }
+
+    @Test
+    public void testListen() throws Exception {
+        ObjectName emitterObjectName = new ObjectName("test-listen:type=Emitter");
+        final Emitter emitter = new Emitter();
+        mbeanServer.registerMBean(emitter, emitterObjectName);
+        Thread emitterThread = new Thread() {
+            @Override
+            public void run() {
+                for (long sequence = 0; !isInterrupted(); sequence++) {
+                    emitter.sendNotification(new Notification("test.tick", "test-listen:type=Emitter", sequence, "tick"));
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        emitterThread.start();
+        try {
+            JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+            arguments.objectName = new ObjectName("test-listen:*");
+            arguments.listen = true;
+            arguments.count = 2;
+            StringWriter out = new StringWriter();
+            new JmxInvoker() {
+                @Override
+                protected MBeanServerConnection connectToMbeanServer(String pid) {
+                    return mbeanServer;
+                }
+            }.listen(Arrays.asList("12345"), arguments, out);
+
+            String[] lines = out.toString().split("\n");
+            Assert.assertTrue(lines.length >= 2);
+            Assert.assertTrue(lines[0], lines[0].contains("\t12345\ttest-listen:type=Emitter\ttest.tick\t"));
+        } finally {
+            emitterThread.interrupt();
+            mbeanServer.unregisterMBean(emitterObjectName);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testListenEndsWhenConnectionIsLost() throws Exception {
+        ObjectName emitterObjectName = new ObjectName("test-listen-lost:type=Emitter");
+        final CountDownLatch listened = new CountDownLatch(1);
+        mbeanServer.registerMBean(new Emitter() {
+            @Override
+            public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+                super.addNotificationListener(listener, filter, handback);
+                listened.countDown();
+            }
+        }, emitterObjectName);
+        JMXConnectorServer connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://127.0.0.1"), null, mbeanServer);
+        connectorServer.start();
+        try {
+            JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+            arguments.objectName = new ObjectName("test-listen-lost:*");
+            arguments.listen = true;
+            final BlockingQueue<JMXConnector> jmxConnectors = new LinkedBlockingQueue<JMXConnector>();
+            Thread closer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        JMXConnector jmxConnector = jmxConnectors.take();
+                        listened.await();
+                        // let listen() register its connection listener
+                        Thread.sleep(200);
+                        jmxConnector.close();
+                    } catch (Exception e) {
+                        // listen never ends, test times out
+                    }
+                }
+            };
+            closer.start();
+            new JmxInvoker() {
+                @Override
+                protected JMXConnector newJmxConnector(String pid) throws IOException {
+                    JMXConnector jmxConnector = super.newJmxConnector(pid);
+                    jmxConnectors.add(jmxConnector);
+                    return jmxConnector;
+                }
+            }.listen(Arrays.asList(connectorServer.getAddress().toString()), arguments, new StringWriter());
+        } finally {
+            connectorServer.stop();
+            mbeanServer.unregisterMBean(emitterObjectName);
+        }
+    }
+
+    @Test
+    public void testListenArguments() throws Exception {
+        String[] args = {"-p", "12345", "-on", "java.lang:type=GarbageCollector,*", "--listen", "--count", "10"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+        arguments.cmdLineParser = parser;
+        JmxInvoker.checkArguments(arguments);
+
+        arguments.attribute = new String[]{"CollectionCount"};
+        try {
+            JmxInvoker.checkArguments(arguments);
+            Assert.fail();
+        } catch (CmdLineException e) {
+            Assert.assertTrue(e.getMessage().contains("--listen"));
+        }
+    }
+
+    @Test
+    public void testExporterArguments() throws Exception {
+        String[] args = {"-p", "12345", "-on", "java.lang:type=Memory", "--exporter-port", "9404",
+                "--exporter-object-name", "java.lang:type=GarbageCollector,*", "--exporter-object-name", "java.lang:type=Threading",
+                "--select", "HeapMemoryUsage.used"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+        arguments.cmdLineParser = parser;
+        JmxInvoker.checkArguments(arguments);
+        Assert.assertEquals(Arrays.asList(new ObjectName("java.lang:type=GarbageCollector,*"), new ObjectName("java.lang:type=Threading")),
+                arguments.exporterObjectNames);
+
+        arguments.listMbeans = true;
+        try {
+            JmxInvoker.checkArguments(arguments);
+            Assert.fail();
+        } catch (CmdLineException e) {
+            Assert.assertTrue(e.getMessage().contains("--exporter-port"));
+        }
+    }
+
+    @Test
+    public void testDaemonPortArguments() throws Exception {
+        String[] args = {"-p", "12345", "-on", "java.lang:type=Threading", "-attr", "ThreadCount", "--daemon-port", "9999", "--interval", "1000"};
+        JmxInvoker.JmxInvokerArguments arguments = new JmxInvoker.JmxInvokerArguments();
+        CmdLineParser parser = new CmdLineParser(arguments);
+        parser.parseArgument(args);
+        arguments.cmdLineParser = parser;
+        try {
+            JmxInvoker.checkArguments(arguments);
+            Assert.fail();
+        } catch (CmdLineException e) {
+            Assert.assertTrue(e.getMessage().contains("--daemon-port"));
+        }
+
+        arguments.intervalInMillis = null;
+        arguments.timings = true;
+        try {
+            JmxInvoker.checkArguments(arguments);
+            Assert.fail();
+        } catch (CmdLineException e) {
+            Assert.assertTrue(e.getMessage().contains("--timings"));
+        }
+
+        arguments.timings = false;
+        JmxInvoker.checkArguments(arguments);
+    }
+
+    @Test
+    public void testRegisterTimings() throws Exception {
+        JmxInvoker jmxInvoker = new JmxInvoker();
+        ObjectName objectName = new ObjectName(Timings.OBJECT_NAME);
+        jmxInvoker.registerTimings();
+        try {
+            jmxInvoker.getTimings().record(Timings.Phase.CONNECT, 1000000);
+            Assert.assertEquals(1L, mbeanServer.getAttribute(objectName, Timings.Phase.CONNECT.getLabel() + "Count"));
+        } finally {
+            mbeanServer.unregisterMBean(objectName);
+        }
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.model.MockMemoryPool;
+import com.cloudbees.jmx.model.MockSimpleJmxBean;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class JmxSessionTest {
+
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    MockSimpleJmxBean mockSimpleJmxBean = new MockSimpleJmxBean();
+    ObjectName objectName;
+    JmxSession session;
+
+    @Before
+    public void before() throws Exception {
+        objectName = new ObjectName("test-session:type=SimpleJmxBean");
+        mbeanServer.registerMBean(mockSimpleJmxBean, objectName);
+        session = new JmxSession(new JmxInvoker(), mbeanServer);
+    }
+
+    @After
+    public void after() throws Exception {
+        session.close();
+        mbeanServer.unregisterMBean(objectName);
+    }
+
+    @Test
+    public void get_and_set() throws Exception {
+        session.set(objectName, "IntAttribute", 42);
+        Assert.assertEquals(Integer.valueOf(42), session.get(objectName, "IntAttribute", Integer.class));
+        Assert.assertEquals(Integer.valueOf(42), session.get(objectName, "IntAttribute", int.class));
+
+        session.set(objectName, "IntAttribute", "43");
+        session.set(objectName, "ZeAttribute", "ze value");
+        Assert.assertEquals(43, mockSimpleJmxBean.getIntAttribute());
+
+        Map<String, Object> values = session.getAttributes(objectName, "IntAttribute", "ZeAttribute");
+        Assert.assertEquals(43, values.get("IntAttribute"));
+        Assert.assertEquals("ze value", values.get("ZeAttribute"));
+    }
+
+    @Test
+    public void invoke() throws Exception {
+        Assert.assertEquals("int 42", session.invoke(objectName, "overloaded", "42"));
+        Assert.assertEquals("int 42", session.invoke(objectName, "overloaded", 42));
+        Assert.assertEquals("boolean true", session.invoke(objectName, "overloaded", Boolean.TRUE));
+        Assert.assertEquals("long 42", session.invoke(objectName, "ambiguous", 42L));
+        Assert.assertEquals("String, String a, b", session.invoke(objectName, "overloaded", new Object[]{"a", "b"}));
+        Assert.assertEquals("long 42", session.invoke(objectName, "ambiguous", new Object[]{42L}, new String[]{"long"}));
+        try {
+            session.invoke(objectName, "overloaded", 1.5d);
+            Assert.fail("no overload accepts a double");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void mbean_registered_again_with_another_class() throws Exception {
+        JmxInvoker jmxInvoker = new JmxInvoker();
+        JmxSession session = new JmxSession(jmxInvoker, mbeanServer);
+        try {
+            session.set(objectName, "IntAttribute", 42);
+            mbeanServer.unregisterMBean(objectName);
+            mbeanServer.registerMBean(new MockMemoryPool("PS Eden Space", 87359488L), objectName);
+
+            Assert.assertNotNull(jmxInvoker.getMBeanInfo(mbeanServer, objectName).getAttribute("Usage"));
+            Assert.assertNull(jmxInvoker.getMBeanInfo(mbeanServer, objectName).getAttribute("IntAttribute"));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void query() throws Exception {
+        Assert.assertTrue(session.query("test-session:*").contains(objectName));
+        Assert.assertTrue(session.query(new ObjectName("test-session:type=DoesNotExist"), null).isEmpty());
+    }
+
+    @Test
+    public void open_and_close() throws Exception {
+        JMXConnectorServer connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://127.0.0.1"), null, mbeanServer);
+        connectorServer.start();
+        try {
+            JmxSession remoteSession = JmxSession.open(connectorServer.getAddress().toString());
+            Assert.assertEquals("int 7", remoteSession.invoke(objectName, "overloaded", 7));
+            Assert.assertEquals(1, connectorServer.getConnectionIds().length);
+
+            remoteSession.close();
+            Assert.assertTrue(remoteSession.isClosed());
+            Assert.assertEquals(0, connectorServer.getConnectionIds().length);
+            try {
+                remoteSession.get(objectName, "IntAttribute");
+                Assert.fail("session is closed");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            connectorServer.stop();
+        }
+    }
+}
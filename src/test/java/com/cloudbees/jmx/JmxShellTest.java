@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.model.MockMemoryPool;
+import com.cloudbees.jmx.model.MockSimpleJmxBean;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class JmxShellTest {
+
+    static MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    static MockSimpleJmxBean mockSimpleJmxBean = new MockSimpleJmxBean();
+    static ObjectName mockSimpleBeanObjectName;
+    static ObjectName mockEdenSpacePoolObjectName;
+
+    JmxShell shell = new JmxShell("1234", mbeanServer, new ObjectName("shell-test:*"));
+
+    public JmxShellTest() throws Exception {
+    }
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        mockSimpleBeanObjectName = new ObjectName("shell-test:type=SimpleJmxBean");
+        mbeanServer.registerMBean(mockSimpleJmxBean, mockSimpleBeanObjectName);
+        mockEdenSpacePoolObjectName = new ObjectName("shell-test:type=MemoryPool,name=PS Eden Space");
+        mbeanServer.registerMBean(new MockMemoryPool("PS Eden Space", 87359488L), mockEdenSpacePoolObjectName);
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        mbeanServer.unregisterMBean(mockSimpleBeanObjectName);
+        mbeanServer.unregisterMBean(mockEdenSpacePoolObjectName);
+    }
+
+    private String execute(String line) {
+        StringWriter out = new StringWriter();
+        shell.execute(line, new PrintWriter(out));
+        return out.toString();
+    }
+
+    @Test
+    public void tokenize() {
+        assertThat(JmxShell.tokenize("  get  a:type=b  Attr "), is(Arrays.asList("get", "a:type=b", "Attr")));
+        assertThat(JmxShell.tokenize("get \"a:type=b,name=c d\" 'x y'"), is(Arrays.asList("get", "a:type=b,name=c d", "x y")));
+        assertThat(JmxShell.tokenize("get a:name=\"http-nio 8080\" Attr"), is(Arrays.asList("get", "a:name=\"http-nio 8080\"", "Attr")));
+        assertThat(JmxShell.tokenize("set \"a:name=\\\"c d\\\"\" ''"), is(Arrays.asList("set", "a:name=\"c d\"", "")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tokenize_unterminated_quote() {
+        JmxShell.tokenize("get \"a:type=b");
+    }
+
+    @Test
+    public void quote() {
+        for (String word : Arrays.asList("a:type=b", "a:name=c d", "a:name=\"c d\"", "'", "")) {
+            assertThat(JmxShell.tokenize(JmxShell.quote(word)), is(Arrays.asList(word)));
+        }
+    }
+
+    @Test
+    public void get_set_and_invoke() {
+        execute("set shell-test:type=SimpleJmxBean ZeAttribute \"a value\"");
+        assertThat(mockSimpleJmxBean.getZeAttribute(), is("a value"));
+
+        assertThat(execute("get shell-test:type=SimpleJmxBean ZeAttribute"), containsString("a value"));
+
+        mockSimpleJmxBean.anOperationResult = "the result";
+        assertThat(execute("invoke shell-test:type=SimpleJmxBean anOperation str1 false true 1 2"), containsString("the result"));
+    }
+
+    @Test
+    public void list_and_time() {
+        String output = execute("time list");
+        assertThat(output, containsString("shell-test:type=SimpleJmxBean"));
+        assertThat(output, containsString("shell-test:type=MemoryPool,name=PS Eden Space"));
+        assertThat(output, containsString("Time: "));
+    }
+
+    @Test
+    public void errors_and_exit() {
+        assertThat(execute("unknown"), startsWith("ERROR: Unknown command 'unknown'"));
+        assertThat(execute("get shell-test:type=SimpleJmxBean"), startsWith("ERROR: Usage: get"));
+        assertThat(shell.execute("exit", new PrintWriter(new StringWriter())), is(false));
+        assertThat(shell.execute("", new PrintWriter(new StringWriter())), is(true));
+    }
+
+    @Test
+    public void complete() throws Exception {
+        List<CharSequence> candidates = new ArrayList<CharSequence>();
+        assertThat(shell.complete("ti", candidates), is(0));
+        assertThat(candidates, contains((CharSequence) "time"));
+
+        candidates.clear();
+        assertThat(shell.complete("time get shell-test:type=M", candidates), is(9));
+        assertThat(candidates, contains((CharSequence) "\"shell-test:type=MemoryPool,name=PS Eden Space\""));
+
+        candidates.clear();
+        assertThat(shell.complete("get shell-test:type=SimpleJmxBean ", candidates), is(34));
+        assertThat(candidates, hasItems((CharSequence) "ZeAttribute", "IntAttribute", "BoolAttribute"));
+
+        candidates.clear();
+        assertThat(shell.complete("invoke shell-test:type=SimpleJmxBean an", candidates), is(37));
+        assertThat(candidates, contains((CharSequence) "anOperation"));
+    }
+
+    @Test
+    public void execute_script() throws Exception {
+        String script = "# deployment hook\n" +
+                "set shell-test:type=SimpleJmxBean ZeAttribute before\n" +
+                "\n" +
+                "get shell-test:type=SimpleJmxBean UnknownAttribute\n" +
+                "time get shell-test:type=SimpleJmxBean ZeAttribute\n";
+        StringWriter out = new StringWriter();
+        boolean success = shell.executeScript(new BufferedReader(new StringReader(script)), 1, new PrintWriter(out));
+
+        assertThat(success, is(false));
+        String output = out.toString();
+        assertThat(output, containsString("ERROR line 4: "));
+        assertThat(output, not(containsString("ERROR line 5")));
+        assertThat(output, containsString("Time: "));
+        assertThat(output.indexOf("# line 2: set"), lessThan(output.indexOf("# line 4: get")));
+        assertThat(output.indexOf("# line 4: get"), lessThan(output.indexOf("# line 5: time get")));
+        assertThat(mockSimpleJmxBean.getZeAttribute(), is("before"));
+    }
+
+    @Test
+    public void execute_script_pipelined() throws Exception {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            script.append("get shell-test:type=MemoryPool,* Usage\n");
+        }
+        StringWriter out = new StringWriter();
+        boolean success = shell.executeScript(new BufferedReader(new StringReader(script.toString())), 4, new PrintWriter(out));
+
+        assertThat(success, is(true));
+        String output = out.toString();
+        for (int i = 1; i < 20; i++) {
+            assertThat(output.indexOf("# line " + i + ":"), lessThan(output.indexOf("# line " + (i + 1) + ":")));
+        }
+    }
+
+    @Test
+    public void commands_use_the_given_invoker() throws Exception {
+        JmxInvoker jmxInvoker = new JmxInvoker();
+        JmxShell shell = new JmxShell(jmxInvoker, "1234", mbeanServer, new ObjectName("shell-test:*"));
+        StringWriter out = new StringWriter();
+        shell.execute("get shell-test:type=SimpleJmxBean ZeAttribute", new PrintWriter(out));
+
+        assertThat(jmxInvoker.getTimings().get(Timings.Phase.INVOKE).getCount(), is(1L));
+    }
+}
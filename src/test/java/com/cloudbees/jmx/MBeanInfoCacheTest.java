@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.convert.TypeConverters;
+import com.cloudbees.jmx.model.MockMemoryPool;
+import com.cloudbees.jmx.model.MockSimpleJmxBean;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class MBeanInfoCacheTest {
+
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName edenSpaceObjectName;
+    ObjectName oldGenObjectName;
+
+    @Before
+    public void before() throws Exception {
+        edenSpaceObjectName = new ObjectName("test-cache:type=MemoryPool,name=PS Eden Space");
+        mbeanServer.registerMBean(new MockMemoryPool("PS Eden Space", 87359488L), edenSpaceObjectName);
+        oldGenObjectName = new ObjectName("test-cache:type=MemoryPool,name=PS Old Gen");
+        mbeanServer.registerMBean(new MockMemoryPool("PS Old Gen", 87359488L), oldGenObjectName);
+    }
+
+    @After
+    public void after() throws Exception {
+        if (mbeanServer.isRegistered(edenSpaceObjectName))
+            mbeanServer.unregisterMBean(edenSpaceObjectName);
+        if (mbeanServer.isRegistered(oldGenObjectName))
+            mbeanServer.unregisterMBean(oldGenObjectName);
+    }
+
+    @Test
+    public void mbean_info_shared_by_mbeans_of_same_class() throws Exception {
+        MBeanInfoCache cache = new MBeanInfoCache();
+        MBeanInfoIndex edenSpaceInfo = cache.getMBeanInfo(mbeanServer, edenSpaceObjectName);
+        MBeanInfoIndex oldGenInfo = cache.getMBeanInfo(mbeanServer, oldGenObjectName);
+
+        Assert.assertTrue(edenSpaceInfo.isImmutable());
+        Assert.assertSame(edenSpaceInfo, oldGenInfo);
+        Assert.assertNotNull(edenSpaceInfo.getAttribute("Usage"));
+        Assert.assertNull(edenSpaceInfo.getAttribute("DoesNotExist"));
+    }
+
+    @Test
+    public void operations_indexed_by_name_and_arity() throws Exception {
+        ObjectName simpleBeanObjectName = new ObjectName("test-cache:type=SimpleJmxBean");
+        mbeanServer.registerMBean(new MockSimpleJmxBean(), simpleBeanObjectName);
+        try {
+            MBeanInfoIndex mbeanInfo = new MBeanInfoCache().getMBeanInfo(mbeanServer, simpleBeanObjectName);
+            Assert.assertEquals(3, mbeanInfo.getOperations("overloaded", 1).length);
+            Assert.assertEquals(1, mbeanInfo.getOperations("overloaded", 2).length);
+            Assert.assertEquals(0, mbeanInfo.getOperations("overloaded", 3).length);
+            Assert.assertEquals(0, mbeanInfo.getOperations("doesNotExist", 0).length);
+
+            MBeanInfoIndex.OperationSignature operation = mbeanInfo.getOperations("anOperation", 5)[0];
+            Assert.assertArrayEquals(new String[]{"java.lang.String", "boolean", "java.lang.Boolean", "java.lang.Integer", "int"}, operation.getTypes());
+            Assert.assertSame(operation.getTypes(), mbeanInfo.getOperations("anOperation", 5)[0].getTypes());
+            TypeConverters typeConverters = new TypeConverters();
+            Assert.assertSame(operation.getConverters(typeConverters), operation.getConverters(typeConverters));
+
+            Assert.assertEquals(-1, operation.getMatchScore(new String[]{"a", "yes", "true", "1", "2"}, typeConverters));
+            Assert.assertEquals(-1, operation.getMatchScore(new String[]{"a", "true", "true", "1", JmxInvoker.NULL_VALUE}, typeConverters));
+            Assert.assertEquals(3, operation.getMatchScore(new String[]{"a", "true", "true", JmxInvoker.NULL_VALUE, "2"}, typeConverters));
+        } finally {
+            mbeanServer.unregisterMBean(simpleBeanObjectName);
+        }
+    }
+
+    @Test
+    public void entry_evicted_on_unregistration() throws Exception {
+        MBeanInfoCache cache = new MBeanInfoCache();
+        cache.listenForRegistrations(mbeanServer);
+        try {
+            cache.getMBeanInfo(mbeanServer, edenSpaceObjectName);
+            mbeanServer.unregisterMBean(edenSpaceObjectName);
+            try {
+                cache.getMBeanInfo(mbeanServer, edenSpaceObjectName);
+                Assert.fail("MBeanInfo of unregistered MBean should have been evicted");
+            } catch (javax.management.InstanceNotFoundException e) {
+                // expected
+            }
+        } finally {
+            cache.stopListeningForRegistrations(mbeanServer);
+        }
+    }
+
+    @Test
+    public void bounded_object_names() throws Exception {
+        MBeanInfoCache cache = new MBeanInfoCache(1);
+        Assert.assertNotNull(cache.getMBeanInfo(mbeanServer, edenSpaceObjectName).getAttribute("Usage"));
+        Assert.assertNotNull(cache.getMBeanInfo(mbeanServer, oldGenObjectName).getAttribute("Usage"));
+        Assert.assertNotNull(cache.getMBeanInfo(mbeanServer, edenSpaceObjectName).getAttribute("Usage"));
+    }
+
+    @Test
+    public void save_and_load() throws Exception {
+        File file = File.createTempFile("mbean-info-", ".ser");
+        try {
+            MBeanInfoCache cache = new MBeanInfoCache();
+            cache.getMBeanInfo(mbeanServer, edenSpaceObjectName);
+            cache.save(file);
+
+            MBeanInfoCache reloadedCache = new MBeanInfoCache();
+            reloadedCache.load(file);
+            MBeanInfoIndex oldGenInfo = reloadedCache.getMBeanInfo(mbeanServer, oldGenObjectName);
+            Assert.assertNotNull(oldGenInfo.getAttribute("Usage"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void save_and_load_platform_mbeans() throws Exception {
+        File file = File.createTempFile("mbean-info-", ".ser");
+        File reloadedFile = File.createTempFile("mbean-info-", ".ser");
+        try {
+            MBeanInfoCache cache = new MBeanInfoCache();
+            for (ObjectName objectName : mbeanServer.queryNames(new ObjectName("java.lang:*"), null)) {
+                cache.getMBeanInfo(mbeanServer, objectName);
+            }
+            cache.save(file);
+
+            MBeanInfoCache reloadedCache = new MBeanInfoCache();
+            reloadedCache.load(file);
+            reloadedCache.save(reloadedFile);
+            Assert.assertFalse(readKeys(file).isEmpty());
+            Assert.assertEquals(readKeys(file), readKeys(reloadedFile));
+        } finally {
+            file.delete();
+            reloadedFile.delete();
+        }
+    }
+
+    @Test
+    public void load_rejects_unexpected_classes() throws Exception {
+        File file = File.createTempFile("mbean-info-", ".ser");
+        try {
+            Map<String, Object> mbeanInfos = new HashMap<String, Object>();
+            mbeanInfos.put(MockMemoryPool.class.getName(), new DeserializationTracker());
+            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+            try {
+                out.writeObject(mbeanInfos);
+            } finally {
+                out.close();
+            }
+
+            new MBeanInfoCache().load(file);
+            Assert.assertFalse(DeserializationTracker.deserialized);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void deserializable_classes() {
+        Assert.assertTrue(MBeanInfoCache.isDeserializable("javax.management.openmbean.OpenMBeanAttributeInfoSupport"));
+        Assert.assertTrue(MBeanInfoCache.isDeserializable("[Ljavax.management.MBeanAttributeInfo;"));
+        Assert.assertTrue(MBeanInfoCache.isDeserializable("[[Ljava.lang.String;"));
+        Assert.assertTrue(MBeanInfoCache.isDeserializable("[B"));
+        Assert.assertFalse(MBeanInfoCache.isDeserializable("java.io.File"));
+        Assert.assertTrue(MBeanInfoCache.isDeserializable("[Ljava.lang.Object;"));
+        Assert.assertFalse(MBeanInfoCache.isDeserializable("[Ljava.io.File;"));
+    }
+
+    private static Set<?> readKeys(File file) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+        try {
+            return ((Map<?, ?>) in.readObject()).keySet();
+        } finally {
+            in.close();
+        }
+    }
+
+    static class DeserializationTracker implements Serializable {
+        static volatile boolean deserialized;
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            deserialized = true;
+            in.defaultReadObject();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.model.MockMemoryPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class MetricsExporterTest {
+
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName edenSpaceObjectName;
+    MetricsExporter exporter;
+
+    JmxInvoker jmxInvoker = new JmxInvoker() {
+        @Override
+        protected MBeanServerConnection connectToMbeanServer(String pid) throws IOException {
+            if (!"12345".equals(pid)) {
+                throw new IOException("JVM " + pid + " not found");
+            }
+            return mbeanServer;
+        }
+    };
+
+    @Before
+    public void before() throws Exception {
+        edenSpaceObjectName = new ObjectName("test-exporter:type=MemoryPool,name=PS Eden Space");
+        mbeanServer.registerMBean(new MockMemoryPool("PS Eden Space", 87359488L), edenSpaceObjectName);
+        exporter = new MetricsExporter(jmxInvoker, Arrays.asList("12345", "666"), Collections.singletonList(new ObjectName("test-exporter:*")));
+    }
+
+    @After
+    public void after() throws Exception {
+        exporter.close();
+        mbeanServer.unregisterMBean(edenSpaceObjectName);
+    }
+
+    @Test
+    public void scrape() throws Exception {
+        String metrics = new String(exporter.scrape(), "UTF-8");
+        System.out.println(metrics);
+
+        Assert.assertTrue(metrics, metrics.contains("# TYPE jmx_test_exporter_MemoryPool_Usage_used unknown\n" +
+                "jmx_test_exporter_MemoryPool_Usage_used{target=\"12345\",name=\"PS Eden Space\"} 87359488\n"));
+        Assert.assertTrue(metrics, metrics.contains("jmx_test_exporter_MemoryPool_CollectionUsageThreshold{target=\"12345\",name=\"PS Eden Space\"} 0\n"));
+        Assert.assertFalse(metrics, metrics.contains("_Name{"));
+        Assert.assertTrue(metrics, metrics.contains("# TYPE jmx_up gauge\njmx_up{target=\"12345\"} 1\njmx_up{target=\"666\"} 0\n"));
+        Assert.assertTrue(metrics, metrics.endsWith("\n# EOF\n"));
+    }
+
+    @Test
+    public void attributes_and_selectors() throws Exception {
+        exporter.setAttributes(new String[]{"Usage", "Name"});
+        exporter.setSelectors(OpenDataPaths.parseSelectors("Usage.used,Usage.max"));
+        String metrics = new String(exporter.scrape(), "UTF-8");
+
+        Assert.assertTrue(metrics, metrics.contains("jmx_test_exporter_MemoryPool_Usage_used{"));
+        Assert.assertTrue(metrics, metrics.contains("jmx_test_exporter_MemoryPool_Usage_max{"));
+        Assert.assertFalse(metrics, metrics.contains("jmx_test_exporter_MemoryPool_Usage_committed{"));
+        Assert.assertFalse(metrics, metrics.contains("jmx_test_exporter_MemoryPool_CollectionUsageThreshold{"));
+    }
+
+    @Test
+    public void query() throws Exception {
+        exporter.setQuery(QueryExpressions.parse("Name = 'PS Old Gen'"));
+        String metrics = new String(exporter.scrape(), "UTF-8");
+
+        Assert.assertFalse(metrics, metrics.contains("jmx_test_exporter_MemoryPool_Usage_used{"));
+        Assert.assertTrue(metrics, metrics.contains("jmx_up{target=\"12345\"} 1\n"));
+
+        exporter.setQuery(QueryExpressions.parse("Name = 'PS Eden Space'"));
+        exporter.setTtlInMillis(0);
+        metrics = new String(exporter.scrape(), "UTF-8");
+        Assert.assertTrue(metrics, metrics.contains("jmx_test_exporter_MemoryPool_Usage_used{"));
+    }
+
+    @Test
+    public void failing_target_publishes_no_partial_samples() throws Exception {
+        exporter.close();
+        exporter = new MetricsExporter(jmxInvoker, Collections.singletonList("12345"), Collections.singletonList(new ObjectName("test-exporter:*"))) {
+            @Override
+            protected void collect(@Nonnull String target, @Nonnull JmxSession session, @Nonnull SortedMap<String, StringBuilder> families) throws IOException {
+                super.collect(target, session, families);
+                throw new IOException("connection lost");
+            }
+        };
+        String metrics = new String(exporter.scrape(), "UTF-8");
+
+        Assert.assertFalse(metrics, metrics.contains("jmx_test_exporter_MemoryPool_Usage_used{"));
+        Assert.assertTrue(metrics, metrics.contains("jmx_up{target=\"12345\"} 0\n"));
+    }
+
+    @Test
+    public void responses_cached_for_ttl() throws Exception {
+        exporter.setTtlInMillis(60000);
+        Assert.assertSame(exporter.scrape(), exporter.scrape());
+
+        exporter.setTtlInMillis(0);
+        Assert.assertNotSame(exporter.scrape(), exporter.scrape());
+    }
+
+    @Test
+    public void http() throws Exception {
+        exporter.start(0);
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + exporter.getPort() + MetricsExporter.PATH).openConnection();
+        try {
+            Assert.assertEquals(200, connection.getResponseCode());
+            Assert.assertEquals(MetricsExporter.CONTENT_TYPE, connection.getContentType());
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                body.write(buffer, 0, length);
+            }
+            Assert.assertTrue(body.toString("UTF-8").contains("jmx_up{target=\"12345\"} 1\n"));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void names_and_labels() throws Exception {
+        Assert.assertEquals("jmx_Catalina_DataSource_", MetricsExporter.getMetricPrefix(new ObjectName("Catalina:type=DataSource,name=\"jdbc/petclinic\"")));
+        Assert.assertEquals("{target=\"12345\",class=\"javax.sql.DataSource\",name=\"jdbc/\\\"pet\\\"\"}",
+                MetricsExporter.getLabels("12345", new ObjectName("Catalina:type=DataSource,name=\"jdbc/\\\"pet\\\"\",class=javax.sql.DataSource")));
+        Assert.assertEquals("_1_memory_usage_after_gc", MetricsExporter.sanitizeName("1.memory usage-after-gc"));
+        Assert.assertEquals("NaN", MetricsExporter.toSampleValue(Double.NaN));
+        Assert.assertEquals("-Inf", MetricsExporter.toSampleValue(Float.NEGATIVE_INFINITY));
+        Assert.assertNull(MetricsExporter.toSampleValue("12"));
+    }
+}
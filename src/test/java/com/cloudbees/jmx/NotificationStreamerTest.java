@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import org.junit.Test;
+
+import javax.management.Notification;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class NotificationStreamerTest {
+
+    @Test
+    public void notifications_are_written_as_text() throws Exception {
+        StringWriter out = new StringWriter();
+        NotificationStreamer streamer = new NotificationStreamer(out, false, 10);
+        streamer.start();
+        streamer.handleNotification(new Notification("test.type", "test:type=Source", 1, "a message"), "123");
+        assertTrue(streamer.awaitWritten(1, 10, TimeUnit.SECONDS));
+        streamer.close();
+
+        assertThat(out.toString(), endsWith("\t123\ttest:type=Source\ttest.type\t1\ta message\n"));
+    }
+
+    @Test
+    public void notifications_are_written_as_json() throws Exception {
+        StringWriter out = new StringWriter();
+        NotificationStreamer streamer = new NotificationStreamer(out, true, 10);
+        Notification notification = new Notification("test.type", "test:type=Source", 1, "a \"message\"");
+        notification.setUserData(42);
+        streamer.handleNotification(notification, "123");
+        streamer.close();
+
+        assertThat(out.toString(), containsString("\"pid\":\"123\",\"source\":\"test:type=Source\",\"type\":\"test.type\"," +
+                "\"sequenceNumber\":1,\"message\":\"a \\\"message\\\"\",\"userData\":42}\n"));
+    }
+
+    @Test
+    public void notifications_are_dropped_when_queue_is_full() throws Exception {
+        StringWriter out = new StringWriter();
+        NotificationStreamer streamer = new NotificationStreamer(out, false, 2);
+        for (int i = 0; i < 5; i++) {
+            streamer.handleNotification(new Notification("test.type", "test:type=Source", i), "123");
+        }
+        streamer.close();
+
+        assertThat(streamer.getReceivedCount(), is(5L));
+        assertThat(streamer.getDroppedCount(), is(3L));
+        assertThat(streamer.getWrittenCount(), is(2L));
+        String[] lines = out.toString().split("\n");
+        assertThat(lines.length, is(3));
+        assertThat(lines[0], containsString("## DROPPED ## 3 notifications"));
+    }
+
+    @Test
+    public void notifications_are_not_written_beyond_max_count() throws Exception {
+        StringWriter out = new StringWriter();
+        NotificationStreamer streamer = new NotificationStreamer(out, false, 10);
+        streamer.setMaxCount(2);
+        for (int i = 0; i < 5; i++) {
+            streamer.handleNotification(new Notification("test.type", "test:type=Source", i), "123");
+        }
+        streamer.start();
+        assertTrue(streamer.awaitWritten(2, 10, TimeUnit.SECONDS));
+        streamer.handleNotification(new Notification("test.type", "test:type=Source", 5), "123");
+        streamer.close();
+
+        assertThat(streamer.getWrittenCount(), is(2L));
+        assertThat(out.toString().split("\n").length, is(2));
+    }
+
+    @Test
+    public void lost_notifications_are_counted_as_dropped() throws Exception {
+        StringWriter out = new StringWriter();
+        final NotificationStreamer streamer = new NotificationStreamer(out, false, 10);
+        streamer.start();
+        streamer.notificationsLost(7);
+        new Thread() {
+            @Override
+            public void run() {
+                streamer.close();
+            }
+        }.start();
+
+        assertThat(streamer.awaitWritten(1, 10, TimeUnit.SECONDS), is(false));
+        streamer.close();
+        assertThat(streamer.getDroppedCount(), is(7L));
+        assertThat(out.toString(), containsString("## DROPPED ## 7 notifications"));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.model.MockMemoryPool;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.openmbean.*;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class OpenDataPathsTest {
+
+    /**
+     * Mimics <code>com.sun.management.GcInfo</code>: <code>{id, memoryUsageAfterGc: Map&lt;String, MemoryUsage&gt;}</code>
+     */
+    CompositeData gcInfo;
+
+    @Before
+    public void before() throws Exception {
+        CompositeData edenUsage = new MockMemoryPool("PS Eden Space", 100L).getUsage();
+        CompositeData oldUsage = new MockMemoryPool("PS Old Gen", 200L).getUsage();
+        CompositeType rowType = new CompositeType("MemoryUsageEntry", "MemoryUsageEntry", new String[]{"key", "value"},
+                new String[]{"key", "value"}, new OpenType[]{SimpleType.STRING, edenUsage.getCompositeType()});
+        TabularDataSupport memoryUsageAfterGc = new TabularDataSupport(new TabularType("MemoryUsageMap", "MemoryUsageMap", rowType, new String[]{"key"}));
+        memoryUsageAfterGc.put(new CompositeDataSupport(rowType, new String[]{"key", "value"}, new Object[]{"PS Eden Space", edenUsage}));
+        memoryUsageAfterGc.put(new CompositeDataSupport(rowType, new String[]{"key", "value"}, new Object[]{"PS Old Gen", oldUsage}));
+        CompositeType gcInfoType = new CompositeType("GcInfo", "GcInfo", new String[]{"id", "memoryUsageAfterGc"},
+                new String[]{"id", "memoryUsageAfterGc"}, new OpenType[]{SimpleType.LONG, memoryUsageAfterGc.getTabularType()});
+        gcInfo = new CompositeDataSupport(gcInfoType, new String[]{"id", "memoryUsageAfterGc"}, new Object[]{12L, memoryUsageAfterGc});
+    }
+
+    @Test
+    public void walk_all_leaves() {
+        Map<String, Object> leaves = OpenDataPaths.toMap("LastGcInfo", gcInfo, null);
+        assertThat(leaves.size(), is(9));
+        assertThat(leaves.get("LastGcInfo.id"), is((Object) 12L));
+        assertThat(leaves.get("LastGcInfo.memoryUsageAfterGc.PS Eden Space.committed"), is((Object) 100L));
+        assertThat(leaves.get("LastGcInfo.memoryUsageAfterGc.PS Old Gen.committed"), is((Object) 200L));
+    }
+
+    @Test
+    public void select_literal_and_wildcard_paths() {
+        Map<String, Object> leaves = OpenDataPaths.toMap("LastGcInfo", gcInfo, OpenDataPaths.parseSelectors("LastGcInfo.memoryUsageAfterGc.PS Eden Space.committed"));
+        assertThat(leaves.keySet(), contains("LastGcInfo.memoryUsageAfterGc.PS Eden Space.committed"));
+
+        leaves = OpenDataPaths.toMap("LastGcInfo", gcInfo, OpenDataPaths.parseSelectors("LastGcInfo.memoryUsageAfterGc.*.committed, LastGcInfo.id"));
+        assertThat(leaves.keySet(), containsInAnyOrder("LastGcInfo.id", "LastGcInfo.memoryUsageAfterGc.PS Eden Space.committed",
+                "LastGcInfo.memoryUsageAfterGc.PS Old Gen.committed"));
+    }
+
+    @Test
+    public void select_subtree() {
+        Map<String, Object> leaves = OpenDataPaths.toMap("LastGcInfo", gcInfo, OpenDataPaths.parseSelectors("LastGcInfo.memoryUsageAfterGc.PS Old Gen"));
+        assertThat(leaves.size(), is(4));
+        assertThat(leaves.keySet(), everyItem(startsWith("LastGcInfo.memoryUsageAfterGc.PS Old Gen.")));
+
+        assertThat(OpenDataPaths.toMap("OtherAttribute", gcInfo, OpenDataPaths.parseSelectors("LastGcInfo")).size(), is(0));
+        assertThat(OpenDataPaths.toMap("LastGcInfo", gcInfo, OpenDataPaths.parseSelectors("LastGcInfo.unknown.x")).size(), is(0));
+    }
+
+    @Test
+    public void arrays_and_simple_values() {
+        Map<String, Object> leaves = OpenDataPaths.toMap("Usages", new CompositeData[]{
+                new MockMemoryPool("a", 1L).getUsage(), new MockMemoryPool("b", 2L).getUsage()}, OpenDataPaths.parseSelectors("Usages.*.committed"));
+        assertThat(leaves.keySet(), contains("Usages.0.committed", "Usages.1.committed"));
+        assertThat(leaves.values(), contains((Object) 1L, 2L));
+
+        assertThat(OpenDataPaths.toMap("Count", 3, null).keySet(), contains("Count"));
+        assertThat(OpenDataPaths.toMap("Names", new String[]{"a"}, null).get("Names"), is((Object) new String[]{"a"}));
+    }
+
+    @Test
+    public void render_lines() {
+        StringBuilder out = new StringBuilder();
+        OpenDataPaths.appendTo("LastGcInfo", gcInfo, OpenDataPaths.parseSelectors("LastGcInfo.id"), "\n\t", out);
+        assertThat(out.toString(), is("\n\tLastGcInfo.id: 12"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_selector() {
+        OpenDataPaths.parseSelectors("a..b");
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class PooledConnectionProviderTest {
+
+    JMXConnectorServer connectorServer;
+
+    String url;
+
+    PooledConnectionProvider connectionProvider;
+
+    @Before
+    public void before() throws Exception {
+        connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://127.0.0.1"), null, ManagementFactory.getPlatformMBeanServer());
+        connectorServer.start();
+        url = connectorServer.getAddress().toString();
+        connectionProvider = new PooledConnectionProvider();
+        connectionProvider.setMaxConnections(2);
+        connectionProvider.setBorrowTimeoutInMillis(200);
+    }
+
+    @After
+    public void after() throws Exception {
+        connectionProvider.close();
+        connectorServer.stop();
+    }
+
+    @Test
+    public void released_connection_is_reused() throws Exception {
+        MBeanServerConnection connection = connectionProvider.getConnection(url);
+        assertThat(connection.getMBeanCount(), greaterThan(0));
+        connectionProvider.releaseConnection(connection);
+
+        MBeanServerConnection connection2 = connectionProvider.getConnection(url);
+        assertThat(connection2, sameInstance(connection));
+        connectionProvider.releaseConnection(connection2);
+    }
+
+    @Test
+    public void borrow_waits_for_a_free_connection() throws Exception {
+        MBeanServerConnection connection1 = connectionProvider.getConnection(url);
+        MBeanServerConnection connection2 = connectionProvider.getConnection(url);
+        assertThat(connection2, not(sameInstance(connection1)));
+        try {
+            connectionProvider.getConnection(url);
+            fail("pool of 2 connections should be exhausted");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("Timeout waiting"));
+        }
+        connectionProvider.releaseConnection(connection1);
+        assertThat(connectionProvider.getConnection(url), sameInstance(connection1));
+        connectionProvider.releaseConnection(connection1);
+        connectionProvider.releaseConnection(connection2);
+    }
+
+    @Test
+    public void broken_connection_is_not_reused() throws Exception {
+        connectionProvider.setValidationIntervalInMillis(0);
+        MBeanServerConnection connection = connectionProvider.getConnection(url);
+        connectionProvider.releaseConnection(connection);
+
+        connectorServer.stop();
+        try {
+            connectionProvider.getConnection(url);
+            fail("connection to a stopped connector server should fail");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("Exception connecting to"));
+        }
+    }
+
+    @Test
+    public void unreachable_url_fails_fast_during_backoff() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        String unreachableUrl = "service:jmx:rmi:///jndi/rmi://127.0.0.1:" + port + "/jmxrmi";
+        connectionProvider.setInitialBackoffInMillis(60000);
+        try {
+            connectionProvider.getConnection(unreachableUrl);
+            fail();
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("Exception connecting to"));
+        }
+        try {
+            connectionProvider.getConnection(unreachableUrl);
+            fail();
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("next attempt in"));
+        }
+    }
+
+    @Test
+    public void pid_is_resolved_once() throws Exception {
+        final int[] resolutions = new int[1];
+        connectionProvider.setConnectorAddressResolver(new ConnectorAddressResolver(null) {
+            @Override
+            protected String attachAndResolve(String pid) {
+                resolutions[0]++;
+                return url;
+            }
+        });
+        MBeanServerConnection connection1 = connectionProvider.getConnection("12345");
+        MBeanServerConnection connection2 = connectionProvider.getConnection("12345");
+        assertThat(connection1.getMBeanCount(), greaterThan(0));
+        connectionProvider.releaseConnection(connection1);
+        connectionProvider.releaseConnection(connection2);
+
+        assertThat(connectionProvider.getConnection("12345"), anyOf(sameInstance(connection1), sameInstance(connection2)));
+        assertThat(resolutions[0], is(1));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import com.cloudbees.jmx.model.MockSimpleJmxBean;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class QueryExpressionsTest {
+
+    static MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            MockSimpleJmxBean mbean = new MockSimpleJmxBean();
+            mbean.intAttribute = i * 10;
+            mbean.zeAttribute = "jdbc:" + (i % 2 == 0 ? "mysql" : "h2") + "://host-" + i;
+            mbean.boolAttribute = i % 2 == 0;
+            mbeanServer.registerMBean(mbean, new ObjectName("where-test:type=SimpleJmxBean,name=bean-" + i));
+        }
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        for (ObjectName objectName : mbeanServer.queryNames(new ObjectName("where-test:*"), null)) {
+            mbeanServer.unregisterMBean(objectName);
+        }
+    }
+
+    private Set<String> query(String expression) throws Exception {
+        Set<String> names = new TreeSet<String>();
+        for (ObjectName objectName : mbeanServer.queryNames(new ObjectName("where-test:*"), QueryExpressions.parse(expression))) {
+            names.add(objectName.getKeyProperty("name"));
+        }
+        return names;
+    }
+
+    @Test
+    public void comparisons() throws Exception {
+        assertThat(query("IntAttribute > 20"), contains("bean-3", "bean-4"));
+        assertThat(query("IntAttribute >= 20"), contains("bean-2", "bean-3", "bean-4"));
+        assertThat(query("IntAttribute < 10"), contains("bean-0"));
+        assertThat(query("IntAttribute = 30"), contains("bean-3"));
+        assertThat(query("IntAttribute != 30"), hasSize(4));
+        assertThat(query("20 <= IntAttribute"), hasSize(3));
+        assertThat(query("ZeAttribute = \"jdbc:h2://host-1\""), contains("bean-1"));
+        assertThat(query("BoolAttribute = true"), contains("bean-0", "bean-2", "bean-4"));
+    }
+
+    @Test
+    public void like_and_boolean_operators() throws Exception {
+        assertThat(query("ZeAttribute like 'jdbc:mysql:*'"), contains("bean-0", "bean-2", "bean-4"));
+        assertThat(query("ZeAttribute like 'jdbc:mysql:*' AND IntAttribute > 10"), contains("bean-2", "bean-4"));
+        assertThat(query("IntAttribute = 0 or IntAttribute = 40 and BoolAttribute = false"), contains("bean-0"));
+        assertThat(query("(IntAttribute = 0 or IntAttribute = 40) and not BoolAttribute = false"), contains("bean-0", "bean-4"));
+        assertThat(query("instanceof 'com.cloudbees.jmx.model.MockSimpleJmxBean' and IntAttribute < 20"), contains("bean-0", "bean-1"));
+    }
+
+    @Test
+    public void unknown_attribute_does_not_match() throws Exception {
+        assertThat(query("UnknownAttribute > 1"), is(empty()));
+    }
+
+    @Test
+    public void invalid_expressions() {
+        for (String expression : new String[]{"", "IntAttribute >", "IntAttribute 1", "(IntAttribute > 1", "IntAttribute > 1 1",
+                "ZeAttribute like jdbc", "ZeAttribute = 'unterminated", "IntAttribute # 1"}) {
+            try {
+                QueryExpressions.parse(expression);
+                fail("Exception expected parsing '" + expression + "'");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class TimingsTest {
+
+    @Test
+    public void histogram_buckets_bound_their_values() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = Timings.Histogram.bucket(value);
+            assertThat("value " + value, Timings.Histogram.bucketUpperBound(bucket), greaterThanOrEqualTo(value));
+            if (bucket > 0) {
+                assertThat("value " + value, Timings.Histogram.bucketUpperBound(bucket - 1), lessThan(value));
+            }
+        }
+    }
+
+    @Test
+    public void histogram_percentiles() {
+        Timings.Histogram histogram = new Timings.Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getMinInNanos(), is(TimeUnit.MILLISECONDS.toNanos(1)));
+        assertThat(histogram.getMaxInNanos(), is(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertThat((double) histogram.getPercentileInNanos(50), closeTo(TimeUnit.MILLISECONDS.toNanos(50), TimeUnit.MILLISECONDS.toNanos(50) * 0.125));
+        assertThat((double) histogram.getPercentileInNanos(99), closeTo(TimeUnit.MILLISECONDS.toNanos(99), TimeUnit.MILLISECONDS.toNanos(99) * 0.125));
+        assertThat(histogram.getPercentileInNanos(100), is(TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test
+    public void report_and_mbean() throws Exception {
+        Timings timings = new Timings();
+        timings.record(Timings.Phase.ATTACH, TimeUnit.MILLISECONDS.toNanos(120));
+        timings.record(Timings.Phase.INVOKE, TimeUnit.MILLISECONDS.toNanos(2));
+        timings.record(Timings.Phase.INVOKE, TimeUnit.MILLISECONDS.toNanos(4));
+
+        String report = timings.getReport();
+        assertThat(report, containsString("Attach"));
+        assertThat(report, containsString("Invoke"));
+        assertThat(report, not(containsString("LoadAgent")));
+
+        MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+        ObjectName objectName = timings.register(mbeanServer);
+        assertThat(mbeanServer.getAttribute(objectName, "InvokeCount"), is((Object) 2L));
+        assertThat(mbeanServer.getAttribute(objectName, "InvokeMaxMillis"), is((Object) 4.0));
+        mbeanServer.invoke(objectName, "reset", null, null);
+        assertThat(mbeanServer.getAttribute(objectName, "InvokeCount"), is((Object) 0L));
+    }
+}
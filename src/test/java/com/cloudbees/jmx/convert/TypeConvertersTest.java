@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx.convert;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class TypeConvertersTest {
+
+    TypeConverters typeConverters = new TypeConverters();
+
+    @Test
+    public void primitives_and_wrappers() throws Exception {
+        assertThat(typeConverters.convert("12", "long"), is((Object) 12L));
+        assertThat(typeConverters.convert(" 12 ", "java.lang.Long"), is((Object) 12L));
+        assertThat(typeConverters.convert("1.5", "double"), is((Object) 1.5d));
+        assertThat(typeConverters.convert("x", "char"), is((Object) 'x'));
+        assertThat(typeConverters.convert("true", "boolean"), is((Object) Boolean.TRUE));
+    }
+
+    @Test
+    public void object_name() throws Exception {
+        assertThat(typeConverters.convert("java.lang:type=Memory", ObjectName.class.getName()), is((Object) new ObjectName("java.lang:type=Memory")));
+    }
+
+    @Test
+    public void arrays() throws Exception {
+        long[] longs = (long[]) typeConverters.convert("1,2,3", "[J");
+        assertThat(longs.length, is(3));
+        assertThat(longs[2], is(3L));
+
+        String[] strings = (String[]) typeConverters.convert("a,b", "[Ljava.lang.String;");
+        assertThat(Arrays.asList(strings), is(Arrays.asList("a", "b")));
+
+        int[][] ints = (int[][]) typeConverters.convert("", "[[I");
+        assertThat(ints.length, is(0));
+    }
+
+    @Test
+    public void list() throws Exception {
+        List<?> list = (List<?>) typeConverters.convert("a,b", List.class.getName());
+        assertThat(list.size(), is(2));
+    }
+
+    @Test
+    public void enums() throws Exception {
+        assertThat(typeConverters.convert("heap", MemoryType.class.getName()), is((Object) MemoryType.HEAP));
+    }
+
+    @Test
+    public void converter_resolved_once() throws Exception {
+        assertThat(typeConverters.getConverter("[J"), sameInstance(typeConverters.getConverter("[J")));
+    }
+
+    @Test
+    public void custom_converter() throws Exception {
+        typeConverters.register(new TypeConverter() {
+            @Override
+            public String[] getTypes() {
+                return new String[]{"com.example.Custom"};
+            }
+
+            @Override
+            public Object convert(String value, String type) {
+                return "custom-" + value;
+            }
+        });
+        assertThat(typeConverters.convert("value", "com.example.Custom"), is((Object) "custom-value"));
+    }
+
+    @Test
+    public void broken_provider_is_skipped() throws Exception {
+        final TypeConverter custom = new TypeConverter() {
+            @Override
+            public String[] getTypes() {
+                return new String[]{"com.example.Custom"};
+            }
+
+            @Override
+            public Object convert(String value, String type) {
+                return "custom-" + value;
+            }
+        };
+        typeConverters.registerAll(new Iterator<TypeConverter>() {
+            int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < 2;
+            }
+
+            @Override
+            public TypeConverter next() {
+                if (index++ == 0) {
+                    throw new ServiceConfigurationError("com.example.Broken not found");
+                }
+                return custom;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        });
+        assertThat(typeConverters.convert("value", "com.example.Custom"), is((Object) "custom-value"));
+    }
+}
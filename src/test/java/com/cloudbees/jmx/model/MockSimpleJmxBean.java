@@ -37,6 +37,36 @@ public class MockSimpleJmxBean implements MockSimpleJmxBeanMBean {
         return anOperationResult;
     }
 
+    @Override
+    public String overloaded(String arg) {
+        return "String " + arg;
+    }
+
+    @Override
+    public String overloaded(int arg) {
+        return "int " + arg;
+    }
+
+    @Override
+    public String overloaded(boolean arg) {
+        return "boolean " + arg;
+    }
+
+    @Override
+    public String overloaded(String arg1, String arg2) {
+        return "String, String " + arg1 + ", " + arg2;
+    }
+
+    @Override
+    public String ambiguous(int arg) {
+        return "int " + arg;
+    }
+
+    @Override
+    public String ambiguous(long arg) {
+        return "long " + arg;
+    }
+
     @Override
     public String getZeAttribute() {
         return zeAttribute;
@@ -22,6 +22,18 @@ public interface MockSimpleJmxBeanMBean {
 
     String anOperation(String arg1, boolean arg2, Boolean arg3, Integer arg4, int arg5);
 
+    String overloaded(String arg);
+
+    String overloaded(int arg);
+
+    String overloaded(boolean arg);
+
+    String overloaded(String arg1, String arg2);
+
+    String ambiguous(int arg);
+
+    String ambiguous(long arg);
+
     String getZeAttribute();
 
     void setZeAttribute(String zeAttribute);
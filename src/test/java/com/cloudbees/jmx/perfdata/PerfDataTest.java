@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.jmx.perfdata;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Read the perf counters of the JVM running the tests.
+ *
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class PerfDataTest {
+
+    String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+
+    PerfData perfData;
+
+    @Before
+    public void before() throws Exception {
+        Assume.assumeNotNull(PerfData.findFile(pid));
+        perfData = PerfData.open(pid);
+    }
+
+    @Test
+    public void read_counters() throws Exception {
+        assertThat(perfData.getLong("java.threads.live"), greaterThan(0L));
+        assertThat(perfData.getLong(PerfData.TICKS_FREQUENCY), greaterThan(0L));
+        assertThat((String) perfData.getValue("java.property.java.vm.name"), is(System.getProperty("java.vm.name")));
+        assertThat(perfData.getLong("sun.rt.vmInitDoneTime"), is(ManagementFactory.getRuntimeMXBean().getStartTime()));
+    }
+
+    @Test
+    public void ticks_to_millis_does_not_overflow() {
+        long frequency = 1000000000L;
+        long ticks = 200L * 24 * 3600 * frequency; // 200 days at 1 GHz
+        assertThat(PerfData.ticksToMillis(ticks, frequency), is(200L * 24 * 3600 * 1000));
+        assertThat(PerfData.ticksToMillis(1500, 1000), is(1500L));
+        assertThat(PerfData.ticksToMillis(1999999, frequency), is(1L));
+    }
+
+    @Test
+    public void find_file_of_current_user_first() throws Exception {
+        File tmpDir = File.createTempFile("perfdata", "");
+        tmpDir.delete();
+        File currentUserFile = createFile(new File(tmpDir, "hsperfdata_me"), "123", 1000000000L);
+        File otherUserFile = createFile(new File(tmpDir, "hsperfdata_other"), "123", 2000000000L);
+        File staleFile = createFile(new File(tmpDir, "hsperfdata_stale"), "123", 500000000L);
+        try {
+            assertThat(PerfData.findFile("123", Collections.singleton(tmpDir), "me"), is(currentUserFile));
+            assertThat(PerfData.findFile("123", Collections.singleton(tmpDir), "nobody"), is(otherUserFile));
+            assertThat(PerfData.findFile("456", Collections.singleton(tmpDir), "me"), nullValue());
+        } finally {
+            for (File file : new File[]{currentUserFile, otherUserFile, staleFile}) {
+                file.delete();
+                file.getParentFile().delete();
+            }
+            tmpDir.delete();
+        }
+    }
+
+    private File createFile(File dir, String name, long lastModified) throws Exception {
+        dir.mkdirs();
+        File file = new File(dir, name);
+        file.createNewFile();
+        file.setLastModified(lastModified);
+        return file;
+    }
+
+    @Test
+    public void counters_are_read_live() throws Exception {
+        long before = perfData.getLong("java.threads.started");
+        Thread thread = new Thread();
+        thread.start();
+        thread.join();
+        assertThat(perfData.getLong("java.threads.started"), greaterThan(before));
+    }
+
+    @Test
+    public void platform_mbeans() throws Exception {
+        MBeanServer mbeanServer = PerfDataMBeans.newMBeanServer(perfData);
+
+        assertThat((Long) mbeanServer.getAttribute(new ObjectName(ManagementFactory.THREAD_MXBEAN_NAME), "ThreadCount"), greaterThan(0L));
+        assertThat((Long) mbeanServer.getAttribute(new ObjectName(ManagementFactory.CLASS_LOADING_MXBEAN_NAME), "LoadedClassCount"), greaterThan(0L));
+        assertThat((String) mbeanServer.getAttribute(new ObjectName(ManagementFactory.RUNTIME_MXBEAN_NAME), "VmName"), is(System.getProperty("java.vm.name")));
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            assertThat(mbeanServer.isRegistered(garbageCollector.getObjectName()), is(true));
+        }
+        assertThat(mbeanServer.getAttribute(new ObjectName(PerfDataMBeans.COUNTERS_OBJECT_NAME), "java.threads.live"), instanceOf(Long.class));
+    }
+
+    @Test
+    public void read_only() throws Exception {
+        MBeanServer mbeanServer = PerfDataMBeans.newMBeanServer(perfData);
+        ObjectName threading = new ObjectName(ManagementFactory.THREAD_MXBEAN_NAME);
+        try {
+            mbeanServer.setAttribute(threading, new Attribute("ThreadCount", 1L));
+            fail();
+        } catch (AttributeNotFoundException e) {
+            // expected
+        }
+        assertThat(mbeanServer.setAttributes(threading, new AttributeList()).size(), is(0));
+        try {
+            mbeanServer.invoke(threading, "dumpAllThreads", new Object[0], new String[0]);
+            fail();
+        } catch (ReflectionException e) {
+            assertThat(e.getCause(), instanceOf(NoSuchMethodException.class));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010-2013, CloudBees Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudbees.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.cloudbees.jmx.model.MockMemoryPool;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
+ */
+public class JsonTest {
+    @Test
+    public void escape_string() throws Exception {
+        String actual = Json.toJson("a \"quoted\"\tstring\n\u0001");
+        assertThat(actual, is("\"a \\\"quoted\\\"\\tstring\\n\\u0001\""));
+    }
+
+    @Test
+    public void primitive_array() throws Exception {
+        assertThat(Json.toJson(new long[]{1, 2, 3}), is("[1,2,3]"));
+    }
+
+    @Test
+    public void map_and_list() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("list", Arrays.asList(true, null, 1.5));
+        map.put("nan", Double.NaN);
+        assertThat(Json.toJson(map), is("{\"list\":[true,null,1.5],\"nan\":\"NaN\"}"));
+    }
+
+    @Test
+    public void composite_data() throws Exception {
+        MockMemoryPool memoryPool = new MockMemoryPool("PS Eden Space", 87359488L);
+        String actual = Json.toJson(memoryPool.getUsage());
+        assertThat(actual, is("{\"committed\":87359488,\"init\":16318464,\"max\":88997888,\"used\":87359488}"));
+    }
+}
@@ -20,6 +20,8 @@ import static org.hamcrest.Matchers.*;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+
 /**
  * @author <a href="mailto:cleclerc@cloudbees.com">Cyrille Le Clerc</a>
  */
@@ -65,4 +67,32 @@ public class Strings2Test {
         String expected = indentation + "";
         assertThat(actual, is(expected));
     }
+
+    @Test
+    public void indent_mixed_line_breaks() throws Exception {
+        String actual = Strings2.indent("line1\r\nline2\rline3\n\nline5\n", "-");
+
+        String expected = "-line1" + Strings2.LINE_BREAK +
+                "-line2" + Strings2.LINE_BREAK +
+                "-line3" + Strings2.LINE_BREAK +
+                "-" + Strings2.LINE_BREAK +
+                "-line5";
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void join_iterable_to_string_builder() throws Exception {
+        StringBuilder out = new StringBuilder("values: ");
+        Strings2.join(Arrays.asList(1, null, "three"), ", ", out);
+        assertThat(out.toString(), is("values: 1, #null#, three"));
+    }
+
+    @Test
+    public void to_string_arrays() throws Exception {
+        assertThat(Strings2.toString(new long[]{1, 2, 3}), is("[1, 2, 3]"));
+        assertThat(Strings2.toString(new boolean[]{true, false}), is("[true, false]"));
+        assertThat(Strings2.toString(new char[]{'a', 'b'}), is("[a, b]"));
+        assertThat(Strings2.toString(new int[0]), is("[]"));
+        assertThat(Strings2.toString(new Object[]{"a", new int[]{1, 2}, null}), is("[a, [1, 2], #null#]"));
+    }
 }